@@ -0,0 +1,163 @@
+package tomato.core;
+
+import tomato.Game;
+import tomato.entity.EnemyTank;
+import tomato.entity.Entity;
+
+import java.awt.*;
+
+/**
+ * Distance-based level of detail for AI updates.
+ * Each frame an enemy tank is put into a tier by its distance from the views of the viewports
+ * (the main camera follows the player): tanks in any view update every frame, ones near a view
+ * every few frames and far away ones rarely. Skipped frames are not lost, the tank gets the accumulated time on
+ * its next update. Every tank has a random slot, so tanks of the same tier update on
+ * different frames instead of all at once.
+ */
+public class AIScheduler {
+
+    public enum Tier {
+        ON_SCREEN(1),
+        NEAR(4),
+        FAR(12);
+
+        private final int interval;
+
+        Tier(int interval) {
+            this.interval = interval;
+        }
+
+        /**
+         * Number of frames between updates in this tier
+         */
+        public int getInterval() {
+            return interval;
+        }
+    }
+
+    // Tanks just outside the view still update every frame so they don't stutter into it
+    private static final int SCREEN_MARGIN = 64;
+    // The near tier covers this many screens around the view
+    private static final int NEAR_SCREENS = 2;
+    public static final int SLOT_COUNT = 60;
+
+    private static final Tier[] TIERS = Tier.values();
+
+    private long frame = 0;
+    // Tier areas of every view, four ints (min x, min y, max x, max y) per view
+    private int[] viewAreas = new int[4];
+    private int[] nearAreas = new int[4];
+    private int areaCount = 0;
+
+    // Counters for the frame in progress, indexed by tier ordinal
+    private final int[] tankCounts = new int[TIERS.length];
+    private final int[] updateCounts = new int[TIERS.length];
+    private final long[] updateNanos = new long[TIERS.length];
+
+    // Counters of the last completed frame (rolled over by beginFrame())
+    private final int[] lastTankCounts = new int[TIERS.length];
+    private final int[] lastUpdateCounts = new int[TIERS.length];
+    private final long[] lastUpdateNanos = new long[TIERS.length];
+
+    /**
+     * Start a new frame: roll the counters over and place the tier areas around the views
+     *
+     * @param views What each viewport shows, in world coordinates
+     */
+    public void beginFrame(Rectangle[] views) {
+        for (int i = 0; i < TIERS.length; i++) {
+            lastTankCounts[i] = tankCounts[i];
+            lastUpdateCounts[i] = updateCounts[i];
+            lastUpdateNanos[i] = updateNanos[i];
+            tankCounts[i] = 0;
+            updateCounts[i] = 0;
+            updateNanos[i] = 0;
+        }
+        frame++;
+
+        if (viewAreas.length < views.length * 4) {
+            viewAreas = new int[views.length * 4];
+            nearAreas = new int[views.length * 4];
+        }
+        areaCount = views.length;
+        for (int i = 0; i < views.length; i++) {
+            Rectangle view = views[i];
+            int centerX = view.x + view.width / 2;
+            int centerY = view.y + view.height / 2;
+            int halfWidth = view.width / 2 + SCREEN_MARGIN;
+            int halfHeight = view.height / 2 + SCREEN_MARGIN;
+            int offset = i * 4;
+            viewAreas[offset] = centerX - halfWidth;
+            viewAreas[offset + 1] = centerY - halfHeight;
+            viewAreas[offset + 2] = centerX + halfWidth;
+            viewAreas[offset + 3] = centerY + halfHeight;
+            nearAreas[offset] = centerX - halfWidth * NEAR_SCREENS;
+            nearAreas[offset + 1] = centerY - halfHeight * NEAR_SCREENS;
+            nearAreas[offset + 2] = centerX + halfWidth * NEAR_SCREENS;
+            nearAreas[offset + 3] = centerY + halfHeight * NEAR_SCREENS;
+        }
+    }
+
+    public Tier tierOf(Entity entity) {
+        if (intersectsAny(entity, viewAreas)) {
+            return Tier.ON_SCREEN;
+        }
+        if (intersectsAny(entity, nearAreas)) {
+            return Tier.NEAR;
+        }
+        return Tier.FAR;
+    }
+
+    private boolean intersectsAny(Entity entity, int[] areas) {
+        for (int i = 0; i < areaCount; i++) {
+            int offset = i * 4;
+            if (entity.intersects(areas[offset], areas[offset + 1], areas[offset + 2], areas[offset + 3])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Update the tank if its tier is due on this frame, otherwise bank the frame time for later
+     *
+     * @return True if the tank was updated
+     */
+    public boolean update(EnemyTank tank) {
+        Tier tier = tierOf(tank);
+        int index = tier.ordinal();
+        tankCounts[index]++;
+
+        if ((frame + tank.getScheduleSlot()) % tier.getInterval() != 0) {
+            tank.skipUpdate(Game.GAME_LOOP.getDeltaTimeMillis());
+            return false;
+        }
+
+        long start = System.nanoTime();
+        tank.update();
+        updateNanos[index] += System.nanoTime() - start;
+        updateCounts[index]++;
+        return true;
+    }
+
+    /**
+     * Tanks in the tier during the last frame
+     */
+    public int getTankCount(Tier tier) {
+        return lastTankCounts[tier.ordinal()];
+    }
+
+    /**
+     * Tanks of the tier that were actually updated during the last frame
+     */
+    public int getUpdateCount(Tier tier) {
+        return lastUpdateCounts[tier.ordinal()];
+    }
+
+    /**
+     * Time spent updating the tier during the last frame, in milliseconds
+     */
+    public double getUpdateMillis(Tier tier) {
+        return lastUpdateNanos[tier.ordinal()] / 1_000_000.0;
+    }
+}
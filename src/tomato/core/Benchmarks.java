@@ -0,0 +1,659 @@
+package tomato.core;
+
+import tomato.Game;
+import tomato.entity.CollisionLayer;
+import tomato.entity.Direction;
+import tomato.entity.EnemyTank;
+import tomato.entity.Entity;
+import tomato.entity.EntityType;
+import tomato.entity.LandmineEntity;
+import tomato.entity.ProjectileLifetime;
+import tomato.vfx.Lighting;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Headless benchmarks and checks of the engine, run without a window:
+ *
+ *     java -Djava.awt.headless=true tomato.core.Benchmarks backends ...
+ *
+ * Every run builds a fresh grassland world with a fixed seed, steps it at 60 updates per second
+ * and loads the chunks around a 640x360 view on the player, like the renderer would. Results are
+ * logged one line each as they come in. A check that fails makes the process exit with status 1.
+ */
+public final class Benchmarks {
+    private static final Logger logger = Logger.getLogger(Benchmarks.class.getName());
+    private static final float STEP_SECONDS = 1 / 60f;
+    private static final long SEED = 5;
+    // Lattice spacing that keeps a mine's blast from reaching the next mine and leaves room for a tank
+    private static final int MINE_SPACING = 128;
+    // Nothing is placed this close to the player's center, so no mine goes off under it at spawn
+    private static final int PLAYER_CLEARANCE = 96;
+
+    private static int failures = 0;
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            logger.severe("Usage: Benchmarks <name>..., with names from: backends, allocation, statics, perception, tiers, flowfield, influence, projectiles");
+            System.exit(2);
+        }
+        for (String name : args) {
+            switch (name) {
+                case "backends":
+                    checkBackends();
+                    break;
+                case "allocation":
+                    benchmarkAllocation();
+                    break;
+                case "statics":
+                    benchmarkStatics();
+                    break;
+                case "perception":
+                    checkPerception();
+                    break;
+                case "tiers":
+                    benchmarkTiers();
+                    break;
+                case "flowfield":
+                    checkFlowField();
+                    break;
+                case "influence":
+                    checkInfluence();
+                    break;
+                case "projectiles":
+                    checkProjectiles();
+                    break;
+                default:
+                    logger.severe("Unknown benchmark " + name);
+                    System.exit(2);
+                    return;
+            }
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Draw the same frames with Java2D and the software rasterizer and fail if any pixel differs by
+     * more than the comparison tolerance. Runs by day, by night and with explosions going off, each
+     * comparison is done twice and the second one kept, the first warms up both backends.
+     *
+     * @return One line per result
+     */
+    static List<String> checkBackends() {
+        List<String> results = new ArrayList<>();
+        float[][] scenes = {{0f, 1f}, {0f, 0.2f}, {0.25f, 0.5f}}; // explosions per frame, daylight
+        for (float[] scene : scenes) {
+            World world = newWorld();
+            world.getVFXManager().getLighting().setDaylight(scene[1]);
+            Random random = new Random(SEED);
+            spawnAround(world, random, 150, 20, 500, 350);
+            BufferedImage frame = ImageFactory.createOpaque(Game.WIDTH, Game.HEIGHT);
+            float explosions = 0;
+            for (int i = 0; i < 150; i++) {
+                Rectangle view = playerView();
+                for (explosions += scene[0]; explosions >= 1; explosions--) {
+                    world.getVFXManager().createExplosion(view.x + random.nextInt(view.width),
+                            view.y + random.nextInt(view.height), 48, 2.0f);
+                }
+                step(world, frame);
+            }
+            log(results, String.format("Backends, %.2f explosions per frame, daylight %.1f", scene[0], scene[1]));
+            world.compareBackends(playerView());
+            results.addAll(world.compareBackends(playerView()));
+            int beyondTolerance = world.getComparisonPixelsBeyondTolerance();
+            if (beyondTolerance > 0) {
+                failures++;
+                log(results, "FAILED: " + beyondTolerance + " pixels beyond the tolerance");
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Bytes World.update allocates per frame with 100 and with 300 each of tanks and mines around
+     * the player, over 300 frames after 120 frames of warm-up. Tanks that roam into mines blow up,
+     * the entity counts at the start and end of the measurement are logged with the result.
+     *
+     * @return One line per population
+     */
+    static List<String> benchmarkAllocation() {
+        List<String> results = new ArrayList<>();
+        for (int population : new int[]{100, 300}) {
+            World world = newWorld();
+            spawnLattice(world, population, population, MINE_SPACING);
+            for (int i = 0; i < 120; i++) {
+                step(world, null);
+            }
+            int entitiesBefore = world.getEntityCount();
+            long allocated = 0;
+            for (int i = 0; i < 300; i++) {
+                long before = allocatedBytes();
+                world.update();
+                allocated += allocatedBytes() - before;
+                world.loadChunks(new Rectangle[]{playerView()});
+            }
+            log(results, String.format("Allocation, %d tanks and %d mines: %.1f KB per update, %d to %d entities",
+                    population, population, allocated / 300 / 1024.0, entitiesBefore, world.getEntityCount()));
+        }
+        return results;
+    }
+
+    /**
+     * Time of World.update with 20k landmines packed around a player that moves back and forth
+     * in a clearing among them, over 300 frames after 120 frames of warm-up. Mines outside the
+     * loaded chunks are set aside and don't count.
+     *
+     * @return One line
+     */
+    static List<String> benchmarkStatics() {
+        List<String> results = new ArrayList<>();
+        World world = newWorld();
+        Entity player = World.PLAYER_ENTITY;
+        double startX = player.getX();
+        double startY = player.getY();
+        spawnOnLattice(20_000, 11, -16, 160, world::spawnLandmine);
+        long total = 0;
+        long worst = 0;
+        for (int i = -120; i < 300; i++) {
+            player.setPosition(startX + 40 * Math.sin(i / 30.0), startY);
+            long start = System.nanoTime();
+            world.update();
+            long elapsed = System.nanoTime() - start;
+            world.loadChunks(new Rectangle[]{playerView()});
+            if (i >= 0) {
+                total += elapsed;
+                worst = Math.max(worst, elapsed);
+            }
+        }
+        log(results, String.format("Statics, 20000 mines, %d in loaded chunks: %.2fms per update, worst %.2fms",
+                world.getSpatialGrid().getStaticEntityCount(), total / 300 / 1_000_000.0, worst / 1_000_000.0));
+        return results;
+    }
+
+    /**
+     * Time of World.update with 2000 enemy tanks spread over the loaded chunks, over 300 frames after
+     * 120 frames of warm-up, and how the AI scheduler split them into distance tiers
+     *
+     * @return One line per result
+     */
+    static List<String> benchmarkTiers() {
+        List<String> results = new ArrayList<>();
+        World world = newWorld();
+        spawnAround(world, new Random(SEED), 2000, 0, 700, 700);
+        long total = 0;
+        long worst = 0;
+        for (int i = -120; i < 300; i++) {
+            long start = System.nanoTime();
+            world.update();
+            long elapsed = System.nanoTime() - start;
+            world.loadChunks(new Rectangle[]{playerView()});
+            if (i >= 0) {
+                total += elapsed;
+                worst = Math.max(worst, elapsed);
+            }
+        }
+        AIScheduler scheduler = world.getAIScheduler();
+        log(results, String.format("Tiers, 2000 enemy tanks: %.2fms per update, worst %.2fms",
+                total / 300 / 1_000_000.0, worst / 1_000_000.0));
+        log(results, String.format("%d on screen, %d near, %d far in the last frame",
+                scheduler.getTankCount(AIScheduler.Tier.ON_SCREEN), scheduler.getTankCount(AIScheduler.Tier.NEAR),
+                scheduler.getTankCount(AIScheduler.Tier.FAR)));
+        return results;
+    }
+
+    /**
+     * Flow field builds around 3000 landmines scattered over the loaded area, toward a player that
+     * moves across the nav cells at a steady 2px per frame, over 600 frames after 3000 of warm-up,
+     * builds are rare enough that a shorter warm-up leaves the search code cold.
+     * With the player standing still, following the field from 500 random cells must then reach the
+     * player's cell, or the check fails.
+     *
+     * @return One line per result
+     */
+    static List<String> checkFlowField() {
+        List<String> results = new ArrayList<>();
+        newWorld();
+        Random random = new Random(SEED);
+        Entity player = World.PLAYER_ENTITY;
+        int chunkSizePx = World.WORLD.getChunkSizePx();
+        int areaMinX = (Math.floorDiv(player.getCenterX(), chunkSizePx) - 1) * chunkSizePx;
+        int areaMinY = (Math.floorDiv(player.getCenterY(), chunkSizePx) - 1) * chunkSizePx;
+        int areaSize = chunkSizePx * 3;
+        List<Entity> mines = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            mines.add(new LandmineEntity(areaMinX + random.nextInt(areaSize), areaMinY + random.nextInt(areaSize)));
+        }
+
+        FlowField field = new FlowField();
+        double startX = player.getX();
+        double startY = player.getY();
+        long total = 0;
+        int buildsBefore = 0;
+        for (int i = -3000; i < 600; i++) {
+            player.setPosition(startX - 300 + Math.abs((i + 3000) * 2 % 1200 - 600), startY);
+            if (i == 0) {
+                buildsBefore = field.getCompletedBuilds();
+            }
+            long start = System.nanoTime();
+            field.update(player, areaMinX, areaMinY, areaSize, mines);
+            if (i >= 0) {
+                total += System.nanoTime() - start;
+            }
+        }
+        int builds = field.getCompletedBuilds() - buildsBefore;
+        log(results, String.format("Flow field, 3000 mines, %d cells: %d builds, %.2fms per build, %.3fms per frame",
+                field.getCellCount(), builds, total / Math.max(1, builds) / 1_000_000.0, total / 600 / 1_000_000.0));
+
+        // a build that started after the player stopped has completed once the count went up twice
+        int stoppedAt = field.getCompletedBuilds();
+        while (field.getCompletedBuilds() < stoppedAt + 2) {
+            field.update(player, areaMinX, areaMinY, areaSize, mines);
+        }
+        int goalX = Math.floorDiv(player.getCenterX(), FlowField.NAV_CELL_SIZE);
+        int goalY = Math.floorDiv(player.getCenterY(), FlowField.NAV_CELL_SIZE);
+        int stranded = 0;
+        for (int i = 0; i < 500; i++) {
+            int x = areaMinX + random.nextInt(areaSize);
+            int y = areaMinY + random.nextInt(areaSize);
+            for (int step = 0; step <= field.getCellCount(); step++) {
+                Direction direction = field.getDirection(x, y);
+                if (direction == null) {
+                    break;
+                }
+                x += direction == Direction.EAST ? FlowField.NAV_CELL_SIZE : direction == Direction.WEST ? -FlowField.NAV_CELL_SIZE : 0;
+                y += direction == Direction.SOUTH ? FlowField.NAV_CELL_SIZE : direction == Direction.NORTH ? -FlowField.NAV_CELL_SIZE : 0;
+            }
+            if (Math.floorDiv(x, FlowField.NAV_CELL_SIZE) != goalX || Math.floorDiv(y, FlowField.NAV_CELL_SIZE) != goalY) {
+                stranded++;
+            }
+        }
+        log(results, String.format("%d of 500 random starts reached the player's cell", 500 - stranded));
+        if (stranded > 0) {
+            failures++;
+            log(results, "FAILED: following the field doesn't always lead to the player");
+        }
+        return results;
+    }
+
+    /**
+     * The influence map on its own and in a busy world. Times the decay pass over the 48x48 cells of
+     * the loaded area, then follows the threat at the center of one blast at 60 updates per second,
+     * it must be back to exactly zero within 10s or the check fails. Last the cost of the map with
+     * 2000 enemy tanks around the player, over 300 frames after 120 frames of warm-up.
+     *
+     * @return One line per result
+     */
+    static List<String> checkInfluence() {
+        List<String> results = new ArrayList<>();
+        float stepMillis = STEP_SECONDS * 1000;
+        int areaSize = 1536;
+        InfluenceMap map = new InfluenceMap();
+        map.update(stepMillis, 0, 0, areaSize);
+        long decayNanos = 0;
+        for (int i = -20_000; i < 100_000; i++) {
+            map.stampBlast(areaSize / 2, areaSize / 2, 64);
+            long start = System.nanoTime();
+            map.update(stepMillis, 0, 0, areaSize);
+            if (i >= 0) {
+                decayNanos += System.nanoTime() - start;
+            }
+        }
+        int side = areaSize / InfluenceMap.CELL_SIZE;
+        log(results, String.format("Influence, decay of %dx%d cells: %.2fus per update",
+                side, side, decayNanos / 100_000 / 1000.0));
+
+        map = new InfluenceMap();
+        map.update(stepMillis, 0, 0, areaSize);
+        map.stampBlast(areaSize / 2, areaSize / 2, 64);
+        StringBuilder line = new StringBuilder("Blast threat at its center:");
+        int zeroAt = -1;
+        for (int frame = 0; frame <= 600 && zeroAt < 0; frame++) {
+            float threat = map.sample(InfluenceMap.THREAT, areaSize / 2, areaSize / 2);
+            if (frame % 60 == 0) {
+                line.append(String.format(" %.2f at %ds,", threat, frame / 60));
+            }
+            if (threat == 0) {
+                zeroAt = frame;
+            }
+            map.update(stepMillis, 0, 0, areaSize);
+        }
+        if (zeroAt < 0) {
+            failures++;
+            log(results, line.toString());
+            log(results, "FAILED: the threat of a blast is still there after 10s");
+        } else {
+            log(results, line.append(String.format(" 0 from %.2fs on", zeroAt * STEP_SECONDS)).toString());
+        }
+
+        World world = newWorld();
+        spawnAround(world, new Random(SEED), 2000, 0, 700, 700);
+        InfluenceMap influence = world.getInfluenceMap();
+        long total = 0;
+        double decayMillis = 0;
+        long stamps = 0;
+        long dropped = 0;
+        for (int i = -120; i < 300; i++) {
+            long start = System.nanoTime();
+            world.update();
+            long elapsed = System.nanoTime() - start;
+            world.loadChunks(new Rectangle[]{playerView()});
+            if (i >= 0) {
+                total += elapsed;
+                decayMillis += influence.getDecayMillis();
+                stamps += influence.getStamps();
+                dropped += influence.getDroppedStamps();
+            }
+        }
+        log(results, String.format("2000 enemy tanks: %.2fms per update, %.4fms of it decaying the map, " +
+                        "%.1f stamps and %.1f dropped per update",
+                total / 300 / 1_000_000.0, decayMillis / 300, stamps / 300.0, dropped / 300.0));
+        return results;
+    }
+
+    /**
+     * Bullets that never hit anything must expire. Fires 5 bullets per frame for 60s of simulated
+     * time, regular and gold at random, each from a random point ahead of the player and flying away
+     * from it. Logs the least and most bullets in flight and light sources after the first 10s, and
+     * fails if more bullets are in flight than 4s of firing, the longest a bullet lives.
+     *
+     * @return One line per result
+     */
+    static List<String> checkProjectiles() {
+        List<String> results = new ArrayList<>();
+        World world = newWorld();
+        Random random = new Random(SEED);
+        Entity player = World.PLAYER_ENTITY;
+        BulletManager bullets = world.getBulletManager();
+        Lighting lighting = world.getVFXManager().getLighting();
+        Direction[] directions = Direction.values();
+        int minBullets = Integer.MAX_VALUE;
+        int maxBullets = 0;
+        int minLights = Integer.MAX_VALUE;
+        int maxLights = 0;
+        for (int frame = 0; frame < 3600; frame++) {
+            for (int i = 0; i < 5; i++) {
+                Direction direction = directions[random.nextInt(directions.length)];
+                int ahead = 64 + random.nextInt(400);
+                int across = random.nextInt(600) - 300;
+                boolean vertical = direction == Direction.NORTH || direction == Direction.SOUTH;
+                int sign = direction == Direction.NORTH || direction == Direction.WEST ? -1 : 1;
+                bullets.fire(player.getCenterX() + (vertical ? across : sign * ahead),
+                        player.getCenterY() + (vertical ? sign * ahead : across), null, direction,
+                        random.nextBoolean() ? EntityType.REGULAR_PROJECTILE : EntityType.GOLD_PROJECTILE);
+            }
+            step(world, null);
+            if (frame >= 600) {
+                minBullets = Math.min(minBullets, bullets.getBulletCount());
+                maxBullets = Math.max(maxBullets, bullets.getBulletCount());
+                minLights = Math.min(minLights, lighting.getLightSourceCount());
+                maxLights = Math.max(maxLights, lighting.getLightSourceCount());
+            }
+        }
+        log(results, String.format("Projectiles, 5 per frame for 60s: %d to %d in flight, %d to %d light sources",
+                minBullets, maxBullets, minLights, maxLights));
+        log(results, String.format("Expired by range %d, by age %d, leaving the loaded area %d, hit %d",
+                bullets.getExpiryCount(ProjectileLifetime.Expiry.RANGE),
+                bullets.getExpiryCount(ProjectileLifetime.Expiry.AGE),
+                bullets.getExpiryCount(ProjectileLifetime.Expiry.LEFT_AREA), bullets.getHitCount()));
+        if (maxBullets > 5 * 4 * 60) {
+            failures++;
+            log(results, "FAILED: bullets outlive their lifetime");
+        }
+        return results;
+    }
+
+    /**
+     * Enemy perception queries against a brute-force scan. 1000 enemy tanks and 2000 landmines are
+     * scattered over 3000x3000px in a grid of their own. Every tank looks for the 4 nearest other
+     * tanks within 400px and checks its line of sight to each, the way a perception tick does. Fails
+     * if the grid finds other distances or another sight result than the scan.
+     *
+     * @return One line per result
+     */
+    static List<String> checkPerception() {
+        List<String> results = new ArrayList<>();
+        newWorld();
+        Random random = new Random(SEED);
+        SpatialGrid grid = new SpatialGrid(64);
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            double x = random.nextInt(3000);
+            double y = random.nextInt(3000);
+            Entity entity = i < 1000 ? new EnemyTank(x, y) : new LandmineEntity(x, y);
+            entities.add(entity);
+            if (entity.isStatic()) {
+                grid.addStaticEntity(entity);
+            } else {
+                grid.addEntity(entity);
+            }
+        }
+        int sightMask = EntityType.REGULAR_PROJECTILE.getCollisionMask();
+        Entity[] nearest = new Entity[4];
+        Entity[] expected = new Entity[4];
+        long[] expectedDistances = new long[4];
+        int mismatches = 0;
+        int sightChecks = 0;
+        int blocked = 0;
+        long gridNanos = 0;
+        long scanNanos = 0;
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                Entity looker = entities.get(i);
+                int centerX = looker.getCenterX();
+                int centerY = looker.getCenterY();
+
+                long start = System.nanoTime();
+                int found = grid.queryNearest(centerX, centerY, 400, CollisionLayer.TANK, EntityType.RED_ENEMY_TANK,
+                        looker, nearest);
+                int gridVisible = 0;
+                for (int k = 0; k < found; k++) {
+                    if (grid.hasLineOfSight(centerX, centerY, nearest[k].getCenterX(), nearest[k].getCenterY(),
+                            sightMask, looker, nearest[k])) {
+                        gridVisible |= 1 << k;
+                    }
+                }
+                long gridElapsed = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int expectedFound = scanNearest(entities, looker, 400, expected, expectedDistances);
+                int scanVisible = 0;
+                for (int k = 0; k < expectedFound; k++) {
+                    if (scanLineOfSight(entities, looker, expected[k], sightMask)) {
+                        scanVisible |= 1 << k;
+                    }
+                }
+                long scanElapsed = System.nanoTime() - start;
+
+                // the first round warms up and is checked, the other two are timed
+                if (round > 0) {
+                    gridNanos += gridElapsed;
+                    scanNanos += scanElapsed;
+                    continue;
+                }
+                boolean same = found == expectedFound;
+                for (int k = 0; same && k < found; k++) {
+                    // equally far candidates can come in either order, their distances can't
+                    same = nearest[k].distanceSquaredTo(centerX, centerY) == expectedDistances[k];
+                }
+                for (int k = 0; same && k < found; k++) {
+                    boolean gridSees = (gridVisible & (1 << k)) != 0;
+                    same = gridSees == scanLineOfSight(entities, looker, nearest[k], sightMask);
+                    sightChecks++;
+                    blocked += gridSees ? 0 : 1;
+                }
+                if (!same) {
+                    mismatches++;
+                }
+            }
+        }
+
+        log(results, String.format("Perception, 1000 tanks among 3000 entities: grid %.2fms, scan %.2fms per pass",
+                gridNanos / 2 / 1_000_000.0, scanNanos / 2 / 1_000_000.0));
+        log(results, String.format("%d sight checks, %d blocked, %d of 1000 tanks differ from the scan",
+                sightChecks, blocked, mismatches));
+        if (mismatches > 0) {
+            failures++;
+            log(results, "FAILED: the grid's queries disagree with the brute-force scan");
+        }
+        return results;
+    }
+
+    /**
+     * The enemy tanks within the radius of the looker's center, nearest first, by checking every entity
+     */
+    private static int scanNearest(List<Entity> entities, Entity looker, int radius, Entity[] out, long[] distances) {
+        int centerX = looker.getCenterX();
+        int centerY = looker.getCenterY();
+        int count = 0;
+        for (Entity other : entities) {
+            if (other == looker || other.getEntityType() != EntityType.RED_ENEMY_TANK) {
+                continue;
+            }
+            long distance = other.distanceSquaredTo(centerX, centerY);
+            if (distance > (long) radius * radius || (count == out.length && distance >= distances[count - 1])) {
+                continue;
+            }
+            int slot = count == out.length ? count - 1 : count++;
+            while (slot > 0 && distances[slot - 1] > distance) {
+                out[slot] = out[slot - 1];
+                distances[slot] = distances[slot - 1];
+                slot--;
+            }
+            out[slot] = other;
+            distances[slot] = distance;
+        }
+        return count;
+    }
+
+    /**
+     * Whether nothing on the masked layers crosses the line between two centers, by checking every entity
+     */
+    private static boolean scanLineOfSight(List<Entity> entities, Entity from, Entity to, int mask) {
+        for (Entity other : entities) {
+            if (other != from && other != to && CollisionLayer.interacts(mask, other.getCollisionLayer()) &&
+                    other.intersectsSegment(from.getCenterX(), from.getCenterY(), to.getCenterX(), to.getCenterY())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bytes allocated by this thread so far, -1 where the JVM doesn't count them
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void log(List<String> results, String line) {
+        results.add(line);
+        logger.info(line);
+    }
+
+    /**
+     * A fresh world stepped at a fixed rate, with full render quality and the chunks around the player loaded
+     */
+    private static World newWorld() {
+        Game.GAME_LOOP.setFixedDeltaTime(STEP_SECONDS);
+        World.createWorld(WorldType.GRASSLAND);
+        World world = World.WORLD;
+        world.getQualityController().setEnabled(false);
+        world.loadChunks(new Rectangle[]{playerView()});
+        return world;
+    }
+
+    /**
+     * Spawn enemy tanks and landmines at random around the player
+     *
+     * @param rangeX Largest horizontal distance from the player
+     * @param rangeY Largest vertical distance from the player
+     */
+    private static void spawnAround(World world, Random random, int tanks, int mines, int rangeX, int rangeY) {
+        Entity player = World.PLAYER_ENTITY;
+        for (int i = 0; i < tanks; i++) {
+            world.spawnRedEnemy(player.getX() + random.nextInt(rangeX * 2) - rangeX,
+                    player.getY() + random.nextInt(rangeY * 2) - rangeY);
+        }
+        for (int i = 0; i < mines; i++) {
+            world.spawnLandmine(player.getX() + random.nextInt(rangeX * 2) - rangeX,
+                    player.getY() + random.nextInt(rangeY * 2) - rangeY);
+        }
+    }
+
+    /**
+     * Spawn landmines on a square lattice centered on the player and enemy tanks in between them,
+     * so that a population doesn't blow itself up at spawn
+     */
+    private static void spawnLattice(World world, int tanks, int mines, int spacing) {
+        // sprites are placed by their top left corner, mines are 32px and tanks 64px
+        spawnOnLattice(mines, spacing, -16, PLAYER_CLEARANCE, world::spawnLandmine);
+        spawnOnLattice(tanks, spacing, spacing / 2 - 32, PLAYER_CLEARANCE, world::spawnRedEnemy);
+    }
+
+    /**
+     * Spawn on a square lattice centered on the player, leaving out the points closer than the
+     * clearance on both axes
+     *
+     * @param offset Added to both coordinates of a lattice point to get the sprite's top left corner
+     */
+    private static void spawnOnLattice(int count, int spacing, int offset, int clearance,
+                                       BiConsumer<Double, Double> spawn) {
+        Entity player = World.PLAYER_ENTITY;
+        int skipped = (clearance * 2 / spacing + 1) * (clearance * 2 / spacing + 1);
+        int side = (int) Math.ceil(Math.sqrt(count + skipped));
+        int originX = player.getCenterX() - side * spacing / 2;
+        int originY = player.getCenterY() - side * spacing / 2;
+        int spawned = 0;
+        for (int i = 0; i < side * side && spawned < count; i++) {
+            int x = originX + (i % side) * spacing;
+            int y = originY + (i / side) * spacing;
+            if (Math.abs(x - player.getCenterX()) < clearance && Math.abs(y - player.getCenterY()) < clearance) {
+                continue;
+            }
+            spawn.accept((double) (x + offset), (double) (y + offset));
+            spawned++;
+        }
+    }
+
+    /**
+     * Screen-sized view centered on the player, in world coordinates
+     */
+    private static Rectangle playerView() {
+        Entity player = World.PLAYER_ENTITY;
+        return new Rectangle(player.getCenterX() - Game.WIDTH / 2, player.getCenterY() - Game.HEIGHT / 2,
+                Game.WIDTH, Game.HEIGHT);
+    }
+
+    /**
+     * One update, then load the chunks around the player and draw the view if a frame is given
+     */
+    private static void step(World world, BufferedImage frame) {
+        world.update();
+        Rectangle view = playerView();
+        world.loadChunks(new Rectangle[]{view});
+        if (frame != null) {
+            Graphics2D g = frame.createGraphics();
+            try {
+                g.translate(-view.x, -view.y);
+                world.render(g, view, 0);
+            } finally {
+                g.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package tomato.core;
+
+import tomato.entity.Direction;
+import tomato.entity.Entity;
+import tomato.entity.EntityType;
+import tomato.entity.ProjectileLifetime;
+import tomato.vfx.LightBatch;
+import tomato.vfx.Lighting;
+import tomato.vfx.VFXManager;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * All projectiles in flight, kept in parallel primitive arrays instead of one entity per shot.
+ * One loop per tick moves every bullet, expires it by range, age or leaving the loaded area,
+ * and tests it against the tank/landmine broadphase, hitboxes first and then the pixel masks, like
+ * entity pairs. Removal swaps the last bullet into the freed slot, so the arrays stay dense.
+ *
+ * The lights are drawn on the render thread, so every tick ends by copying positions and sprites
+ * into a render snapshot that is published for the next frame. The snapshots are swapped under a
+ * lock that readers hold while they walk one, so the update thread never refills a snapshot that is
+ * still being read. Bullets are queued from the snapshot in one batch, and a limited number of
+ * them glow through the lighting as one {@link LightBatch}.
+ */
+public class BulletManager implements LightBatch {
+    private static final float SPEED = 500f;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int HIT_MASK = EntityType.REGULAR_PROJECTILE.getCollisionMask();
+    private static final int SPLASH_MASK = HIT_MASK;
+    // How far ahead of a bullet the influence map marks its lane as dangerous
+    private static final int THREAT_LANE_LENGTH = 256;
+    // Lanes are re-stamped every few frames per bullet, spread over frames by slot (power of two)
+    private static final int LANE_STAMP_INTERVAL = 4;
+    private static final int LIGHT_RADIUS = 15;
+    private static final float LIGHT_STRENGTH = 1.0f;
+    private static final int MAX_LIGHTS_PER_FRAME = 128;
+
+    // Per bullet type, indexed by the type byte
+    private static final EntityType[] TYPES = {EntityType.REGULAR_PROJECTILE, EntityType.GOLD_PROJECTILE};
+    private static final int[] DAMAGE = {5, 15};
+    private static final int[] SPLASH_RADIUS = {0, 32};
+    private static final ProjectileLifetime[] LIFETIMES = {
+            new ProjectileLifetime(600, 3000),
+            new ProjectileLifetime(900, 4000)
+    };
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // Sprite, pixel mask and hitbox per (type, direction), at index type * DIRECTIONS.length + direction
+    private final BufferedImage[] sprites = new BufferedImage[TYPES.length * DIRECTIONS.length];
+    private final CollisionMask[] masks = new CollisionMask[sprites.length];
+    private final int[] hitboxOffsetX = new int[sprites.length];
+    private final int[] hitboxOffsetY = new int[sprites.length];
+    private final int[] hitboxWidth = new int[sprites.length];
+    private final int[] hitboxHeight = new int[sprites.length];
+
+    // Bullet state, the first count entries are live
+    private int count = 0;
+    private float[] posX = new float[INITIAL_CAPACITY];
+    private float[] posY = new float[INITIAL_CAPACITY];
+    private float[] traveled = new float[INITIAL_CAPACITY];
+    private float[] ageMs = new float[INITIAL_CAPACITY];
+    private byte[] direction = new byte[INITIAL_CAPACITY];
+    private byte[] type = new byte[INITIAL_CAPACITY];
+    // Handle of the entity that fired, a dead shooter's handle simply goes stale
+    private long[] shooter = new long[INITIAL_CAPACITY];
+
+    // Shots fired off the update thread (key handlers run on the EDT) join on the next update
+    private final ConcurrentLinkedQueue<Shot> pendingShots = new ConcurrentLinkedQueue<>();
+    private volatile Thread updateThread;
+
+    private final SpatialGrid spatialGrid;
+    private final VFXManager vfxManager;
+    private final DetonationQueue detonationQueue;
+    private final InfluenceMap influenceMap;
+    private final ArrayList<Entity> hits = new ArrayList<>();
+    private int frame = 0;
+
+    // The update thread fills one snapshot while readers use the other, swapped under the lock
+    private final Object snapshotLock = new Object();
+    private RenderSnapshot writeSnapshot = new RenderSnapshot();
+    private RenderSnapshot publishedSnapshot = new RenderSnapshot();
+
+    private final long[] expiryCounts = new long[ProjectileLifetime.Expiry.values().length];
+    private long hitCount = 0;
+    private long lastUpdateNanos = 0;
+
+    private static class Shot {
+        final float x, y;
+        final long shooter;
+        final Direction direction;
+        final EntityType type;
+
+        Shot(float x, float y, long shooter, Direction direction, EntityType type) {
+            this.x = x;
+            this.y = y;
+            this.shooter = shooter;
+            this.direction = direction;
+            this.type = type;
+        }
+    }
+
+    private static class RenderSnapshot {
+        int count = 0;
+        int[] x = new int[0];
+        int[] y = new int[0];
+        byte[] sprite = new byte[0];
+    }
+
+    public BulletManager(SpatialGrid spatialGrid, VFXManager vfxManager, DetonationQueue detonationQueue,
+                         InfluenceMap influenceMap) {
+        this.spatialGrid = spatialGrid;
+        this.vfxManager = vfxManager;
+        this.detonationQueue = detonationQueue;
+        this.influenceMap = influenceMap;
+
+        for (int t = 0; t < TYPES.length; t++) {
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int index = t * DIRECTIONS.length + d;
+                sprites[index] = SpriteCache.queryCache(TYPES[t], DIRECTIONS[d]);
+                masks[index] = SpriteCache.queryMaskCache(TYPES[t], DIRECTIONS[d]);
+                Rectangle hitbox = SpriteCache.queryHitboxCache(TYPES[t], DIRECTIONS[d]);
+                if (hitbox == null) {
+                    hitbox = new Rectangle(0, 0, sprites[index].getWidth(), sprites[index].getHeight());
+                }
+                hitboxOffsetX[index] = hitbox.x;
+                hitboxOffsetY[index] = hitbox.y;
+                hitboxWidth[index] = hitbox.width;
+                hitboxHeight[index] = hitbox.height;
+            }
+        }
+        vfxManager.getLighting().addLightBatch(this);
+    }
+
+    /**
+     * Fire a bullet with its sprite origin at the given position
+     */
+    public void fire(double x, double y, Entity shooter, Direction direction, EntityType projectileType) {
+        long shooterHandle = shooter != null ? shooter.getHandle() : EntityHandles.NONE;
+        if (Thread.currentThread() != updateThread) {
+            pendingShots.add(new Shot((float) x, (float) y, shooterHandle, direction, projectileType));
+            return;
+        }
+        add((float) x, (float) y, shooterHandle, direction, projectileType);
+    }
+
+    private void add(float x, float y, long shooterHandle, Direction shotDirection, EntityType projectileType) {
+        int typeIndex = typeIndexOf(projectileType);
+        if (typeIndex < 0) {
+            return;
+        }
+        if (count == posX.length) {
+            grow(count * 2);
+        }
+        posX[count] = x;
+        posY[count] = y;
+        traveled[count] = 0;
+        ageMs[count] = 0;
+        direction[count] = (byte) shotDirection.ordinal();
+        type[count] = (byte) typeIndex;
+        shooter[count] = shooterHandle;
+        count++;
+    }
+
+    private static int typeIndexOf(EntityType projectileType) {
+        for (int t = 0; t < TYPES.length; t++) {
+            if (TYPES[t] == projectileType) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private void grow(int capacity) {
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        traveled = Arrays.copyOf(traveled, capacity);
+        ageMs = Arrays.copyOf(ageMs, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        type = Arrays.copyOf(type, capacity);
+        shooter = Arrays.copyOf(shooter, capacity);
+    }
+
+    /**
+     * Move the last bullet into the slot, the caller revisits the slot
+     */
+    private void remove(int index) {
+        int last = --count;
+        posX[index] = posX[last];
+        posY[index] = posY[last];
+        traveled[index] = traveled[last];
+        ageMs[index] = ageMs[last];
+        direction[index] = direction[last];
+        type[index] = type[last];
+        shooter[index] = shooter[last];
+    }
+
+    /**
+     * Advance all bullets by one tick. Must run after the tanks were added to the spatial grid.
+     *
+     * @param elapsedSeconds Time since the last tick
+     * @param areaMinX       Left edge of the loaded area in pixels
+     * @param areaMinY       Top edge of the loaded area in pixels
+     * @param areaSize       Width and height of the loaded area in pixels
+     */
+    public void update(float elapsedSeconds, int areaMinX, int areaMinY, int areaSize) {
+        long start = System.nanoTime();
+        updateThread = Thread.currentThread();
+        frame++;
+
+        Shot shot;
+        while ((shot = pendingShots.poll()) != null) {
+            add(shot.x, shot.y, shot.shooter, shot.direction, shot.type);
+        }
+
+        float step = SPEED * elapsedSeconds;
+        float elapsedMs = elapsedSeconds * 1000f;
+        int areaMaxX = areaMinX + areaSize;
+        int areaMaxY = areaMinY + areaSize;
+
+        for (int i = 0; i < count; i++) {
+            switch (direction[i]) {
+                case 0: // NORTH
+                    posY[i] -= step;
+                    break;
+                case 1: // SOUTH
+                    posY[i] += step;
+                    break;
+                case 2: // EAST
+                    posX[i] += step;
+                    break;
+                default: // WEST
+                    posX[i] -= step;
+                    break;
+            }
+            traveled[i] += step;
+            ageMs[i] += elapsedMs;
+
+            int shape = type[i] * DIRECTIONS.length + direction[i];
+            int minX = (int) posX[i] + hitboxOffsetX[shape];
+            int minY = (int) posY[i] + hitboxOffsetY[shape];
+            int maxX = minX + hitboxWidth[shape];
+            int maxY = minY + hitboxHeight[shape];
+
+            ProjectileLifetime.Expiry expiry = LIFETIMES[type[i]].check(traveled[i], ageMs[i]);
+            if (expiry == null && (maxX <= areaMinX || maxY <= areaMinY || minX >= areaMaxX || minY >= areaMaxY)) {
+                expiry = ProjectileLifetime.Expiry.LEFT_AREA;
+            }
+            if (expiry != null) {
+                expiryCounts[expiry.ordinal()]++;
+                remove(i--);
+                continue;
+            }
+
+            if (hit(i, minX, minY, maxX, maxY)) {
+                remove(i--);
+                continue;
+            }
+
+            if (((i + frame) & (LANE_STAMP_INTERVAL - 1)) == 0) {
+                influenceMap.stampLane(InfluenceMap.THREAT, (minX + maxX) / 2, (minY + maxY) / 2,
+                        DIRECTIONS[direction[i]], THREAT_LANE_LENGTH, 0.6f);
+            }
+        }
+
+        publishSnapshot();
+        lastUpdateNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Test the bullet against the broadphase and apply the first hit whose pixels overlap the bullet's
+     *
+     * @return True if the bullet hit something and is used up
+     */
+    private boolean hit(int index, int minX, int minY, int maxX, int maxY) {
+        hits.clear();
+        spatialGrid.queryRectangle(minX, minY, maxX, maxY, HIT_MASK, null, hits);
+        for (int h = 0; h < hits.size(); h++) {
+            Entity target = hits.get(h);
+            // Don't damage the shooter or anything already destroyed this tick
+            long targetHandle = target.getHandle();
+            if (targetHandle != EntityHandles.NONE && targetHandle == shooter[index] || target.isMarkedForRemoval()) {
+                continue;
+            }
+            // Hitboxes overlap, the transparent corners of the sprites must not count as a hit
+            int shape = type[index] * DIRECTIONS.length + direction[index];
+            if (!spatialGrid.pixelsOverlap(masks[shape], (int) posX[index], (int) posY[index], target)) {
+                continue;
+            }
+            int centerX = (minX + maxX) / 2;
+            int centerY = (minY + maxY) / 2;
+            int bulletType = type[index];
+            vfxManager.createExplosion(centerX, centerY, 25, 1.5f);
+            target.takeDamage(DAMAGE[bulletType]);
+            // Half damage to whatever else is around the impact, never to the shooter
+            if (SPLASH_RADIUS[bulletType] > 0) {
+                detonationQueue.splash(centerX, centerY, SPLASH_RADIUS[bulletType], DAMAGE[bulletType] / 2,
+                        SPLASH_MASK, shooter[index], targetHandle);
+            }
+            hitCount++;
+            hits.clear();
+            return true;
+        }
+        hits.clear();
+        return false;
+    }
+
+    private void publishSnapshot() {
+        RenderSnapshot snapshot = writeSnapshot;
+        if (snapshot.x.length < count) {
+            int capacity = posX.length;
+            snapshot.x = new int[capacity];
+            snapshot.y = new int[capacity];
+            snapshot.sprite = new byte[capacity];
+        }
+        for (int i = 0; i < count; i++) {
+            snapshot.x[i] = (int) posX[i];
+            snapshot.y[i] = (int) posY[i];
+            snapshot.sprite[i] = (byte) (type[i] * DIRECTIONS.length + direction[i]);
+        }
+        snapshot.count = count;
+        synchronized (snapshotLock) {
+            writeSnapshot = publishedSnapshot;
+            publishedSnapshot = snapshot;
+        }
+    }
+
+    /**
+     * Queue the bullets of the last completed tick that are inside the view, in world coordinates
+     */
+    public void submit(RenderQueue queue, Rectangle cameraView) {
+        int minX = cameraView.x - 32;
+        int minY = cameraView.y - 32;
+        int maxX = cameraView.x + cameraView.width;
+        int maxY = cameraView.y + cameraView.height;
+        synchronized (snapshotLock) {
+            RenderSnapshot snapshot = publishedSnapshot;
+            for (int i = 0; i < snapshot.count; i++) {
+                int x = snapshot.x[i];
+                int y = snapshot.y[i];
+                if (x >= minX && y >= minY && x < maxX && y < maxY) {
+                    queue.drawImage(RenderQueue.LAYER_BULLETS, false, sprites[snapshot.sprite[i]], x, y);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void drawLights(Graphics2D lightG, Rectangle cameraView, Lighting lighting) {
+        int drawn = 0;
+        synchronized (snapshotLock) {
+            RenderSnapshot snapshot = publishedSnapshot;
+            for (int i = 0; i < snapshot.count && drawn < MAX_LIGHTS_PER_FRAME; i++) {
+                int shape = snapshot.sprite[i];
+                int lightX = snapshot.x[i] + hitboxOffsetX[shape] + hitboxWidth[shape] / 2;
+                int lightY = snapshot.y[i] + hitboxOffsetY[shape] + hitboxHeight[shape] / 2;
+                if (cameraView.contains(lightX, lightY)) {
+                    lighting.drawLight(lightG, lightX, lightY, LIGHT_RADIUS, LIGHT_STRENGTH, cameraView);
+                    drawn++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Every bullet of the last completed tick is a light, even if only some of them are drawn
+     */
+    @Override
+    public int getLightCount() {
+        synchronized (snapshotLock) {
+            return publishedSnapshot.count;
+        }
+    }
+
+    /**
+     * Bullets in flight after the last tick
+     */
+    public int getBulletCount() {
+        return count;
+    }
+
+    /**
+     * Bullets expired for the given reason since startup
+     */
+    public long getExpiryCount(ProjectileLifetime.Expiry expiry) {
+        return expiryCounts[expiry.ordinal()];
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Time spent in the last update, in milliseconds
+     */
+    public double getUpdateMillis() {
+        return lastUpdateNanos / 1_000_000.0;
+    }
+}
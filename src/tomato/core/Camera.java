@@ -93,7 +93,7 @@ public class Camera {
     }
 
     /**
-     * Apply camera transform to Graphics2D
+     * Apply camera transform to Graphics2D, on top of its current transform
      */
     public void applyTransform(Graphics2D g, int screenWidth, int screenHeight) {
         // Create camera transform
@@ -108,8 +108,8 @@ public class Camera {
         // Translate by camera position (negative to move world opposite to camera)
         cameraTransform.translate(-x, -y);
 
-        // Apply the transform
-        g.setTransform(cameraTransform);
+        // Apply the transform, keeping the renderer's scale to the internal resolution
+        g.transform(cameraTransform);
     }
 
     /**
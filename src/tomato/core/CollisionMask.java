@@ -0,0 +1,86 @@
+package tomato.core;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Packed 1-bit alpha mask of a sprite used for pixel-perfect narrow-phase tests.
+ * Each row is stored as 64-pixel words (bit i of word j is pixel j * 64 + i),
+ * so overlapping rows are compared 64 pixels at a time.
+ */
+public class CollisionMask {
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] bits;
+
+    public CollisionMask(BufferedImage sprite) {
+        this.width = sprite.getWidth();
+        this.height = sprite.getHeight();
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.bits = new long[wordsPerRow * height];
+
+        int[] row = new int[width];
+        for (int yy = 0; yy < height; yy++) {
+            sprite.getRGB(0, yy, width, 1, row, 0, width);
+            int rowStart = yy * wordsPerRow;
+            for (int xx = 0; xx < width; xx++) {
+                if ((row[xx] >>> 24) != 0) { // non-transparent pixel
+                    bits[rowStart + (xx >>> 6)] |= 1L << (xx & 63);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if any opaque pixels overlap when the other mask's origin is
+     * offset by (dx, dy) from this mask's origin
+     */
+    public boolean overlaps(CollisionMask other, int dx, int dy) {
+        int x0 = Math.max(0, dx);
+        int x1 = Math.min(width, dx + other.width);
+        int y0 = Math.max(0, dy);
+        int y1 = Math.min(height, dy + other.height);
+        if (x0 >= x1 || y0 >= y1) {
+            return false;
+        }
+
+        int span = x1 - x0;
+        for (int yy = y0; yy < y1; yy++) {
+            int rowA = yy * wordsPerRow;
+            int rowB = (yy - dy) * other.wordsPerRow;
+            for (int offset = 0; offset < span; offset += 64) {
+                long overlap = wordAt(bits, rowA, wordsPerRow, x0 + offset)
+                        & wordAt(other.bits, rowB, other.wordsPerRow, x0 - dx + offset);
+                int remaining = span - offset;
+                if (remaining < 64) {
+                    overlap &= (1L << remaining) - 1;
+                }
+                if (overlap != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read 64 pixels of a row starting at an arbitrary x, stitching two words together
+     */
+    private static long wordAt(long[] bits, int rowStart, int wordsPerRow, int x) {
+        int word = x >>> 6;
+        int shift = x & 63;
+        long value = bits[rowStart + word] >>> shift;
+        if (shift != 0 && word + 1 < wordsPerRow) {
+            value |= bits[rowStart + word + 1] << (64 - shift);
+        }
+        return value;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
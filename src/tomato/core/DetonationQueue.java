@@ -0,0 +1,149 @@
+package tomato.core;
+
+import tomato.entity.Entity;
+import tomato.vfx.VFXManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Area-of-effect damage resolved as a breadth-first wavefront.
+ * Detonations are queued instead of applied recursively: when a blast damages
+ * something that detonates in turn (a landmine), that entity only enqueues its
+ * own blast, which is processed later in the same tick or in the next one.
+ * Each source detonates at most once, and the work per tick is capped, so a
+ * large minefield chain reaction spreads over a few frames instead of stalling one.
+ */
+public class DetonationQueue {
+    private static final int MAX_DETONATIONS_PER_TICK = 1024;
+    private static final int MAX_EXPLOSION_EFFECTS_PER_TICK = 16;
+
+    private final ArrayDeque<Detonation> wavefront = new ArrayDeque<>();
+    private final Set<Entity> detonatedSources = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ArrayList<Entity> targets = new ArrayList<>();
+    private final SpatialGrid spatialGrid;
+    private final VFXManager vfxManager;
+    private final InfluenceMap influenceMap;
+
+    private int lastTickDetonations = 0;
+    private long totalDetonations = 0;
+
+    private static class Detonation {
+        final int x, y;
+        final int radius;
+        final int damage;
+        final int mask;
+        final long ignored;
+        final long alreadyHit;
+        final boolean visible;
+
+        Detonation(int x, int y, int radius, int damage, int mask, long ignored, long alreadyHit, boolean visible) {
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.damage = damage;
+            this.mask = mask;
+            this.ignored = ignored;
+            this.alreadyHit = alreadyHit;
+            this.visible = visible;
+        }
+    }
+
+    public DetonationQueue(SpatialGrid spatialGrid, VFXManager vfxManager, InfluenceMap influenceMap) {
+        this.spatialGrid = spatialGrid;
+        this.vfxManager = vfxManager;
+        this.influenceMap = influenceMap;
+    }
+
+    /**
+     * Queue a blast centered on the source entity. Sources that already detonated are ignored.
+     *
+     * @param source The detonating entity
+     * @param radius Blast radius in pixels, damage falls off linearly to the edge
+     * @param damage Damage at the center
+     * @param mask   Collision layers the blast affects
+     * @return True if the blast was queued
+     */
+    public boolean detonate(Entity source, int radius, int damage, int mask) {
+        if (!detonatedSources.add(source)) {
+            return false;
+        }
+        wavefront.add(new Detonation(source.getCenterX(), source.getCenterY(), radius, damage, mask,
+                EntityHandles.NONE, EntityHandles.NONE, true));
+        return true;
+    }
+
+    /**
+     * Queue splash damage around an impact point, e.g. a projectile hit
+     *
+     * @param ignored    Handle of the entity that never takes damage from this blast (the shooter), or NONE
+     * @param alreadyHit Handle of the entity that already took the direct hit, or NONE
+     */
+    public void splash(int x, int y, int radius, int damage, int mask, long ignored, long alreadyHit) {
+        wavefront.add(new Detonation(x, y, radius, damage, mask, ignored, alreadyHit, false));
+    }
+
+    /**
+     * Process queued detonations breadth-first, up to the per-tick budget
+     */
+    public void process() {
+        int processed = 0;
+        int effects = 0;
+
+        while (processed < MAX_DETONATIONS_PER_TICK && !wavefront.isEmpty()) {
+            Detonation detonation = wavefront.poll();
+            processed++;
+
+            if (detonation.visible && effects < MAX_EXPLOSION_EFFECTS_PER_TICK) {
+                vfxManager.createExplosion(detonation.x, detonation.y, detonation.radius, 2.0f);
+                effects++;
+            }
+            // AI keeps away from where things just blew up
+            influenceMap.stampBlast(detonation.x, detonation.y, detonation.radius);
+
+            targets.clear();
+            spatialGrid.queryRadius(detonation.x, detonation.y, detonation.radius, detonation.mask, targets);
+            for (int i = 0; i < targets.size(); i++) {
+                Entity target = targets.get(i);
+                long handle = target.getHandle();
+                if (handle != EntityHandles.NONE && (handle == detonation.ignored || handle == detonation.alreadyHit) ||
+                        target.isMarkedForRemoval()) {
+                    continue;
+                }
+                // linear falloff on the distance to the closest point of the hitbox, the query
+                // only returned hitboxes within the radius
+                double distance = Math.sqrt(target.distanceSquaredTo(detonation.x, detonation.y));
+                int damage = (int) Math.round(detonation.damage * (1.0 - distance / detonation.radius));
+                // detonating targets only enqueue their own blast here
+                target.takeDamage(Math.max(1, damage));
+            }
+        }
+
+        if (wavefront.isEmpty()) {
+            detonatedSources.clear();
+        }
+        lastTickDetonations = processed;
+        totalDetonations += processed;
+    }
+
+    /**
+     * Detonations processed during the last tick
+     */
+    public int getLastTickDetonations() {
+        return lastTickDetonations;
+    }
+
+    public long getTotalDetonations() {
+        return totalDetonations;
+    }
+
+    /**
+     * Detonations waiting for the next tick
+     */
+    public int getPendingDetonations() {
+        return wavefront.size();
+    }
+}
@@ -0,0 +1,318 @@
+package tomato.core;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A recorded frame of world draws that can be played back onto any Graphics2D or render queue
+ * target, as often as needed and without touching the world again.
+ * Commands are stored as a flat int[] of an opcode followed by its operands. Color changes are
+ * their own command and only recorded when the color actually changes, and images are stored
+ * once each in a side table and referenced by index.
+ *
+ * The world records a list at the end of every update from the sorted render queue, the renderer
+ * replays the last finished one. A copy of a list can be replayed on its own, e.g. to benchmark
+ * the drawing of a captured frame.
+ *
+ * Not thread safe, a list is either being recorded or being replayed.
+ */
+public class DisplayList implements RenderQueue.Target {
+    private static final Logger logger = Logger.getLogger(DisplayList.class.getName());
+
+    // Opcodes, with their operands
+    private static final int SET_COLOR = 0;  // argb
+    private static final int DRAW_IMAGE = 1; // image index, x, y
+    private static final int FILL_RECT = 2;  // x, y, width, height
+    private static final int FILL_OVAL = 3;  // x, y, width, height
+    private static final int DRAW_RECT = 4;  // x, y, width, height
+
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int BENCHMARK_WARMUP_REPLAYS = 50;
+    private static final int BENCHMARK_REPLAYS = 500;
+
+    private int[] ops = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    private BufferedImage[] images = new BufferedImage[64];
+    private int imageCount = 0;
+    private final IdentityHashMap<BufferedImage, Integer> imageIndices = new IdentityHashMap<>();
+    private final Rectangle view = new Rectangle();
+
+    private int commandCount = 0;
+    private int stateChanges = 0;
+    private int currentColor = 0;
+    private boolean colorSet = false;
+    private int lastImage = -1;
+
+    /**
+     * Forget the recorded commands and start recording a frame of the given view
+     */
+    public void begin(Rectangle recordedView) {
+        view.setBounds(recordedView);
+        size = 0;
+        Arrays.fill(images, 0, imageCount, null);
+        imageCount = 0;
+        imageIndices.clear();
+        commandCount = 0;
+        stateChanges = 0;
+        colorSet = false;
+        lastImage = -1;
+    }
+
+    private void ensureCapacity(int operands) {
+        if (size + operands > ops.length) {
+            ops = Arrays.copyOf(ops, Math.max(ops.length * 2, size + operands));
+        }
+    }
+
+    private int imageIndex(BufferedImage image) {
+        Integer index = imageIndices.get(image);
+        if (index == null) {
+            if (imageCount == images.length) {
+                images = Arrays.copyOf(images, imageCount * 2);
+            }
+            index = imageCount++;
+            images[index] = image;
+            imageIndices.put(image, index);
+        }
+        return index;
+    }
+
+    @Override
+    public void drawImage(BufferedImage image, int drawX, int drawY) {
+        int index = imageIndex(image);
+        if (index != lastImage) {
+            lastImage = index;
+            stateChanges++;
+        }
+        ensureCapacity(4);
+        ops[size++] = DRAW_IMAGE;
+        ops[size++] = index;
+        ops[size++] = drawX;
+        ops[size++] = drawY;
+        commandCount++;
+    }
+
+    @Override
+    public void fillRect(int argb, int drawX, int drawY, int drawWidth, int drawHeight) {
+        addShape(FILL_RECT, argb, drawX, drawY, drawWidth, drawHeight);
+    }
+
+    @Override
+    public void fillOval(int argb, int drawX, int drawY, int drawWidth, int drawHeight) {
+        addShape(FILL_OVAL, argb, drawX, drawY, drawWidth, drawHeight);
+    }
+
+    @Override
+    public void drawRect(int argb, int drawX, int drawY, int drawWidth, int drawHeight) {
+        addShape(DRAW_RECT, argb, drawX, drawY, drawWidth, drawHeight);
+    }
+
+    private void addShape(int opcode, int argb, int drawX, int drawY, int drawWidth, int drawHeight) {
+        ensureCapacity(7);
+        if (!colorSet || argb != currentColor) {
+            currentColor = argb;
+            colorSet = true;
+            ops[size++] = SET_COLOR;
+            ops[size++] = argb;
+            stateChanges++;
+        }
+        ops[size++] = opcode;
+        ops[size++] = drawX;
+        ops[size++] = drawY;
+        ops[size++] = drawWidth;
+        ops[size++] = drawHeight;
+        commandCount++;
+    }
+
+    /**
+     * Issue the recorded draws, in world coordinates
+     */
+    public void replay(Graphics2D g) {
+        Color originalColor = g.getColor();
+        int[] code = ops;
+        int end = size;
+        int i = 0;
+        while (i < end) {
+            switch (code[i]) {
+                case SET_COLOR:
+                    g.setColor(new Color(code[i + 1], true));
+                    i += 2;
+                    break;
+                case DRAW_IMAGE:
+                    g.drawImage(images[code[i + 1]], code[i + 2], code[i + 3], null);
+                    i += 4;
+                    break;
+                case FILL_RECT:
+                    g.fillRect(code[i + 1], code[i + 2], code[i + 3], code[i + 4]);
+                    i += 5;
+                    break;
+                case FILL_OVAL:
+                    g.fillOval(code[i + 1], code[i + 2], code[i + 3], code[i + 4]);
+                    i += 5;
+                    break;
+                default:
+                    g.drawRect(code[i + 1], code[i + 2], code[i + 3], code[i + 4]);
+                    i += 5;
+                    break;
+            }
+        }
+        g.setColor(originalColor);
+    }
+
+    /**
+     * Hand the recorded draws to a target, in world coordinates
+     */
+    public void replay(RenderQueue.Target target) {
+        int[] code = ops;
+        int end = size;
+        int color = 0;
+        int i = 0;
+        while (i < end) {
+            switch (code[i]) {
+                case SET_COLOR:
+                    color = code[i + 1];
+                    i += 2;
+                    break;
+                case DRAW_IMAGE:
+                    target.drawImage(images[code[i + 1]], code[i + 2], code[i + 3]);
+                    i += 4;
+                    break;
+                case FILL_RECT:
+                    target.fillRect(color, code[i + 1], code[i + 2], code[i + 3], code[i + 4]);
+                    i += 5;
+                    break;
+                case FILL_OVAL:
+                    target.fillOval(color, code[i + 1], code[i + 2], code[i + 3], code[i + 4]);
+                    i += 5;
+                    break;
+                default:
+                    target.drawRect(color, code[i + 1], code[i + 2], code[i + 3], code[i + 4]);
+                    i += 5;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Independent copy of the recorded frame, trimmed to size
+     */
+    public DisplayList copy() {
+        DisplayList copy = new DisplayList();
+        copy.ops = Arrays.copyOf(ops, size);
+        copy.size = size;
+        copy.images = Arrays.copyOf(images, Math.max(1, imageCount));
+        copy.imageCount = imageCount;
+        for (int i = 0; i < imageCount; i++) {
+            copy.imageIndices.put(images[i], i);
+        }
+        copy.view.setBounds(view);
+        copy.commandCount = commandCount;
+        copy.stateChanges = stateChanges;
+        return copy;
+    }
+
+    /**
+     * Replay the list many times onto a view-sized image and into a target that ignores the draws,
+     * which is the cost of walking the list alone, and log the results.
+     * Takes a moment, run it off the render thread and the update thread on a copy.
+     *
+     * @return One line per result
+     */
+    public List<String> benchmarkReplay() {
+        List<String> results = new ArrayList<>();
+        BufferedImage target = ImageFactory.createOpaque(Math.max(1, view.width), Math.max(1, view.height));
+        Graphics2D g = target.createGraphics();
+        try {
+            g.translate(-view.x, -view.y);
+            for (int i = 0; i < BENCHMARK_WARMUP_REPLAYS; i++) {
+                replay(g);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_REPLAYS; i++) {
+                replay(g);
+            }
+            double graphicsMillis = (System.nanoTime() - start) / 1_000_000.0 / BENCHMARK_REPLAYS;
+            results.add(String.format("Replay onto Graphics2D %.3fms per frame", graphicsMillis));
+        } finally {
+            g.dispose();
+        }
+
+        CountingTarget counter = new CountingTarget();
+        for (int i = 0; i < BENCHMARK_WARMUP_REPLAYS; i++) {
+            replay(counter);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_REPLAYS; i++) {
+            replay(counter);
+        }
+        double walkMillis = (System.nanoTime() - start) / 1_000_000.0 / BENCHMARK_REPLAYS;
+        results.add(String.format("Walking the list alone %.3fms per frame (%d draws seen)",
+                walkMillis, counter.draws / (BENCHMARK_WARMUP_REPLAYS + BENCHMARK_REPLAYS)));
+        results.add(String.format("Frame: %d draws, %d state changes, %d images, %d bytes",
+                commandCount, stateChanges, imageCount, getSizeBytes()));
+        for (String line : results) {
+            logger.info(line);
+        }
+        return results;
+    }
+
+    /**
+     * Target that only counts what it is handed
+     */
+    private static class CountingTarget implements RenderQueue.Target {
+        long draws = 0;
+
+        @Override
+        public void drawImage(BufferedImage image, int x, int y) {
+            draws++;
+        }
+
+        @Override
+        public void fillRect(int argb, int x, int y, int width, int height) {
+            draws++;
+        }
+
+        @Override
+        public void fillOval(int argb, int x, int y, int width, int height) {
+            draws++;
+        }
+
+        @Override
+        public void drawRect(int argb, int x, int y, int width, int height) {
+            draws++;
+        }
+    }
+
+    /**
+     * View the list was recorded for, in world coordinates
+     */
+    public Rectangle getView() {
+        return new Rectangle(view);
+    }
+
+    /**
+     * Recorded draws, not counting color changes
+     */
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * Switches of image or color a replay onto a Graphics2D makes
+     */
+    public int getStateChanges() {
+        return stateChanges;
+    }
+
+    /**
+     * Size of the command stream, the image table holds references only
+     */
+    public int getSizeBytes() {
+        return size * Integer.BYTES;
+    }
+}
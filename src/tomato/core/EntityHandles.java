@@ -0,0 +1,150 @@
+package tomato.core;
+
+import tomato.entity.Entity;
+
+import java.util.Arrays;
+
+/**
+ * Table of handles to the entities in the world.
+ * A handle packs a slot index (low 32 bits) and the generation of that slot (high 32 bits).
+ * The generation is bumped every time a slot is released, so a handle to an entity that has
+ * left the world no longer resolves, even after its slot was reused by a new entity.
+ * Handles are plain numbers: other entities, bullets and blasts hold them instead of
+ * references, so nothing keeps a dead entity reachable.
+ *
+ * Only the update thread registers and releases handles, World queues spawns from other threads
+ * until its next update, so nothing here takes a lock. Resolving checks the slot's generation and
+ * reads its entity. The update thread always sees the current table, the render thread may see a
+ * slot as it was a tick ago, which is fine for following a camera target.
+ */
+public class EntityHandles {
+    public static final long NONE = 0L;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Replaced as a whole when the table grows, readers work on the arrays they read
+    private volatile Entity[] entities = new Entity[INITIAL_CAPACITY];
+    // Generations start at 1, so no live handle is ever NONE
+    private volatile int[] generations = new int[INITIAL_CAPACITY];
+    // Stack of released slots, reused before the table grows
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+    private int usedSlots = 0;
+    private volatile int liveCount = 0;
+    // A debug count, a resolve on the render thread racing one on the update thread may be lost
+    private volatile int staleResolves = 0;
+
+    public EntityHandles() {
+        Arrays.fill(generations, 1);
+    }
+
+    private static long pack(int index, int generation) {
+        return ((long) generation << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    private static int indexOf(long handle) {
+        return (int) handle;
+    }
+
+    private static int generationOf(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    /**
+     * Give the entity a handle, unless it already has a live one in this table
+     *
+     * @return The entity's handle
+     */
+    public long register(Entity entity) {
+        long existing = entity.getHandle();
+        if (existing != NONE && lookup(existing) == entity) {
+            return existing;
+        }
+
+        int index;
+        if (freeCount > 0) {
+            index = freeSlots[--freeCount];
+        } else {
+            if (usedSlots == entities.length) {
+                grow();
+            }
+            index = usedSlots++;
+        }
+        entities[index] = entity;
+        liveCount++;
+        long handle = pack(index, generations[index]);
+        entity.setHandle(handle);
+        return handle;
+    }
+
+    private void grow() {
+        int capacity = entities.length * 2;
+        int oldCapacity = generations.length;
+        // generations first, so a reader that sees the new entities also sees their generations
+        int[] grownGenerations = Arrays.copyOf(generations, capacity);
+        Arrays.fill(grownGenerations, oldCapacity, capacity, 1);
+        generations = grownGenerations;
+        entities = Arrays.copyOf(entities, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+
+    /**
+     * Free the entity's slot, every handle to it goes stale
+     */
+    public void release(Entity entity) {
+        long handle = entity.getHandle();
+        if (handle == NONE || lookup(handle) != entity) {
+            return;
+        }
+        int index = indexOf(handle);
+        entities[index] = null;
+        // Skip 0 when the counter wraps, so the handle can never become NONE
+        int generation = generations[index] + 1;
+        generations[index] = generation == 0 ? 1 : generation;
+        freeSlots[freeCount++] = index;
+        liveCount--;
+        entity.setHandle(NONE);
+    }
+
+    /**
+     * The entity the handle refers to, null if it is NONE or the entity has left the world
+     */
+    public Entity resolve(long handle) {
+        Entity entity = lookup(handle);
+        if (entity == null && handle != NONE) {
+            staleResolves++;
+        }
+        return entity;
+    }
+
+    private Entity lookup(long handle) {
+        int index = indexOf(handle);
+        int[] generationTable = generations;
+        Entity[] entityTable = entities;
+        if (handle == NONE || index < 0 || index >= entityTable.length || index >= generationTable.length) {
+            return null;
+        }
+        if (generationTable[index] != generationOf(handle)) {
+            return null;
+        }
+        return entityTable[index];
+    }
+
+    public boolean isAlive(long handle) {
+        return lookup(handle) != null;
+    }
+
+    /**
+     * Entities that currently hold a handle
+     */
+    public int getLiveCount() {
+        return liveCount;
+    }
+
+    /**
+     * Resolves of handles whose entity had already left the world, since the start
+     */
+    public int getStaleResolves() {
+        return staleResolves;
+    }
+}
@@ -0,0 +1,314 @@
+package tomato.core;
+
+import tomato.entity.CollisionLayer;
+import tomato.entity.Direction;
+import tomato.entity.Entity;
+import tomato.entity.EntityType;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Shared pathfinding toward the player.
+ * The loaded chunks are divided into navigation cells and a single Dijkstra search runs
+ * outward from the player's cell. Every cell ends up pointing at its cheapest neighbour,
+ * so any number of tanks can look up their next direction in constant time.
+ *
+ * Cells under static entities that tanks collide with (landmines) are expensive rather than
+ * blocked, so paths go around mines when there is a way around.
+ *
+ * The field is double buffered: a new one is built when the player changes cells, the loaded
+ * area moves, or periodically to pick up new mines. The build is spread over frames with an
+ * expansion budget, and readers keep using the last completed field until it is finished.
+ */
+public class FlowField {
+    public static final int NAV_CELL_SIZE = 32;
+
+    private static final int BASE_COST = 1;
+    private static final int MINE_COST = 40;
+    private static final int MINE_MARGIN_COST = 6;
+    // A tank's hitbox reaches about one nav cell past its center
+    private static final int MINE_MARGIN_CELLS = 1;
+    private static final int MAX_EXPANSIONS_PER_TICK = 4096;
+    // Rebuild at least this often so spawned and detonated mines are picked up
+    private static final int REFRESH_INTERVAL_FRAMES = 30;
+    private static final int TANK_COLLISION_MASK = EntityType.RED_ENEMY_TANK.getCollisionMask();
+
+    private static final int UNREACHED = Integer.MAX_VALUE;
+    private static final byte NO_DIRECTION = -1;
+    private static final Direction[] DIRECTIONS = {Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST};
+    private static final int[] STEP_X = {0, 1, 0, -1};
+    private static final int[] STEP_Y = {-1, 0, 1, 0};
+
+    // Field under construction, in nav cells
+    private boolean building = false;
+    private int buildOriginX, buildOriginY, buildWidth, buildHeight;
+    private int buildGoalX, buildGoalY;
+    private int[] cost = new int[0];
+    private int[] distance = new int[0];
+    private byte[] buildDirections = new byte[0];
+    // Open set of the search: (distance << 32 | cell index) in a binary min-heap
+    private long[] heap = new long[64];
+    private int heapSize = 0;
+
+    // Last completed field, the one readers see
+    private boolean ready = false;
+    private int originX, originY, width, height;
+    private byte[] directions = new byte[0];
+
+    private int requestedGoalX = Integer.MIN_VALUE, requestedGoalY = Integer.MIN_VALUE;
+    private int requestedOriginX = Integer.MIN_VALUE, requestedOriginY = Integer.MIN_VALUE;
+    private int framesSinceBuild = 0;
+
+    // Cost counters
+    private int expansions = 0;
+    private long buildNanos = 0;
+    private int lastExpansions = 0;
+    private long lastBuildNanos = 0;
+    private int completedBuilds = 0;
+
+    /**
+     * Advance the field by one frame.
+     *
+     * @param goal      Entity the field leads to
+     * @param areaMinX  Left edge of the navigable area in pixels
+     * @param areaMinY  Top edge of the navigable area in pixels
+     * @param areaSize  Width and height of the navigable area in pixels
+     * @param obstacles Static entities to stamp as costs
+     */
+    public void update(Entity goal, int areaMinX, int areaMinY, int areaSize, Collection<Entity> obstacles) {
+        lastExpansions = expansions;
+        lastBuildNanos = buildNanos;
+        expansions = 0;
+        buildNanos = 0;
+        framesSinceBuild++;
+
+        int goalX = Math.floorDiv(goal.getCenterX(), NAV_CELL_SIZE);
+        int goalY = Math.floorDiv(goal.getCenterY(), NAV_CELL_SIZE);
+        int areaOriginX = Math.floorDiv(areaMinX, NAV_CELL_SIZE);
+        int areaOriginY = Math.floorDiv(areaMinY, NAV_CELL_SIZE);
+        boolean moved = goalX != requestedGoalX || goalY != requestedGoalY ||
+                areaOriginX != requestedOriginX || areaOriginY != requestedOriginY;
+
+        long start = System.nanoTime();
+        // A build in progress is finished first, restarting it on every goal change could starve it
+        if (!building && (moved || framesSinceBuild >= REFRESH_INTERVAL_FRAMES)) {
+            requestedGoalX = goalX;
+            requestedGoalY = goalY;
+            requestedOriginX = areaOriginX;
+            requestedOriginY = areaOriginY;
+            int sizeInCells = areaSize / NAV_CELL_SIZE;
+            startBuild(areaOriginX, areaOriginY, sizeInCells, sizeInCells, goalX, goalY, obstacles);
+        }
+        if (building) {
+            expand(MAX_EXPANSIONS_PER_TICK);
+        }
+        buildNanos += System.nanoTime() - start;
+    }
+
+    private void startBuild(int buildOriginX, int buildOriginY, int buildWidth, int buildHeight,
+                            int goalX, int goalY, Collection<Entity> obstacles) {
+        this.buildOriginX = buildOriginX;
+        this.buildOriginY = buildOriginY;
+        this.buildWidth = buildWidth;
+        this.buildHeight = buildHeight;
+        this.buildGoalX = goalX - buildOriginX;
+        this.buildGoalY = goalY - buildOriginY;
+        framesSinceBuild = 0;
+
+        int cells = buildWidth * buildHeight;
+        if (cost.length != cells) {
+            cost = new int[cells];
+            distance = new int[cells];
+            buildDirections = new byte[cells];
+        }
+        Arrays.fill(cost, BASE_COST);
+        Arrays.fill(distance, UNREACHED);
+        heapSize = 0;
+
+        for (Entity obstacle : obstacles) {
+            if (CollisionLayer.interacts(TANK_COLLISION_MASK, obstacle.getCollisionLayer())) {
+                stampObstacle(obstacle);
+            }
+        }
+
+        building = true;
+        if (buildGoalX < 0 || buildGoalY < 0 || buildGoalX >= buildWidth || buildGoalY >= buildHeight) {
+            // goal outside the area, nothing can reach it
+            finishBuild();
+            return;
+        }
+        int goalIndex = buildGoalY * buildWidth + buildGoalX;
+        distance[goalIndex] = 0;
+        push(goalIndex, 0);
+    }
+
+    private void stampObstacle(Entity obstacle) {
+        int minX = Math.floorDiv(obstacle.getMinX(), NAV_CELL_SIZE) - buildOriginX;
+        int minY = Math.floorDiv(obstacle.getMinY(), NAV_CELL_SIZE) - buildOriginY;
+        int maxX = Math.floorDiv(obstacle.getMaxX() - 1, NAV_CELL_SIZE) - buildOriginX;
+        int maxY = Math.floorDiv(obstacle.getMaxY() - 1, NAV_CELL_SIZE) - buildOriginY;
+
+        for (int y = minY - MINE_MARGIN_CELLS; y <= maxY + MINE_MARGIN_CELLS; y++) {
+            if (y < 0 || y >= buildHeight) {
+                continue;
+            }
+            for (int x = minX - MINE_MARGIN_CELLS; x <= maxX + MINE_MARGIN_CELLS; x++) {
+                if (x < 0 || x >= buildWidth) {
+                    continue;
+                }
+                boolean covered = x >= minX && x <= maxX && y >= minY && y <= maxY;
+                int index = y * buildWidth + x;
+                cost[index] = Math.max(cost[index], covered ? MINE_COST : MINE_MARGIN_COST);
+            }
+        }
+    }
+
+    /**
+     * Run the search for up to the given number of cell expansions
+     */
+    private void expand(int budget) {
+        while (heapSize > 0 && budget-- > 0) {
+            long entry = pop();
+            int cellDistance = (int) (entry >>> 32);
+            int index = (int) entry;
+            if (cellDistance > distance[index]) {
+                continue; // stale entry, the cell was reached cheaper since
+            }
+            expansions++;
+            int x = index % buildWidth;
+            int y = index / buildWidth;
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int nx = x + STEP_X[d];
+                int ny = y + STEP_Y[d];
+                if (nx < 0 || ny < 0 || nx >= buildWidth || ny >= buildHeight) {
+                    continue;
+                }
+                int neighbour = ny * buildWidth + nx;
+                int neighbourDistance = cellDistance + cost[neighbour];
+                if (neighbourDistance < distance[neighbour]) {
+                    distance[neighbour] = neighbourDistance;
+                    push(neighbour, neighbourDistance);
+                }
+            }
+        }
+        if (heapSize == 0) {
+            finishBuild();
+        }
+    }
+
+    /**
+     * Point every cell at its cheapest neighbour and publish the field
+     */
+    private void finishBuild() {
+        for (int y = 0; y < buildHeight; y++) {
+            for (int x = 0; x < buildWidth; x++) {
+                int index = y * buildWidth + x;
+                int best = distance[index];
+                byte bestDirection = NO_DIRECTION;
+                for (int d = 0; d < DIRECTIONS.length; d++) {
+                    int nx = x + STEP_X[d];
+                    int ny = y + STEP_Y[d];
+                    if (nx < 0 || ny < 0 || nx >= buildWidth || ny >= buildHeight) {
+                        continue;
+                    }
+                    int neighbourDistance = distance[ny * buildWidth + nx];
+                    if (neighbourDistance < best) {
+                        best = neighbourDistance;
+                        bestDirection = (byte) d;
+                    }
+                }
+                buildDirections[index] = bestDirection;
+            }
+        }
+
+        byte[] published = directions;
+        directions = buildDirections;
+        buildDirections = published.length == directions.length ? published : new byte[directions.length];
+        originX = buildOriginX;
+        originY = buildOriginY;
+        width = buildWidth;
+        height = buildHeight;
+        ready = true;
+        building = false;
+        completedBuilds++;
+    }
+
+    private void push(int index, int cellDistance) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        long entry = ((long) cellDistance << 32) | index;
+        int slot = heapSize++;
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (heap[parent] <= entry) {
+                break;
+            }
+            heap[slot] = heap[parent];
+            slot = parent;
+        }
+        heap[slot] = entry;
+    }
+
+    private long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int slot = 0;
+        while (true) {
+            int child = slot * 2 + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[slot] = heap[child];
+            slot = child;
+        }
+        heap[slot] = last;
+        return top;
+    }
+
+    /**
+     * Direction to move from the given world position to get closer to the goal,
+     * null when the position is outside the field, unreachable, or already at the goal
+     */
+    public Direction getDirection(int worldX, int worldY) {
+        if (!ready) {
+            return null;
+        }
+        int x = Math.floorDiv(worldX, NAV_CELL_SIZE) - originX;
+        int y = Math.floorDiv(worldY, NAV_CELL_SIZE) - originY;
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return null;
+        }
+        byte direction = directions[y * width + x];
+        return direction == NO_DIRECTION ? null : DIRECTIONS[direction];
+    }
+
+    /**
+     * Cells expanded by the search during the last frame
+     */
+    public int getExpansions() {
+        return lastExpansions;
+    }
+
+    /**
+     * Time spent building the field during the last frame, in milliseconds
+     */
+    public double getBuildMillis() {
+        return lastBuildNanos / 1_000_000.0;
+    }
+
+    public int getCompletedBuilds() {
+        return completedBuilds;
+    }
+
+    public int getCellCount() {
+        return width * height;
+    }
+}
@@ -2,6 +2,7 @@ package tomato.core;
 
 import tomato.Game;
 
+import java.util.Arrays;
 import java.util.concurrent.locks.LockSupport;
 
 
@@ -12,6 +13,12 @@ public class GameLoop implements Runnable {
     private static final int MENU_FPS = 60; // Fixed FPS for menus
     // Improved FPS tracking
     private final long[] frameTimes = new long[FPS_SAMPLE_SIZE];
+    // Time each frame took to update and draw, without the sleep after it
+    private final long[] workTimes = new long[FPS_SAMPLE_SIZE];
+    private final long[] sortedWorkTimes = new long[FPS_SAMPLE_SIZE];
+    private int workTimeIndex = 0;
+    private int workTimeCount = 0;
+    private long workFrames = 0;
     private final Thread thread = new Thread(this);
     private boolean running = false;
     private boolean paused = false;
@@ -52,6 +59,14 @@ public class GameLoop implements Runnable {
         return deltaTimeMillis * timeScale;
     }
 
+    /**
+     * Use a fixed step instead of the measured one, for headless runs that call World.update themselves
+     */
+    void setFixedDeltaTime(float seconds) {
+        deltaTime = seconds;
+        deltaTimeMillis = seconds * MILLIS_PER_SECOND;
+    }
+
     public long getFPS() {
         return fps;
     }
@@ -128,13 +143,14 @@ public class GameLoop implements Runnable {
             // Update game state
             Game.RENDERER.update();
 
-            // Repaint on EDT
-            Game.RENDERER.repaint();
+            // Draw and show the frame, or have the EDT paint it
+            Game.RENDERER.present();
 
             updateFPS(frameStartTime);
 
             // Frame rate limiting
             long frameTime = System.nanoTime() - frameStartTime;
+            recordWorkTime(frameTime);
             long sleepTime = targetFrameTime - frameTime;
 
             if (sleepTime > 0) {
@@ -143,6 +159,51 @@ public class GameLoop implements Runnable {
         }
     }
 
+    /**
+     * Keep the frame's cost for the percentiles. Swing paints on the EDT, the loop only sees a
+     * repaint request, so the renderer's own timing of the last paint is added.
+     */
+    private void recordWorkTime(long frameTime) {
+        long workTime = frameTime;
+        if (Game.RENDERER != null && Game.RENDERER.getPresentMode() == Renderer.PresentMode.SWING) {
+            workTime += (long) ((Game.RENDERER.getRenderMillis() + Game.RENDERER.getPresentMillis()) * 1_000_000);
+        }
+        workTimes[workTimeIndex] = workTime;
+        workTimeIndex = (workTimeIndex + 1) % FPS_SAMPLE_SIZE;
+        workTimeCount = Math.min(workTimeCount + 1, FPS_SAMPLE_SIZE);
+        workFrames++;
+    }
+
+    /**
+     * Frame cost percentile over the last second of frames, only valid on the loop thread
+     *
+     * @param fraction 0.5 for the median, 0.95 for the 95th percentile, ...
+     * @return Milliseconds, 0 before the first frame
+     */
+    public double getFrameTimePercentile(double fraction) {
+        if (workTimeCount == 0) {
+            return 0;
+        }
+        System.arraycopy(workTimes, 0, sortedWorkTimes, 0, workTimeCount);
+        Arrays.sort(sortedWorkTimes, 0, workTimeCount);
+        int rank = (int) Math.ceil(fraction * workTimeCount) - 1;
+        return sortedWorkTimes[Math.max(0, Math.min(workTimeCount - 1, rank))] / 1_000_000.0;
+    }
+
+    /**
+     * Frames whose cost was recorded since startup
+     */
+    public long getWorkFrameCount() {
+        return workFrames;
+    }
+
+    /**
+     * Number of frames the percentiles are taken over
+     */
+    public int getFrameTimeWindow() {
+        return FPS_SAMPLE_SIZE;
+    }
+
     private void updateFPS(long currentTime) {
         frameTimes[frameTimeIndex] = currentTime;
         frameTimeIndex = (frameTimeIndex + 1) % FPS_SAMPLE_SIZE;
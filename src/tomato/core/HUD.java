@@ -4,6 +4,8 @@ import tomato.Game;
 import tomato.entity.Direction;
 import tomato.entity.Entity;
 import tomato.entity.EntityType;
+import tomato.entity.ProjectileLifetime;
+import tomato.vfx.VFXManager;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
@@ -17,6 +19,9 @@ public class HUD {
 
     // TODO add a static field of a monospaced font instance
 
+    // Filled from the spatial grid every frame instead of allocating a copy
+    private final SpatialGridStats gridStats = new SpatialGridStats();
+
     public HUD() {
 
     }
@@ -44,20 +49,128 @@ public class HUD {
         World.Chunk chunk = World.PLAYER_ENTITY.getChunk();
         double px = World.PLAYER_ENTITY.getX();
         double py = World.PLAYER_ENTITY.getY();
+        BulletManager bullets = World.WORLD.getBulletManager();
+        TimingWheel timers = World.WORLD.getTimingWheel();
         // first line
         String line1 = "FPS: " + Game.GAME_LOOP.getFPS() +
                 " | Δt: " + String.format("%.4f", Game.GAME_LOOP.getDeltaTime()) +
-                " | Entities: " + World.WORLD.getWorldEntities().size() +
-                " | Chunks: " + World.WORLD.getLoadedChunkCount();
+                " | Entities: " + World.WORLD.getEntityCount() +
+                " | Chunks: " + World.WORLD.getLoadedChunkCount() +
+                " | Bullets: " + bullets.getBulletCount() +
+                " (expired " + bullets.getExpiryCount(ProjectileLifetime.Expiry.RANGE) +
+                "/" + bullets.getExpiryCount(ProjectileLifetime.Expiry.AGE) +
+                "/" + bullets.getExpiryCount(ProjectileLifetime.Expiry.LEFT_AREA) + ", " +
+                String.format("%.2fms", bullets.getUpdateMillis()) + ")" +
+                " | Lights: " + World.WORLD.getVFXManager().getLighting().getLightSourceCount();
 
         // second line
         String line2 = "X: " + String.format("%.1f", px) +
                 " Y: " + String.format("%.1f", py) +
                 " | CX: " + chunk.cx +
-                " CY: " + chunk.cy;
+                " CY: " + chunk.cy +
+                " | Detonations: " + World.WORLD.getDetonationQueue().getLastTickDetonations() +
+                " (" + World.WORLD.getDetonationQueue().getPendingDetonations() + " queued)" +
+                " | Timers: " + timers.getScheduledCount() +
+                " (fired " + timers.getFiredCount() + ", cascaded " + timers.getCascadedCount() + ")";
+
+        // third line
+        SpatialGrid grid = World.WORLD.getSpatialGrid();
+        grid.copyFrameStats(gridStats);
+        String line3 = "Cell: " + gridStats.getCellSize() +
+                " | Cand/query: " + String.format("%.1f", gridStats.getCandidatesPerQuery()) +
+                " | Pairs: " + grid.getCandidatePairs() +
+                " | Mask-skipped: " + grid.getMaskRejectedPairs() +
+                " | Rect tests: " + grid.getNarrowPhaseTests() +
+                " | Pixel tests: " + grid.getPixelTests();
+
+        // fourth line
+        AIScheduler ai = World.WORLD.getAIScheduler();
+        StringBuilder line4 = new StringBuilder("AI");
+        for (AIScheduler.Tier tier : AIScheduler.Tier.values()) {
+            line4.append(" | ").append(tier).append(": ")
+                    .append(ai.getUpdateCount(tier)).append('/').append(ai.getTankCount(tier))
+                    .append(' ').append(String.format("%.2fms", ai.getUpdateMillis(tier)));
+        }
+        FlowField flowField = World.WORLD.getFlowField();
+        line4.append(" | Flow: ").append(flowField.getExpansions()).append('/').append(flowField.getCellCount())
+                .append(" cells ").append(String.format("%.2fms", flowField.getBuildMillis()));
+        InfluenceMap influence = World.WORLD.getInfluenceMap();
+        line4.append(" | Influence: ").append(influence.getStamps()).append(" stamps (")
+                .append(influence.getDroppedStamps()).append(" dropped) ")
+                .append(String.format("%.2fms", influence.getDecayMillis()));
+
+        // fifth line
+        ViewCuller culler = World.WORLD.getViewCuller();
+        VFXManager vfx = World.WORLD.getVFXManager();
+        String line5 = "Drawn: " + culler.getSubmittedCount() + " entities (" + culler.getCulledCount() + " culled), " +
+                vfx.getSubmittedEffectCount() + " effects (" + vfx.getCulledEffectCount() + " culled)" +
+                " | Draw calls: " + World.WORLD.getDrawCalls() +
+                " | State changes: " + World.WORLD.getDisplayListStateChanges() +
+                " | Sort: " + World.WORLD.getSortPasses() + " passes " + String.format("%.2fms", World.WORLD.getSortMillis()) +
+                " | Display list: " + World.WORLD.getDisplayListBytes() / 1024 + " KB, record " +
+                String.format("%.2fms, replay %.2fms", World.WORLD.getRecordMillis(), World.WORLD.getReplayMillis()) +
+                " | Terrain: " + World.WORLD.getTerrainBlits() + " blits, " + World.WORLD.getTerrainRedrawnPixels() +
+                " px redrawn (" + World.WORLD.getTerrainFullRedraws() + " full)" +
+                " | Images: " + ImageFactory.getAcceleratedCount() + "/" + ImageFactory.getTrackedCount() + " accelerated";
+
+        // sixth line
+        Renderer renderer = Game.RENDERER;
+        boolean active = renderer.getPresentMode() == Renderer.PresentMode.ACTIVE;
+        PresentStats present = renderer.getPresentStats(renderer.getPresentMode());
+        // the other mode's results from when it last ran, to compare against
+        PresentStats other = renderer.getPresentStats(active ? Renderer.PresentMode.SWING : Renderer.PresentMode.ACTIVE);
+        String mode = active ?
+                "active, " + renderer.getBufferCount() + " buffers, " + (renderer.isPageFlipping() ? "flip" : "blit") :
+                "Swing repaint";
+        String line6 = "Present: " + mode +
+                " | " + String.format("%.1f", present.getPresentedFPS()) + " fps shown" +
+                " | Latency: " + String.format("%.2fms avg, %.2fms max", present.getAverageLatencyMillis(), present.getMaxLatencyMillis()) +
+                " | Interval: " + String.format("%.2fms ±%.2f, %.2fms max", present.getAverageIntervalMillis(),
+                present.getIntervalDeviationMillis(), present.getMaxIntervalMillis()) +
+                " | Coalesced: " + renderer.getPresentStats(Renderer.PresentMode.SWING).getCoalescedCount() +
+                " | " + (active ? "Swing" : "Active") + " last run: " + String.format("%.1f fps, %.2fms latency, %.2fms ±%.2f interval",
+                other.getPresentedFPS(), other.getAverageLatencyMillis(), other.getAverageIntervalMillis(),
+                other.getIntervalDeviationMillis());
+
+        // seventh line
+        Dimension renderSize = renderer.getRenderSize();
+        Rectangle presentArea = renderer.getPresentArea(renderer.getWidth(), renderer.getHeight());
+        String line7 = "Frame: " + renderSize.width + "x" + renderSize.height + " " + renderer.getScaleMode() +
+                " x" + String.format("%.2f", presentArea.width / (double) renderSize.width) +
+                " to " + presentArea.width + "x" + presentArea.height +
+                " | Render: " + String.format("%.2fms", renderer.getRenderMillis()) +
+                " | Scale and present: " + String.format("%.2fms", renderer.getPresentMillis());
+        Viewport[] viewports = renderer.getViewports();
+        StringBuilder viewTimes = new StringBuilder();
+        for (Viewport viewport : viewports) {
+            viewTimes.append(viewTimes.length() > 0 ? ", " : "").append(String.format("%.2fms", viewport.getRenderMillis()));
+        }
+        line7 += " | Views: " + viewports.length + " (" + viewTimes + ")";
+        SoftwareRasterizer raster = World.WORLD.getSoftwareRasterizer();
+        if (World.WORLD.isSoftwareRendering()) {
+            line7 += " | World: software, " + raster.getTileCount() + " tiles on " + raster.getParallelism() +
+                    " threads, " + raster.getBinnedCommands() + " binned draws, raster " +
+                    String.format("%.2fms, upload %.2fms", raster.getRasterMillis(), raster.getUploadMillis());
+        } else {
+            line7 += " | World: Java2D";
+        }
+
+        // eighth line
+        QualityController quality = World.WORLD.getQualityController();
+        String line8 = "Quality: " + (quality.isEnabled() ? "" : "held at ") + quality.getLevel() + "/" +
+                QualityController.MAX_LEVEL + " (" + quality.describeLevel() + ")" +
+                " | Frame p50/p95/p99: " + String.format("%.1f/%.1f/%.1fms", quality.getP50Millis(),
+                quality.getP95Millis(), quality.getP99Millis()) +
+                " | Last step: " + quality.getLastDecision() + " (" + quality.getStepCount() + " total)";
 
         drawMonospace(g, 16, 24, line1, Color.WHITE);
         drawMonospace(g, 16, 40, line2, Color.WHITE);
+        drawMonospace(g, 16, 56, line3, Color.WHITE);
+        drawMonospace(g, 16, 72, line4.toString(), Color.WHITE);
+        drawMonospace(g, 16, 88, line5, Color.WHITE);
+        drawMonospace(g, 16, 104, line6, Color.WHITE);
+        drawMonospace(g, 16, 120, line7, Color.WHITE);
+        drawMonospace(g, 16, 136, line8, Color.WHITE);
 
     }
 
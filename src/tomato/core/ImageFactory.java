@@ -0,0 +1,229 @@
+package tomato.core;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Creates the images the game draws every frame in a format the display can blit fast.
+ * Java2D keeps a copy of a "managed" image in video memory when the format suits the screen
+ * and nobody holds on to its pixel array. Images here come from
+ * GraphicsConfiguration.createCompatibleImage, so they match the screen's pixel layout.
+ * Decoded assets, whose pixels were written through their raster, are copied into a fresh
+ * compatible image once decoding is done.
+ *
+ * Without a display (headless), compatible images don't exist and plain integer RGB or
+ * premultiplied ARGB images are used instead, the fastest formats of the software loops.
+ *
+ * Every image made here is tracked weakly, so the share that is currently accelerated can be
+ * checked at runtime.
+ */
+public class ImageFactory {
+    private static final Logger logger = Logger.getLogger(ImageFactory.class.getName());
+
+    private static final int BENCHMARK_SPRITE_SIZE = 64;
+    private static final int BENCHMARK_TARGET_WIDTH = 640;
+    private static final int BENCHMARK_TARGET_HEIGHT = 360;
+    private static final int BENCHMARK_WARMUP_BLITS = 5_000;
+    private static final int BENCHMARK_BLITS = 50_000;
+    // The HUD asks every frame, the images are only walked this often
+    private static final long ACCELERATED_COUNT_REFRESH_NANOS = 1_000_000_000L;
+
+    private static final Map<BufferedImage, Boolean> tracked = Collections.synchronizedMap(new WeakHashMap<>());
+    private static GraphicsConfiguration configuration;
+    private static int acceleratedCount = 0;
+    private static long acceleratedCountTime = 0;
+    private static boolean acceleratedCountValid = false;
+
+    private ImageFactory() {
+    }
+
+    /**
+     * Configuration of the default screen, null when headless
+     */
+    private static synchronized GraphicsConfiguration getConfiguration() {
+        if (configuration == null && !GraphicsEnvironment.isHeadless()) {
+            configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice()
+                    .getDefaultConfiguration();
+        }
+        return configuration;
+    }
+
+    private static BufferedImage create(int width, int height, int transparency) {
+        GraphicsConfiguration gc = getConfiguration();
+        BufferedImage image;
+        if (gc != null) {
+            image = gc.createCompatibleImage(width, height, transparency);
+        } else {
+            image = new BufferedImage(width, height, transparency == Transparency.OPAQUE ?
+                    BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        tracked.put(image, Boolean.TRUE);
+        return image;
+    }
+
+    /**
+     * Image without alpha, e.g. terrain
+     */
+    public static BufferedImage createOpaque(int width, int height) {
+        return create(width, height, Transparency.OPAQUE);
+    }
+
+    /**
+     * Image with an alpha channel, e.g. sprites and light maps
+     */
+    public static BufferedImage createTranslucent(int width, int height) {
+        return create(width, height, Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * Copy of the image in a compatible format, with alpha only if the source has any
+     */
+    public static BufferedImage toCompatible(BufferedImage source) {
+        if (source == null) {
+            return null;
+        }
+        BufferedImage copy = create(source.getWidth(), source.getHeight(),
+                source.getTransparency() == Transparency.OPAQUE ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+        Graphics2D g = copy.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+
+    /**
+     * Images made by the factory that are still in use
+     */
+    public static int getTrackedCount() {
+        return tracked.size();
+    }
+
+    /**
+     * Tracked images that have an accelerated copy, always 0 when headless.
+     * Counted at most once a second, in between the last count is returned.
+     */
+    public static synchronized int getAcceleratedCount() {
+        GraphicsConfiguration gc = getConfiguration();
+        if (gc == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (acceleratedCountValid && now - acceleratedCountTime < ACCELERATED_COUNT_REFRESH_NANOS) {
+            return acceleratedCount;
+        }
+        int accelerated = 0;
+        synchronized (tracked) {
+            for (BufferedImage image : tracked.keySet()) {
+                if (image.getCapabilities(gc).isAccelerated()) {
+                    accelerated++;
+                }
+            }
+        }
+        acceleratedCount = accelerated;
+        acceleratedCountTime = now;
+        acceleratedCountValid = true;
+        return accelerated;
+    }
+
+    /**
+     * Measure how fast sprites of each format blit onto a screen-sized target and log the results.
+     * Takes a few seconds, run it off the render thread and the update thread.
+     *
+     * @return One line per format
+     */
+    public static List<String> benchmarkBlits() {
+        GraphicsConfiguration gc = getConfiguration();
+        List<String> results = new ArrayList<>();
+
+        Image target;
+        if (gc != null) {
+            target = gc.createCompatibleVolatileImage(BENCHMARK_TARGET_WIDTH, BENCHMARK_TARGET_HEIGHT);
+        } else {
+            target = new BufferedImage(BENCHMARK_TARGET_WIDTH, BENCHMARK_TARGET_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        }
+
+        String[] names = {"INT_RGB", "INT_ARGB", "INT_ARGB_PRE", "4BYTE_ABGR", "compatible opaque", "compatible translucent"};
+        for (String name : names) {
+            BufferedImage sprite = createBenchmarkSprite(name, gc);
+            if (sprite == null) {
+                continue;
+            }
+            double blitsPerMs = timeBlits(target, sprite);
+            boolean accelerated = gc != null && sprite.getCapabilities(gc).isAccelerated();
+            String line = String.format("%-22s %8.0f blits/ms%s", name, blitsPerMs, accelerated ? " (accelerated)" : "");
+            results.add(line);
+            logger.info(line);
+        }
+        if (target instanceof VolatileImage) {
+            ((VolatileImage) target).flush();
+        }
+        return results;
+    }
+
+    private static BufferedImage createBenchmarkSprite(String name, GraphicsConfiguration gc) {
+        int size = BENCHMARK_SPRITE_SIZE;
+        BufferedImage sprite;
+        switch (name) {
+            case "INT_RGB":
+                sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+                break;
+            case "INT_ARGB":
+                sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+                break;
+            case "INT_ARGB_PRE":
+                sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+                break;
+            case "4BYTE_ABGR":
+                sprite = new BufferedImage(size, size, BufferedImage.TYPE_4BYTE_ABGR);
+                break;
+            case "compatible opaque":
+                if (gc == null) {
+                    return null;
+                }
+                sprite = gc.createCompatibleImage(size, size, Transparency.OPAQUE);
+                break;
+            default:
+                if (gc == null) {
+                    return null;
+                }
+                sprite = gc.createCompatibleImage(size, size, Transparency.TRANSLUCENT);
+                break;
+        }
+        // Round sprite with a transparent border, like a tank
+        Graphics2D g = sprite.createGraphics();
+        g.setColor(new Color(180, 40, 40));
+        g.fillOval(4, 4, size - 8, size - 8);
+        g.dispose();
+        return sprite;
+    }
+
+    private static double timeBlits(Image target, BufferedImage sprite) {
+        int maxX = BENCHMARK_TARGET_WIDTH - BENCHMARK_SPRITE_SIZE;
+        int maxY = BENCHMARK_TARGET_HEIGHT - BENCHMARK_SPRITE_SIZE;
+        Graphics2D g = (Graphics2D) target.getGraphics();
+        try {
+            for (int i = 0; i < BENCHMARK_WARMUP_BLITS; i++) {
+                g.drawImage(sprite, (i * 37) % maxX, (i * 17) % maxY, null);
+            }
+            Toolkit.getDefaultToolkit().sync();
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_BLITS; i++) {
+                g.drawImage(sprite, (i * 37) % maxX, (i * 17) % maxY, null);
+            }
+            // Make sure queued pipeline work is finished before the clock stops
+            Toolkit.getDefaultToolkit().sync();
+            long elapsed = System.nanoTime() - start;
+            return BENCHMARK_BLITS / (elapsed / 1_000_000.0);
+        } finally {
+            g.dispose();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package tomato.core;
+
+import tomato.entity.Direction;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Coarse grid of decaying influence over the loaded chunks, for tactical AI.
+ * Systems stamp what they know into it (projectile lanes, enemy firing lanes and explosions
+ * as threat, the player as a target) and every tick all values decay toward zero in one flat pass
+ * over the arrays. AI samples a cell in constant time to steer away from danger or
+ * toward targets it can't see directly.
+ *
+ * Stamps keep the maximum of the old and the new value instead of adding up, so a
+ * source stamping every frame holds its cells at a level regardless of the frame rate.
+ * Stamps past the per-tick budget are dropped. Blasts have a budget of their own, they are
+ * stamped last in a tick and would otherwise be the first to go.
+ *
+ * The debug overlay is drawn on the render thread, so when it is visible every tick ends by
+ * copying the map into a snapshot. Two snapshots are swapped under a lock that the overlay holds
+ * while it reads one, like the bullet manager's render snapshots.
+ */
+public class InfluenceMap {
+    public static final int CELL_SIZE = 32;
+    public static final int THREAT = 0;
+    public static final int TARGET = 1;
+    private static final int CHANNEL_COUNT = 2;
+
+    private static final float[] HALF_LIFE_MS = {1500f, 3000f};
+    // Subtracted every tick next to the decay, values reach exactly zero instead of
+    // sliding into denormals that slow down the float math
+    private static final float DECAY_FLOOR = 0.001f;
+    private static final int MAX_STAMPS_PER_TICK = 256;
+    private static final int MAX_BLAST_STAMPS_PER_TICK = 64;
+
+    private final float[][] channels = new float[CHANNEL_COUNT][0];
+    private float[] shiftScratch = new float[0];
+    private int originX = 0, originY = 0; // in cells
+    private int width = 0, height = 0;
+    private volatile boolean overlayVisible = false;
+
+    // The update thread fills one snapshot while the overlay reads the other, swapped under the lock
+    private final Object snapshotLock = new Object();
+    private OverlaySnapshot writeSnapshot = new OverlaySnapshot();
+    private OverlaySnapshot publishedSnapshot = new OverlaySnapshot();
+
+    private int stamps = 0;
+    private int blastStamps = 0;
+    private int droppedStamps = 0;
+    private int lastStamps = 0;
+    private int lastDroppedStamps = 0;
+    private long lastDecayNanos = 0;
+
+    private static class OverlaySnapshot {
+        int originX, originY, width;
+        float[] threat = new float[0];
+        float[] target = new float[0];
+    }
+
+    /**
+     * Start a tick: follow the loaded area and decay everything stamped so far
+     *
+     * @param elapsedMs Time since the last tick
+     * @param areaMinX  Left edge of the loaded area in pixels
+     * @param areaMinY  Top edge of the loaded area in pixels
+     * @param areaSize  Width and height of the loaded area in pixels
+     */
+    public void update(float elapsedMs, int areaMinX, int areaMinY, int areaSize) {
+        lastStamps = stamps + blastStamps;
+        lastDroppedStamps = droppedStamps;
+        stamps = 0;
+        blastStamps = 0;
+        droppedStamps = 0;
+
+        long start = System.nanoTime();
+        moveArea(Math.floorDiv(areaMinX, CELL_SIZE), Math.floorDiv(areaMinY, CELL_SIZE), areaSize / CELL_SIZE);
+
+        for (int c = 0; c < CHANNEL_COUNT; c++) {
+            float factor = (float) Math.pow(0.5, elapsedMs / HALF_LIFE_MS[c]);
+            float[] values = channels[c];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Math.max(0f, values[i] * factor - DECAY_FLOOR);
+            }
+        }
+        lastDecayNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Keep the values that are still inside the area when it moves, cells that enter it start at zero
+     */
+    private void moveArea(int newOriginX, int newOriginY, int size) {
+        if (size != width || size != height) {
+            for (int c = 0; c < CHANNEL_COUNT; c++) {
+                channels[c] = new float[size * size];
+            }
+            shiftScratch = new float[size * size];
+            width = size;
+            height = size;
+            originX = newOriginX;
+            originY = newOriginY;
+            return;
+        }
+        int shiftX = newOriginX - originX;
+        int shiftY = newOriginY - originY;
+        if (shiftX == 0 && shiftY == 0) {
+            return;
+        }
+        for (int c = 0; c < CHANNEL_COUNT; c++) {
+            float[] values = channels[c];
+            Arrays.fill(shiftScratch, 0f);
+            for (int y = 0; y < height; y++) {
+                int oldY = y + shiftY;
+                if (oldY < 0 || oldY >= height) {
+                    continue;
+                }
+                for (int x = 0; x < width; x++) {
+                    int oldX = x + shiftX;
+                    if (oldX >= 0 && oldX < width) {
+                        shiftScratch[y * width + x] = values[oldY * width + oldX];
+                    }
+                }
+            }
+            channels[c] = shiftScratch;
+            shiftScratch = values;
+        }
+        originX = newOriginX;
+        originY = newOriginY;
+    }
+
+    private boolean takeStamp() {
+        if (stamps >= MAX_STAMPS_PER_TICK) {
+            droppedStamps++;
+            return false;
+        }
+        stamps++;
+        return true;
+    }
+
+    private void raise(float[] values, int cellX, int cellY, float value) {
+        int x = cellX - originX;
+        int y = cellY - originY;
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+        int index = y * width + x;
+        if (values[index] < value) {
+            values[index] = value;
+        }
+    }
+
+    /**
+     * Stamp influence around a point, falling off linearly to zero at the radius
+     */
+    public void stampPoint(int channel, int worldX, int worldY, int radius, float strength) {
+        if (!takeStamp()) {
+            return;
+        }
+        raiseDisc(channels[channel], worldX, worldY, radius, strength);
+    }
+
+    /**
+     * Stamp the threat of a blast, twice its radius around the center, from the blast budget
+     */
+    public void stampBlast(int worldX, int worldY, int blastRadius) {
+        if (blastStamps >= MAX_BLAST_STAMPS_PER_TICK) {
+            droppedStamps++;
+            return;
+        }
+        blastStamps++;
+        raiseDisc(channels[THREAT], worldX, worldY, blastRadius * 2, 1f);
+    }
+
+    private void raiseDisc(float[] values, int worldX, int worldY, int radius, float strength) {
+        int centerX = Math.floorDiv(worldX, CELL_SIZE);
+        int centerY = Math.floorDiv(worldY, CELL_SIZE);
+        int reach = radius / CELL_SIZE;
+        for (int dy = -reach; dy <= reach; dy++) {
+            for (int dx = -reach; dx <= reach; dx++) {
+                double falloff = 1.0 - Math.sqrt(dx * dx + dy * dy) * CELL_SIZE / (radius + CELL_SIZE);
+                if (falloff > 0) {
+                    raise(values, centerX + dx, centerY + dy, (float) (strength * falloff));
+                }
+            }
+        }
+    }
+
+    /**
+     * Stamp influence along a straight lane starting at a point, e.g. ahead of a projectile,
+     * fading out toward the end of the lane
+     */
+    public void stampLane(int channel, int worldX, int worldY, Direction direction, int length, float strength) {
+        if (!takeStamp()) {
+            return;
+        }
+        float[] values = channels[channel];
+        int cellX = Math.floorDiv(worldX, CELL_SIZE);
+        int cellY = Math.floorDiv(worldY, CELL_SIZE);
+        int stepX = direction == Direction.EAST ? 1 : direction == Direction.WEST ? -1 : 0;
+        int stepY = direction == Direction.SOUTH ? 1 : direction == Direction.NORTH ? -1 : 0;
+        int cells = Math.max(1, length / CELL_SIZE);
+        for (int i = 0; i < cells; i++) {
+            raise(values, cellX + stepX * i, cellY + stepY * i, strength * (cells - i) / cells);
+        }
+    }
+
+    /**
+     * Influence of the channel at a world position, zero outside the loaded area
+     */
+    public float sample(int channel, int worldX, int worldY) {
+        int x = Math.floorDiv(worldX, CELL_SIZE) - originX;
+        int y = Math.floorDiv(worldY, CELL_SIZE) - originY;
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return 0f;
+        }
+        return channels[channel][y * width + x];
+    }
+
+    public void toggleOverlay() {
+        overlayVisible = !overlayVisible;
+    }
+
+    /**
+     * End a tick: hand a copy of the map to the overlay, only while it is visible
+     */
+    public void publishOverlay() {
+        if (!overlayVisible) {
+            return;
+        }
+        OverlaySnapshot snapshot = writeSnapshot;
+        int cells = width * height;
+        if (snapshot.threat.length != cells) {
+            snapshot.threat = new float[cells];
+            snapshot.target = new float[cells];
+        }
+        System.arraycopy(channels[THREAT], 0, snapshot.threat, 0, cells);
+        System.arraycopy(channels[TARGET], 0, snapshot.target, 0, cells);
+        snapshot.originX = originX;
+        snapshot.originY = originY;
+        snapshot.width = width;
+        synchronized (snapshotLock) {
+            writeSnapshot = publishedSnapshot;
+            publishedSnapshot = snapshot;
+        }
+    }
+
+    /**
+     * Debug overlay of the last published tick in world coordinates: threat in red, targets in blue
+     */
+    public void renderOverlay(Graphics2D g) {
+        if (!overlayVisible) {
+            return;
+        }
+        synchronized (snapshotLock) {
+            OverlaySnapshot snapshot = publishedSnapshot;
+            int w = snapshot.width;
+            if (w == 0) {
+                return;
+            }
+            float[] threat = snapshot.threat;
+            float[] target = snapshot.target;
+            for (int i = 0; i < threat.length; i++) {
+                int red = (int) (Math.min(1f, threat[i]) * 160);
+                int blue = (int) (Math.min(1f, target[i]) * 160);
+                if (red == 0 && blue == 0) {
+                    continue;
+                }
+                g.setColor(new Color(red, 0, blue, Math.max(red, blue)));
+                g.fillRect((snapshot.originX + i % w) * CELL_SIZE, (snapshot.originY + i / w) * CELL_SIZE,
+                        CELL_SIZE, CELL_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Stamps applied during the last tick
+     */
+    public int getStamps() {
+        return lastStamps;
+    }
+
+    /**
+     * Stamps dropped by the per-tick budgets during the last tick
+     */
+    public int getDroppedStamps() {
+        return lastDroppedStamps;
+    }
+
+    /**
+     * Time spent moving and decaying the map during the last tick, in milliseconds
+     */
+    public double getDecayMillis() {
+        return lastDecayNanos / 1_000_000.0;
+    }
+}
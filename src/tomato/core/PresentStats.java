@@ -0,0 +1,129 @@
+package tomato.core;
+
+/**
+ * Latency and pacing of the frames that actually reached the screen, over a rolling window.
+ * Latency is the time from the game loop handing a frame over (after its update) until the
+ * frame has been drawn to the screen and Toolkit.sync() returned. Pacing is how evenly spaced
+ * the presents are: the mean, spread and worst of the intervals between them.
+ * The renderer keeps one per present mode, so the Swing and active paths can be compared.
+ *
+ * Written by the thread that presents (the EDT for Swing repaints, the loop thread for active
+ * rendering), read by the HUD. The summary fields are volatile, a reader may see a mix of two
+ * consecutive updates, which is fine for display.
+ */
+public class PresentStats {
+    private static final int WINDOW = 120;
+
+    private final long[] latencies = new long[WINDOW];
+    private final long[] intervals = new long[WINDOW];
+    private int index = 0;
+    private int samples = 0;
+    private long lastPresent = 0;
+
+    private volatile double averageLatencyMillis = 0;
+    private volatile double maxLatencyMillis = 0;
+    private volatile double averageIntervalMillis = 0;
+    private volatile double intervalDeviationMillis = 0;
+    private volatile double maxIntervalMillis = 0;
+    private volatile long coalesced = 0;
+
+    /**
+     * Record a presented frame
+     *
+     * @param handedOver  System.nanoTime() when the loop handed the frame over
+     * @param presentedAt System.nanoTime() after the frame was on screen
+     */
+    public synchronized void record(long handedOver, long presentedAt) {
+        if (lastPresent == 0) {
+            lastPresent = presentedAt;
+            return;
+        }
+        latencies[index] = presentedAt - handedOver;
+        intervals[index] = presentedAt - lastPresent;
+        lastPresent = presentedAt;
+        index = (index + 1) % WINDOW;
+        samples = Math.min(samples + 1, WINDOW);
+        summarize();
+    }
+
+    private void summarize() {
+        long latencySum = 0, latencyMax = 0, intervalSum = 0, intervalMax = 0;
+        for (int i = 0; i < samples; i++) {
+            latencySum += latencies[i];
+            latencyMax = Math.max(latencyMax, latencies[i]);
+            intervalSum += intervals[i];
+            intervalMax = Math.max(intervalMax, intervals[i]);
+        }
+        double intervalMean = intervalSum / (double) samples;
+        double squares = 0;
+        for (int i = 0; i < samples; i++) {
+            double difference = intervals[i] - intervalMean;
+            squares += difference * difference;
+        }
+        averageLatencyMillis = latencySum / (double) samples / 1_000_000.0;
+        maxLatencyMillis = latencyMax / 1_000_000.0;
+        averageIntervalMillis = intervalMean / 1_000_000.0;
+        intervalDeviationMillis = Math.sqrt(squares / samples) / 1_000_000.0;
+        maxIntervalMillis = intervalMax / 1_000_000.0;
+    }
+
+    /**
+     * Count a frame that was handed over but replaced by the next one before it was drawn
+     */
+    public synchronized void countCoalesced() {
+        coalesced++;
+    }
+
+    /**
+     * Forget everything, e.g. after switching the way frames are presented
+     */
+    public synchronized void reset() {
+        index = 0;
+        samples = 0;
+        lastPresent = 0;
+        coalesced = 0;
+        averageLatencyMillis = 0;
+        maxLatencyMillis = 0;
+        averageIntervalMillis = 0;
+        intervalDeviationMillis = 0;
+        maxIntervalMillis = 0;
+    }
+
+    public double getAverageLatencyMillis() {
+        return averageLatencyMillis;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    public double getAverageIntervalMillis() {
+        return averageIntervalMillis;
+    }
+
+    /**
+     * Standard deviation of the interval between presents, the frame pacing jitter
+     */
+    public double getIntervalDeviationMillis() {
+        return intervalDeviationMillis;
+    }
+
+    public double getMaxIntervalMillis() {
+        return maxIntervalMillis;
+    }
+
+    /**
+     * Frames reaching the screen per second, from the average interval
+     */
+    public double getPresentedFPS() {
+        double interval = averageIntervalMillis;
+        return interval > 0 ? 1000.0 / interval : 0;
+    }
+
+    /**
+     * Frames handed over since the last reset that were never drawn
+     */
+    public long getCoalescedCount() {
+        return coalesced;
+    }
+}
@@ -0,0 +1,169 @@
+package tomato.core;
+
+import tomato.Game;
+import tomato.vfx.VFXManager;
+
+import java.util.logging.Logger;
+
+/**
+ * Holds the frame-time budget by trading looks for speed when combat gets heavy.
+ * Once per window of frames (a second) it reads the frame cost percentiles from the game loop.
+ * If the 95th percentile is over the step-down threshold, quality drops one level right away. It
+ * only comes back up one level after several windows in a row under the much lower step-up
+ * threshold. The gap between the thresholds and the wait keep it from flapping between two levels
+ * whose costs straddle the budget.
+ *
+ * Levels give up the least visible detail first: particle density, then the light map resolution,
+ * and last the margin entities are collected around the view. Particle density only applies to
+ * explosions created after the change. The chunks kept loaded around the view are not a knob:
+ * unloaded chunks stop simulating their entities, so shrinking them would change the game and not
+ * just its looks.
+ *
+ * Runs on the update thread.
+ */
+public class QualityController {
+    private static final Logger logger = Logger.getLogger(QualityController.class.getName());
+
+    private static final double BUDGET_MS = 1000.0 / 60;
+    private static final double STEP_DOWN_MS = BUDGET_MS * 0.9;
+    private static final double STEP_UP_MS = BUDGET_MS * 0.6;
+    // Calm windows in a row before quality goes back up
+    private static final int CALM_WINDOWS_TO_STEP_UP = 3;
+
+    // Knob settings per level, level 0 is full quality
+    private static final float[] PARTICLE_DENSITY = {1f, 0.5f, 0.5f, 0.25f, 0.25f};
+    private static final int[] LIGHT_MAP_DIVISOR = {1, 1, 2, 2, 4};
+    private static final int[] CULL_MARGIN = {ViewCuller.DEFAULT_MARGIN, ViewCuller.DEFAULT_MARGIN, 48, 32, 16};
+    public static final int MAX_LEVEL = PARTICLE_DENSITY.length - 1;
+
+    private final VFXManager vfxManager;
+    private final ViewCuller viewCuller;
+
+    // Toggled from the EDT, acted on by the next update
+    private volatile boolean enabled = true;
+    private volatile int level = 0;
+    private int calmWindows = 0;
+    private long lastEvaluatedFrame = 0;
+    private volatile int stepCount = 0;
+    private volatile String lastDecision = "none";
+
+    private volatile double p50 = 0;
+    private volatile double p95 = 0;
+    private volatile double p99 = 0;
+
+    public QualityController(VFXManager vfxManager, ViewCuller viewCuller) {
+        this.vfxManager = vfxManager;
+        this.viewCuller = viewCuller;
+    }
+
+    /**
+     * Judge the last window of frames once it is complete, called every tick
+     */
+    public void update() {
+        if (!enabled && level != 0) {
+            calmWindows = 0;
+            changeLevel(0, "controller off");
+        }
+        GameLoop loop = Game.GAME_LOOP;
+        long frames = loop.getWorkFrameCount();
+        if (frames - lastEvaluatedFrame < loop.getFrameTimeWindow()) {
+            return;
+        }
+        lastEvaluatedFrame = frames;
+        p50 = loop.getFrameTimePercentile(0.5);
+        p95 = loop.getFrameTimePercentile(0.95);
+        p99 = loop.getFrameTimePercentile(0.99);
+        if (!enabled) {
+            return;
+        }
+
+        if (p95 > STEP_DOWN_MS) {
+            calmWindows = 0;
+            if (level < MAX_LEVEL) {
+                changeLevel(level + 1, String.format("p95 %.1fms over %.1fms", p95, STEP_DOWN_MS));
+            }
+        } else if (p95 < STEP_UP_MS) {
+            calmWindows++;
+            if (calmWindows >= CALM_WINDOWS_TO_STEP_UP && level > 0) {
+                calmWindows = 0;
+                changeLevel(level - 1, String.format("p95 under %.1fms for %d windows",
+                        STEP_UP_MS, CALM_WINDOWS_TO_STEP_UP));
+            }
+        } else {
+            calmWindows = 0;
+        }
+    }
+
+    private void changeLevel(int newLevel, String reason) {
+        int oldLevel = level;
+        applyLevel(newLevel);
+        stepCount++;
+        lastDecision = (newLevel > oldLevel ? "down " : "up ") + oldLevel + "->" + newLevel + " (" + reason + ")";
+        logger.info("Quality " + lastDecision + ": " + describeLevel());
+    }
+
+    private void applyLevel(int newLevel) {
+        level = newLevel;
+        vfxManager.setParticleDensity(PARTICLE_DENSITY[newLevel]);
+        vfxManager.getLighting().setResolutionDivisor(LIGHT_MAP_DIVISOR[newLevel]);
+        viewCuller.setMargin(CULL_MARGIN[newLevel]);
+    }
+
+    /**
+     * Stop adapting and go back to full quality with the next update, or start adapting again
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void toggleEnabled() {
+        setEnabled(!enabled);
+    }
+
+    /**
+     * Current level, 0 is full quality and MAX_LEVEL the cheapest
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Knob settings of the current level
+     */
+    public String describeLevel() {
+        int current = level;
+        return "particles " + Math.round(PARTICLE_DENSITY[current] * 100) + "%" +
+                ", light map 1/" + LIGHT_MAP_DIVISOR[current] +
+                ", cull margin " + CULL_MARGIN[current] + "px";
+    }
+
+    /**
+     * The last level change and why it was made
+     */
+    public String getLastDecision() {
+        return lastDecision;
+    }
+
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Frame cost percentiles of the last judged window, in milliseconds
+     */
+    public double getP50Millis() {
+        return p50;
+    }
+
+    public double getP95Millis() {
+        return p95;
+    }
+
+    public double getP99Millis() {
+        return p99;
+    }
+}
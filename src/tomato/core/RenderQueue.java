@@ -0,0 +1,281 @@
+package tomato.core;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Collects the draws of a frame and issues them in a sorted order.
+ * Every draw gets a 64-bit key of layer, depth and material: layers keep mines under tanks and
+ * particles over everything, depth (the bottom edge on screen) orders sprites that overlap within
+ * a y-sorted layer, and the material (source image, or fill color) groups draws that need the
+ * same Java2D state next to each other. Layers that aren't y-sorted get depth 0, so all their
+ * draws of the same image or color end up back-to-back.
+ *
+ * Keys are sorted with an LSD radix sort over bytes, skipping bytes that are the same for every
+ * key. The sort is stable, draws with equal keys keep their submission order.
+ *
+ * Only used by one thread at a time, between begin() and flush(). The world fills it on the update
+ * thread and flushes it into a display list.
+ */
+public class RenderQueue {
+    /**
+     * Receives the sorted draws of a frame instead of a Graphics2D, e.g. a display list or the software rasterizer
+     */
+    public interface Target {
+        void drawImage(BufferedImage image, int x, int y);
+
+        void fillRect(int argb, int x, int y, int width, int height);
+
+        void fillOval(int argb, int x, int y, int width, int height);
+
+        void drawRect(int argb, int x, int y, int width, int height);
+    }
+
+    // Layers, drawn in this order
+    public static final int LAYER_GROUND = 0;
+    public static final int LAYER_ACTORS = 1;
+    public static final int LAYER_BULLETS = 2;
+    public static final int LAYER_EFFECTS = 3;
+    public static final int LAYER_DEBUG = 4;
+
+    private static final byte IMAGE = 0;
+    private static final byte FILL_RECT = 1;
+    private static final byte FILL_OVAL = 2;
+    private static final byte DRAW_RECT = 3;
+
+    private static final int MATERIAL_BITS = 16;
+    private static final int DEPTH_BITS = 20;
+    private static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+    private static final int MAX_MATERIAL = (1 << MATERIAL_BITS) - 1;
+    // Fill colors are hashed into the upper half of the material range, images count up from 0
+    private static final int COLOR_MATERIALS = 1 << (MATERIAL_BITS - 1);
+    // Draws may start this far above the view and still be ordered correctly
+    private static final int DEPTH_MARGIN = 1024;
+    private static final int KEY_BYTES = (DEPTH_BITS + MATERIAL_BITS + 8 + 7) / 8;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Draw commands, the first count entries are live
+    private int count = 0;
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private byte[] kind = new byte[INITIAL_CAPACITY];
+    private Image[] images = new Image[INITIAL_CAPACITY];
+    private int[] x = new int[INITIAL_CAPACITY];
+    private int[] y = new int[INITIAL_CAPACITY];
+    private int[] width = new int[INITIAL_CAPACITY];
+    private int[] height = new int[INITIAL_CAPACITY];
+    private int[] argb = new int[INITIAL_CAPACITY];
+
+    // Radix sort buffers: the keys are sorted together with the command index
+    private long[] sortKeys = new long[INITIAL_CAPACITY];
+    private long[] scratchKeys = new long[INITIAL_CAPACITY];
+    private int[] order = new int[INITIAL_CAPACITY];
+    private int[] scratchOrder = new int[INITIAL_CAPACITY];
+    private final int[] histogram = new int[256];
+
+    private final IdentityHashMap<Image, Integer> imageMaterials = new IdentityHashMap<>();
+    private int viewTop = 0;
+
+    private int lastDrawCalls = 0;
+    private int lastSortPasses = 0;
+    private long lastSortNanos = 0;
+
+    /**
+     * Start collecting a frame for the given view
+     */
+    public void begin(Rectangle view) {
+        count = 0;
+        viewTop = view.y;
+    }
+
+    private int depthOf(int bottom) {
+        return Math.max(0, Math.min(MAX_DEPTH, bottom - viewTop + DEPTH_MARGIN));
+    }
+
+    private int imageMaterial(Image image) {
+        Integer material = imageMaterials.get(image);
+        if (material == null) {
+            // Sprites come from the sprite cache, there are only a few hundred
+            material = Math.min(imageMaterials.size(), COLOR_MATERIALS - 1);
+            imageMaterials.put(image, material);
+        }
+        return material;
+    }
+
+    private static int colorMaterial(int argb) {
+        int hash = argb * 0x9E3779B1;
+        return COLOR_MATERIALS | (hash >>> (32 - MATERIAL_BITS + 1));
+    }
+
+    private int add(int layer, int depth, int material, byte commandKind) {
+        if (count == keys.length) {
+            grow(count * 2);
+        }
+        int index = count++;
+        keys[index] = ((long) layer << (DEPTH_BITS + MATERIAL_BITS)) | ((long) depth << MATERIAL_BITS) |
+                (material & MAX_MATERIAL);
+        kind[index] = commandKind;
+        return index;
+    }
+
+    private void grow(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        kind = Arrays.copyOf(kind, capacity);
+        images = Arrays.copyOf(images, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        argb = Arrays.copyOf(argb, capacity);
+        sortKeys = new long[capacity];
+        scratchKeys = new long[capacity];
+        order = new int[capacity];
+        scratchOrder = new int[capacity];
+    }
+
+    /**
+     * Queue an image at its natural size
+     *
+     * @param ySorted Order by the bottom edge within the layer, instead of grouping by image only
+     */
+    public void drawImage(int layer, boolean ySorted, BufferedImage image, int drawX, int drawY) {
+        int depth = ySorted ? depthOf(drawY + image.getHeight()) : 0;
+        int index = add(layer, depth, imageMaterial(image), IMAGE);
+        images[index] = image;
+        x[index] = drawX;
+        y[index] = drawY;
+    }
+
+    public void fillRect(int layer, int color, int drawX, int drawY, int drawWidth, int drawHeight) {
+        addShape(layer, FILL_RECT, color, drawX, drawY, drawWidth, drawHeight);
+    }
+
+    public void fillOval(int layer, int color, int drawX, int drawY, int drawWidth, int drawHeight) {
+        addShape(layer, FILL_OVAL, color, drawX, drawY, drawWidth, drawHeight);
+    }
+
+    public void drawRect(int layer, int color, int drawX, int drawY, int drawWidth, int drawHeight) {
+        addShape(layer, DRAW_RECT, color, drawX, drawY, drawWidth, drawHeight);
+    }
+
+    private void addShape(int layer, byte shapeKind, int color, int drawX, int drawY, int drawWidth, int drawHeight) {
+        int index = add(layer, 0, colorMaterial(color), shapeKind);
+        images[index] = null;
+        argb[index] = color;
+        x[index] = drawX;
+        y[index] = drawY;
+        width[index] = drawWidth;
+        height[index] = drawHeight;
+    }
+
+    /**
+     * Sort the queued draws and hand them to a target in order
+     */
+    public void flush(Target target) {
+        sortFrame();
+        for (int i = 0; i < count; i++) {
+            int index = order[i];
+            switch (kind[index]) {
+                case IMAGE:
+                    target.drawImage((BufferedImage) images[index], x[index], y[index]);
+                    break;
+                case FILL_RECT:
+                    target.fillRect(argb[index], x[index], y[index], width[index], height[index]);
+                    break;
+                case FILL_OVAL:
+                    target.fillOval(argb[index], x[index], y[index], width[index], height[index]);
+                    break;
+                default:
+                    target.drawRect(argb[index], x[index], y[index], width[index], height[index]);
+                    break;
+            }
+        }
+        endFrame();
+    }
+
+    private void sortFrame() {
+        long start = System.nanoTime();
+        int passes = sort();
+        lastSortNanos = System.nanoTime() - start;
+        lastSortPasses = passes;
+    }
+
+    private void endFrame() {
+        // don't keep images of this frame reachable
+        Arrays.fill(images, 0, count, null);
+        lastDrawCalls = count;
+        count = 0;
+    }
+
+    /**
+     * Radix sort the keys into order[]
+     *
+     * @return Number of byte passes that actually moved anything
+     */
+    private int sort() {
+        long[] from = sortKeys;
+        long[] to = scratchKeys;
+        int[] fromOrder = order;
+        int[] toOrder = scratchOrder;
+        System.arraycopy(keys, 0, from, 0, count);
+        for (int i = 0; i < count; i++) {
+            fromOrder[i] = i;
+        }
+
+        int passes = 0;
+        for (int pass = 0; pass < KEY_BYTES; pass++) {
+            int shift = pass * 8;
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < count; i++) {
+                histogram[(int) (from[i] >>> shift) & 0xFF]++;
+            }
+            if (count == 0 || histogram[(int) (from[0] >>> shift) & 0xFF] == count) {
+                continue; // every key has the same byte here, the pass would not move anything
+            }
+            int offset = 0;
+            for (int b = 0; b < 256; b++) {
+                int bucket = histogram[b];
+                histogram[b] = offset;
+                offset += bucket;
+            }
+            for (int i = 0; i < count; i++) {
+                int slot = histogram[(int) (from[i] >>> shift) & 0xFF]++;
+                to[slot] = from[i];
+                toOrder[slot] = fromOrder[i];
+            }
+            long[] swapKeys = from;
+            from = to;
+            to = swapKeys;
+            int[] swapOrder = fromOrder;
+            fromOrder = toOrder;
+            toOrder = swapOrder;
+            passes++;
+        }
+
+        sortKeys = from;
+        scratchKeys = to;
+        order = fromOrder;
+        scratchOrder = toOrder;
+        return passes;
+    }
+
+    /**
+     * Draws issued by the last flush
+     */
+    public int getDrawCalls() {
+        return lastDrawCalls;
+    }
+
+    public int getSortPasses() {
+        return lastSortPasses;
+    }
+
+    /**
+     * Time spent sorting during the last flush, in milliseconds
+     */
+    public double getSortMillis() {
+        return lastSortNanos / 1_000_000.0;
+    }
+}
@@ -8,13 +8,65 @@ import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
+import java.awt.image.BufferStrategy;
 import java.awt.image.VolatileImage;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Renderer extends JPanel {
 
+    /**
+     * How finished frames get to the screen
+     */
+    public enum PresentMode {
+        // The loop asks Swing to repaint, the frame is drawn on the EDT whenever the paint comes through
+        SWING,
+        // The loop thread draws the frame into a Canvas BufferStrategy and shows it itself
+        ACTIVE
+    }
+
+    /**
+     * How the back buffer is fitted into the window
+     */
+    public enum ScaleMode {
+        // Stretched over the whole window, any factor and aspect ratio
+        STRETCH,
+        // Largest whole-number nearest-neighbor factor that fits, centered with black bars
+        INTEGER,
+        // As INTEGER, but upscaled into a cached image of the final size first, then copied 1:1
+        PRESCALED
+    }
+
+    private static final int BUFFERS = 3;
+    // Width of the line between split screen views, in logical pixels
+    private static final int DIVIDER_WIDTH = 2;
+    // Internal resolutions to cycle through, the game's logical 640x360 view is scaled onto them
+    private static final Dimension[] RESOLUTIONS = {
+            new Dimension(320, 180),
+            new Dimension(640, 360),
+            new Dimension(1280, 720),
+    };
+
     private VolatileImage backBuffer;
+    private VolatileImage scaledBuffer;
+    private volatile Dimension renderSize = new Dimension(Game.WIDTH, Game.HEIGHT);
+    private volatile ScaleMode scaleMode = ScaleMode.INTEGER;
+    private volatile long lastRenderNanos = 0;
+    private volatile long lastPresentNanos = 0;
+    // Only one thread draws a frame at a time, the EDT may still paint while the mode switches
+    private final Object frameLock = new Object();
+    private final Canvas canvas;
+    private volatile BufferStrategy strategy;
+    private volatile PresentMode presentMode = PresentMode.ACTIVE;
+    // One per mode, kept across switches so that the two paths can be compared
+    private final EnumMap<PresentMode, PresentStats> presentStats = new EnumMap<>(PresentMode.class);
+    // nanoTime of the frame handed to Swing that hasn't been painted yet, 0 if none
+    private final AtomicLong pendingRepaint = new AtomicLong();
     private final HUD hud;
+    // Main camera, moved by the player tank
     private final Camera camera;
+    // Replaced as a whole when the layout changes, every thread works on the array it read
+    private volatile Viewport[] viewports;
     public static final MainMenu MAIN_MENU = new MainMenu();
     private Menu currentMenu = MAIN_MENU;
 
@@ -23,12 +75,17 @@ public class Renderer extends JPanel {
         currentMenu = menu;
     }
 
+    /**
+     * Window x to the game's logical x, undoing the scaling and letterboxing of the frame
+     */
     private int scaleX(int screenX) {
-        return screenX * Game.WIDTH / getWidth();
+        Rectangle area = getPresentArea(getWidth(), getHeight());
+        return area.width > 0 ? (screenX - area.x) * Game.WIDTH / area.width : 0;
     }
 
     private int scaleY(int screenY) {
-        return screenY * Game.HEIGHT / getHeight();
+        Rectangle area = getPresentArea(getWidth(), getHeight());
+        return area.height > 0 ? (screenY - area.y) * Game.HEIGHT / area.height : 0;
     }
 
     public Renderer() {
@@ -38,7 +95,20 @@ public class Renderer extends JPanel {
         requestFocus();
         hud = new HUD();
         camera = new Camera();
-        addMouseListener(new MouseAdapter() {
+        for (PresentMode mode : PresentMode.values()) {
+            presentStats.put(mode, new PresentStats());
+        }
+        viewports = new Viewport[]{new Viewport(camera, new Rectangle(0, 0, Game.WIDTH, Game.HEIGHT))};
+
+        canvas = new Canvas();
+        canvas.setIgnoreRepaint(true);
+        canvas.setBackground(Color.BLACK);
+        // Keys go to the frame's key listener, the canvas must not take the focus away
+        canvas.setFocusable(false);
+        setLayout(new BorderLayout());
+        add(canvas, BorderLayout.CENTER);
+
+        MouseAdapter menuMouse = new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
                 if (GameState.isPaused()) {
@@ -53,9 +123,7 @@ public class Renderer extends JPanel {
                     repaint();
                 }
             }
-        });
 
-        addMouseMotionListener(new java.awt.event.MouseMotionAdapter() {
             @Override
             public void mouseMoved(MouseEvent e) {
                 if (GameState.isPaused()) {
@@ -65,9 +133,12 @@ public class Renderer extends JPanel {
                     repaint();
                 }
             }
-        });
-
-
+        };
+        // The canvas covers the panel in active mode, the panel gets the events otherwise
+        addMouseListener(menuMouse);
+        addMouseMotionListener(menuMouse);
+        canvas.addMouseListener(menuMouse);
+        canvas.addMouseMotionListener(menuMouse);
 
         setPreferredSize(new Dimension(Game.WIDTH, Game.HEIGHT));
         createBackBuffer();
@@ -79,7 +150,11 @@ public class Renderer extends JPanel {
                 .getDefaultScreenDevice()
                 .getDefaultConfiguration();
 
-        backBuffer = gc.createCompatibleVolatileImage(Game.WIDTH, Game.HEIGHT);
+        Dimension size = renderSize;
+        if (backBuffer != null) {
+            backBuffer.flush();
+        }
+        backBuffer = gc.createCompatibleVolatileImage(size.width, size.height);
         backBuffer.setAccelerationPriority(1.0f);
     }
 
@@ -90,7 +165,16 @@ public class Renderer extends JPanel {
         switch (GameState.CURRENT_STATE)
         {
             case PLAY:
-                camera.update();
+                Viewport[] current = viewports;
+                if (current.length > 1) {
+                    // the second view watches the enemy nearest to the player, a new one once it is gone
+                    if (!World.WORLD.getEntityHandles().isAlive(current[1].getTargetHandle())) {
+                        current[1].setTarget(World.WORLD.findNearestEnemy(World.PLAYER_ENTITY));
+                    }
+                }
+                for (Viewport viewport : current) {
+                    viewport.update();
+                }
                 World.WORLD.update();
                 break;
             case PAUSED:
@@ -99,15 +183,85 @@ public class Renderer extends JPanel {
         // menus/paused logic later
     }
 
+    /**
+     * Get the frame that was just updated to the screen, called by the game loop
+     */
+    public void present() {
+        long handedOver = System.nanoTime();
+        if (presentMode == PresentMode.ACTIVE) {
+            presentActive(handedOver);
+        } else {
+            if (pendingRepaint.getAndSet(handedOver) != 0) {
+                presentStats.get(PresentMode.SWING).countCoalesced();
+            }
+            repaint();
+        }
+    }
+
+    /**
+     * Draw the frame and show it through the canvas' buffer strategy, on the calling thread
+     */
+    private void presentActive(long handedOver) {
+        if (!canvas.isShowing() || canvas.getWidth() <= 0 || canvas.getHeight() <= 0) {
+            return;
+        }
+        if (strategy == null) {
+            canvas.createBufferStrategy(BUFFERS);
+            strategy = canvas.getBufferStrategy();
+        }
+        synchronized (frameLock) {
+            renderFrame();
+            long presentStart = System.nanoTime();
+            do {
+                do {
+                    Graphics g = strategy.getDrawGraphics();
+                    try {
+                        drawScaled((Graphics2D) g, canvas.getWidth(), canvas.getHeight());
+                    } finally {
+                        g.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                strategy.show();
+            } while (strategy.contentsLost());
+            Toolkit.getDefaultToolkit().sync();
+            lastPresentNanos = System.nanoTime() - presentStart;
+        }
+        presentStats.get(PresentMode.ACTIVE).record(handedOver, System.nanoTime());
+    }
+
     /**
      * Paints the current frame.
-     * This is called by Swing when you call repaint().
+     * This is called by Swing when you call repaint(). In active mode the canvas covers the
+     * panel and the loop thread draws, there is nothing to paint here.
      */
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
+        if (presentMode == PresentMode.ACTIVE) {
+            return;
+        }
+
+        synchronized (frameLock) {
+            renderFrame();
+            long presentStart = System.nanoTime();
+            // Blit backBuffer onto screen
+            drawScaled((Graphics2D) g, getWidth(), getHeight());
+            Toolkit.getDefaultToolkit().sync();
+            lastPresentNanos = System.nanoTime() - presentStart;
+        }
+        long handedOver = pendingRepaint.getAndSet(0);
+        if (handedOver != 0) {
+            presentStats.get(PresentMode.SWING).record(handedOver, System.nanoTime());
+        }
+    }
 
-        if (backBuffer == null) {
+    /**
+     * Draw the current state into the back buffer
+     */
+    private void renderFrame() {
+        long start = System.nanoTime();
+        Dimension size = renderSize;
+        if (backBuffer == null || backBuffer.getWidth() != size.width || backBuffer.getHeight() != size.height) {
             createBackBuffer();
         }
 
@@ -128,17 +282,14 @@ public class Renderer extends JPanel {
 
                 // Clear
                 g2.setColor(Color.BLACK);
-                g2.fillRect(0, 0, Game.WIDTH, Game.HEIGHT);
+                g2.fillRect(0, 0, size.width, size.height);
+                // Everything below draws in the logical 640x360 view
+                g2.scale(size.width / (double) Game.WIDTH, size.height / (double) Game.HEIGHT);
 
                 switch (GameState.CURRENT_STATE)
                 {
                     case PLAY:
-                        AffineTransform original = g2.getTransform();
-                        camera.applyTransform(g2, Game.WIDTH, Game.HEIGHT);
-
-                        World.WORLD.render(g2, camera.getViewBounds(Game.WIDTH, Game.HEIGHT));
-
-                        camera.resetTransform(g2, original);
+                        renderViewports(g2);
                         hud.render(g2);
                         break;
                     case PAUSED:
@@ -157,9 +308,250 @@ public class Renderer extends JPanel {
                 g2.dispose();
             }
         } while (backBuffer.contentsLost());
+        lastRenderNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Draw the world into every viewport's part of the logical view, each through its own camera.
+     * The chunks are loaded for all views first, the views then share them.
+     */
+    private void renderViewports(Graphics2D g2) {
+        Viewport[] current = viewports;
+        Rectangle[] views = viewBoundsOf(current);
+        World.WORLD.loadChunks(views);
+
+        AffineTransform original = g2.getTransform();
+        Shape originalClip = g2.getClip();
+        for (int i = 0; i < current.length; i++) {
+            long start = System.nanoTime();
+            Rectangle area = current[i].getArea();
+            g2.clipRect(area.x, area.y, area.width, area.height);
+            g2.translate(area.x, area.y);
+            Camera viewCamera = current[i].getCamera();
+            viewCamera.applyTransform(g2, area.width, area.height);
+
+            World.WORLD.render(g2, views[i], i);
+
+            viewCamera.resetTransform(g2, original);
+            g2.setClip(originalClip);
+            current[i].setRenderNanos(System.nanoTime() - start);
+        }
+
+        // divider between the views
+        g2.setColor(Color.BLACK);
+        for (int i = 1; i < current.length; i++) {
+            Rectangle area = current[i].getArea();
+            g2.fillRect(area.x - DIVIDER_WIDTH / 2, area.y, DIVIDER_WIDTH, area.height);
+        }
+    }
+
+    /**
+     * Split the screen into two side by side views, the second one following the enemy nearest to
+     * the player, or go back to the single main view. Called on the EDT.
+     */
+    public void setSplitScreen(boolean split) {
+        if (split) {
+            int half = Game.WIDTH / 2;
+            Camera watcher = new Camera(camera.getX(), camera.getY(), camera.getZoom());
+            viewports = new Viewport[]{
+                    new Viewport(camera, new Rectangle(0, 0, half, Game.HEIGHT)),
+                    new Viewport(watcher, new Rectangle(half, 0, Game.WIDTH - half, Game.HEIGHT)),
+            };
+        } else {
+            viewports = new Viewport[]{new Viewport(camera, new Rectangle(0, 0, Game.WIDTH, Game.HEIGHT))};
+        }
+    }
+
+    public void toggleSplitScreen() {
+        setSplitScreen(!isSplitScreen());
+    }
+
+    public boolean isSplitScreen() {
+        return viewports.length > 1;
+    }
+
+    public Viewport[] getViewports() {
+        return viewports.clone();
+    }
+
+    /**
+     * What each viewport currently shows, in world coordinates
+     */
+    public Rectangle[] getViewBounds() {
+        return viewBoundsOf(viewports);
+    }
+
+    private static Rectangle[] viewBoundsOf(Viewport[] current) {
+        Rectangle[] views = new Rectangle[current.length];
+        for (int i = 0; i < current.length; i++) {
+            views[i] = current[i].getViewBounds();
+        }
+        return views;
+    }
+
+    /**
+     * Part of a window of the given size the frame is drawn into
+     */
+    public Rectangle getPresentArea(int windowWidth, int windowHeight) {
+        if (scaleMode == ScaleMode.STRETCH) {
+            return new Rectangle(0, 0, windowWidth, windowHeight);
+        }
+        Dimension size = renderSize;
+        int scale = Math.min(windowWidth / size.width, windowHeight / size.height);
+        int width, height;
+        if (scale >= 1) {
+            width = size.width * scale;
+            height = size.height * scale;
+        } else {
+            // Window smaller than the frame, shrink it keeping the aspect ratio
+            width = Math.min(windowWidth, windowHeight * size.width / size.height);
+            height = width * size.height / size.width;
+        }
+        return new Rectangle((windowWidth - width) / 2, (windowHeight - height) / 2, width, height);
+    }
+
+    /**
+     * Fit the back buffer into a window-sized target according to the scale mode
+     */
+    private void drawScaled(Graphics2D g, int windowWidth, int windowHeight) {
+        Rectangle area = getPresentArea(windowWidth, windowHeight);
+        if (scaleMode == ScaleMode.STRETCH) {
+            g.drawImage(backBuffer, area.x, area.y, area.width, area.height, null);
+            return;
+        }
+
+        // Letterbox bars, the target may still hold an older frame of another size
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, windowWidth, area.y);
+        g.fillRect(0, area.y + area.height, windowWidth, windowHeight - area.y - area.height);
+        g.fillRect(0, area.y, area.x, area.height);
+        g.fillRect(area.x + area.width, area.y, windowWidth - area.x - area.width, area.height);
+
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        if (scaleMode == ScaleMode.INTEGER) {
+            g.drawImage(backBuffer, area.x, area.y, area.width, area.height, null);
+            return;
+        }
+
+        GraphicsConfiguration gc = g.getDeviceConfiguration();
+        if (scaledBuffer == null || scaledBuffer.getWidth() != area.width || scaledBuffer.getHeight() != area.height ||
+                scaledBuffer.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE) {
+            if (scaledBuffer != null) {
+                scaledBuffer.flush();
+            }
+            scaledBuffer = gc.createCompatibleVolatileImage(area.width, area.height);
+        }
+        do {
+            Graphics2D scaled = scaledBuffer.createGraphics();
+            try {
+                scaled.setComposite(AlphaComposite.Src);
+                scaled.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+                scaled.drawImage(backBuffer, 0, 0, area.width, area.height, null);
+            } finally {
+                scaled.dispose();
+            }
+        } while (scaledBuffer.contentsLost());
+        g.drawImage(scaledBuffer, area.x, area.y, null);
+    }
+
+    /**
+     * Switch between Swing repaints and active rendering, called on the EDT
+     */
+    public void setPresentMode(PresentMode mode) {
+        if (mode == presentMode) {
+            return;
+        }
+        // Swing mode paints the panel, the canvas would sit on top of it
+        canvas.setVisible(mode == PresentMode.ACTIVE);
+        revalidate();
+        presentMode = mode;
+        pendingRepaint.set(0);
+        // start the mode's window over, the other mode keeps its last results to compare against
+        presentStats.get(mode).reset();
+        repaint();
+    }
+
+    /**
+     * Set the resolution frames are drawn at, the logical view is scaled to fill it
+     */
+    public void setRenderSize(int width, int height) {
+        renderSize = new Dimension(width, height);
+    }
+
+    /**
+     * Switch to the next of the preset internal resolutions
+     */
+    public void cycleRenderSize() {
+        Dimension current = renderSize;
+        int next = 0;
+        for (int i = 0; i < RESOLUTIONS.length; i++) {
+            if (RESOLUTIONS[i].equals(current)) {
+                next = (i + 1) % RESOLUTIONS.length;
+            }
+        }
+        setRenderSize(RESOLUTIONS[next].width, RESOLUTIONS[next].height);
+    }
+
+    public Dimension getRenderSize() {
+        return renderSize;
+    }
+
+    public void setScaleMode(ScaleMode mode) {
+        scaleMode = mode;
+        repaint();
+    }
+
+    public void cycleScaleMode() {
+        ScaleMode[] modes = ScaleMode.values();
+        setScaleMode(modes[(scaleMode.ordinal() + 1) % modes.length]);
+    }
+
+    public ScaleMode getScaleMode() {
+        return scaleMode;
+    }
+
+    /**
+     * Time spent drawing the last frame into the back buffer, in milliseconds
+     */
+    public double getRenderMillis() {
+        return lastRenderNanos / 1_000_000.0;
+    }
+
+    /**
+     * Time spent scaling the last frame onto the screen, including show() and sync(), in milliseconds
+     */
+    public double getPresentMillis() {
+        return lastPresentNanos / 1_000_000.0;
+    }
+
+    public void togglePresentMode() {
+        setPresentMode(presentMode == PresentMode.ACTIVE ? PresentMode.SWING : PresentMode.ACTIVE);
+    }
 
-        // Blit backBuffer onto screen
-        g.drawImage(backBuffer, 0, 0, getWidth(), getHeight(), null);
+    public PresentMode getPresentMode() {
+        return presentMode;
+    }
+
+    /**
+     * Number of buffers of the active mode's buffer strategy, 0 before the first active frame
+     */
+    public int getBufferCount() {
+        return strategy != null ? BUFFERS : 0;
+    }
+
+    /**
+     * Whether show() flips video pages instead of copying the back buffer
+     */
+    public boolean isPageFlipping() {
+        BufferStrategy current = strategy;
+        return current != null && current.getCapabilities().isPageFlipping();
+    }
+
+    /**
+     * Stats of the frames presented the given way, since the last switch to it
+     */
+    public PresentStats getPresentStats(PresentMode mode) {
+        return presentStats.get(mode);
     }
 
     public Camera getCamera() {
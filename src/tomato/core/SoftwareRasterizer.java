@@ -0,0 +1,549 @@
+package tomato.core;
+
+import tomato.vfx.Lighting;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Draws the world view into an int[] framebuffer instead of through Graphics2D, and uploads it
+ * with a single drawImage. The view is split into 64px tiles that are rasterized in parallel on
+ * the common fork-join pool: the terrain from the chunk pixels, then the sorted draws of the
+ * frame's display list, then the lighting.
+ *
+ * The draws are binned into the tiles they touch first, in queue order, so every tile replays only
+ * its own draws and still in the right order. Sprites are alpha-tested (alpha of at least half is
+ * drawn opaque, the rest skipped) and fills are blended. Ovals up to MAX_MASKED_OVAL pixels use the
+ * coverage mask Java2D itself produces for that size, rasterized once, since its small ovals are not
+ * symmetric and translucent ones go through a different loop with different coverage. Larger ones
+ * cover the pixels whose centers are inside. Lights are computed per pixel from the same linear
+ * falloff the light textures use, at full resolution whatever the light map divisor is.
+ *
+ * Pixels of chunks and sprites are read once with getRGB() and kept while the image is alive, so
+ * the images themselves stay managed for the Java2D renderer.
+ *
+ * Only used on the render thread (the EDT in Swing present mode, the game loop thread in active
+ * mode), the tile tasks only read what it prepared.
+ */
+public class SoftwareRasterizer implements RenderQueue.Target, Lighting.LightSink {
+    private static final int TILE_SIZE = 64;
+    // Tiles per fork-join task, below this a task stops splitting
+    private static final int TILES_PER_TASK = 2;
+    private static final int ALPHA_TEST = 0x80;
+    private static final int MAX_MASKED_OVAL = 32;
+
+    private static final byte IMAGE = 0;
+    private static final byte FILL_RECT = 1;
+    private static final byte FILL_OVAL = 2;
+    private static final byte DRAW_RECT = 3;
+
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final Map<BufferedImage, int[]> pixelCache = new WeakHashMap<>();
+    // Java2D's coverage of fillOval(0, 0, width, height), by width * (MAX_MASKED_OVAL + 1) + height,
+    // for opaque and for translucent colors
+    private final boolean[][] opaqueOvalMasks = new boolean[(MAX_MASKED_OVAL + 1) * (MAX_MASKED_OVAL + 1)][];
+    private final boolean[][] translucentOvalMasks = new boolean[(MAX_MASKED_OVAL + 1) * (MAX_MASKED_OVAL + 1)][];
+
+    // Framebuffer, the pixel array of an INT_RGB image of the view's size
+    private BufferedImage frame;
+    private int[] pixels;
+    private int frameWidth, frameHeight;
+    private int viewX, viewY;
+
+    // Draw commands of the frame, in queue order
+    private int commandCount = 0;
+    private byte[] kind = new byte[1024];
+    private int[][] source = new int[1024][];
+    private int[] sourceWidth = new int[1024];
+    private int[] x = new int[1024];
+    private int[] y = new int[1024];
+    private int[] width = new int[1024];
+    private int[] height = new int[1024];
+    private int[] argb = new int[1024];
+    private boolean[][] mask = new boolean[1024][];
+
+    // Command indices per tile
+    private int tilesX, tilesY;
+    private int[][] tileCommands = new int[0][];
+    private int[] tileCommandCount = new int[0];
+    // Lights reaching into each tile, scratch space kept across frames, only touched by the tile's task
+    private int[][] tileLights = new int[0][];
+    private long binnedCommands = 0;
+
+    // Chunks overlapping the view
+    private int chunkCount = 0;
+    private int[][] chunkPixels = new int[9][];
+    private int[] chunkX = new int[9];
+    private int[] chunkY = new int[9];
+    private int chunkSize;
+
+    // Lights of the frame, world coordinates
+    private int lightCount = 0;
+    private int[] lightX = new int[64];
+    private int[] lightY = new int[64];
+    private int[] lightRadius = new int[64];
+    private float[] lightStrength = new float[64];
+    private float ambient;
+
+    private long lastRasterNanos = 0;
+    private long lastUploadNanos = 0;
+    private long lastBinnedCommands = 0;
+
+    /**
+     * Rasterize the view and draw it into g, which has the camera transform applied.
+     * The display list holds the frame's sorted draws, it is replayed here.
+     */
+    public void render(Graphics2D g, Rectangle view, Collection<World.Chunk> chunks, int chunkSizePx,
+                       DisplayList draws, Lighting lighting) {
+        long start = System.nanoTime();
+        prepareFrame(view);
+        collectChunks(view, chunks, chunkSizePx);
+        commandCount = 0;
+        draws.replay(this);
+        binCommands();
+        lightCount = 0;
+        ambient = lighting.getAmbientAlpha();
+        lighting.collectLights(view, this);
+        if (tileLights.length > 0 && tileLights[0].length < lightCount) {
+            for (int tile = 0; tile < tileLights.length; tile++) {
+                tileLights[tile] = new int[lightCount * 2];
+            }
+        }
+
+        pool.invoke(new TileTask(0, tilesX * tilesY));
+        long rastered = System.nanoTime();
+
+        g.drawImage(frame, view.x, view.y, null);
+        long uploaded = System.nanoTime();
+        lastRasterNanos = rastered - start;
+        lastUploadNanos = uploaded - rastered;
+        lastBinnedCommands = binnedCommands;
+    }
+
+    private void prepareFrame(Rectangle view) {
+        if (frame == null || frameWidth != view.width || frameHeight != view.height) {
+            frameWidth = Math.max(1, view.width);
+            frameHeight = Math.max(1, view.height);
+            // The pixel array is written directly, the image can't be managed anyway
+            frame = new BufferedImage(frameWidth, frameHeight, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+            tilesX = (frameWidth + TILE_SIZE - 1) / TILE_SIZE;
+            tilesY = (frameHeight + TILE_SIZE - 1) / TILE_SIZE;
+            tileCommands = new int[tilesX * tilesY][64];
+            tileCommandCount = new int[tilesX * tilesY];
+            tileLights = new int[tilesX * tilesY][16];
+        }
+        viewX = view.x;
+        viewY = view.y;
+    }
+
+    private int[] pixelsOf(BufferedImage image) {
+        int[] cached = pixelCache.get(image);
+        if (cached == null) {
+            cached = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+            pixelCache.put(image, cached);
+        }
+        return cached;
+    }
+
+    private void collectChunks(Rectangle view, Collection<World.Chunk> chunks, int chunkSizePx) {
+        chunkSize = chunkSizePx;
+        chunkCount = 0;
+        for (World.Chunk chunk : chunks) {
+            if (!view.intersects(chunk.getBounds())) {
+                continue;
+            }
+            if (chunkCount == chunkPixels.length) {
+                chunkPixels = Arrays.copyOf(chunkPixels, chunkCount * 2);
+                chunkX = Arrays.copyOf(chunkX, chunkCount * 2);
+                chunkY = Arrays.copyOf(chunkY, chunkCount * 2);
+            }
+            chunkPixels[chunkCount] = pixelsOf(chunk.image);
+            chunkX[chunkCount] = chunk.worldX;
+            chunkY[chunkCount] = chunk.worldY;
+            chunkCount++;
+        }
+    }
+
+    // --- render queue target, called in draw order
+
+    private int addCommand(byte commandKind, int drawX, int drawY, int drawWidth, int drawHeight) {
+        if (commandCount == kind.length) {
+            int capacity = commandCount * 2;
+            kind = Arrays.copyOf(kind, capacity);
+            source = Arrays.copyOf(source, capacity);
+            sourceWidth = Arrays.copyOf(sourceWidth, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            width = Arrays.copyOf(width, capacity);
+            height = Arrays.copyOf(height, capacity);
+            argb = Arrays.copyOf(argb, capacity);
+            mask = Arrays.copyOf(mask, capacity);
+        }
+        int index = commandCount++;
+        kind[index] = commandKind;
+        // Framebuffer coordinates
+        x[index] = drawX - viewX;
+        y[index] = drawY - viewY;
+        width[index] = drawWidth;
+        height[index] = drawHeight;
+        return index;
+    }
+
+    @Override
+    public void drawImage(BufferedImage image, int drawX, int drawY) {
+        int index = addCommand(IMAGE, drawX, drawY, image.getWidth(), image.getHeight());
+        source[index] = pixelsOf(image);
+        sourceWidth[index] = image.getWidth();
+    }
+
+    @Override
+    public void fillRect(int color, int drawX, int drawY, int drawWidth, int drawHeight) {
+        int index = addCommand(FILL_RECT, drawX, drawY, drawWidth, drawHeight);
+        argb[index] = color;
+    }
+
+    @Override
+    public void fillOval(int color, int drawX, int drawY, int drawWidth, int drawHeight) {
+        int index = addCommand(FILL_OVAL, drawX, drawY, drawWidth, drawHeight);
+        argb[index] = color;
+        mask[index] = ovalMask(drawWidth, drawHeight, (color >>> 24) == 0xFF);
+    }
+
+    /**
+     * Pixels Java2D fills for an oval of the given size, null if it is too big to keep a mask for
+     */
+    private boolean[] ovalMask(int ovalWidth, int ovalHeight, boolean opaque) {
+        if (ovalWidth <= 0 || ovalHeight <= 0 || ovalWidth > MAX_MASKED_OVAL || ovalHeight > MAX_MASKED_OVAL) {
+            return null;
+        }
+        int key = ovalWidth * (MAX_MASKED_OVAL + 1) + ovalHeight;
+        boolean[][] masks = opaque ? opaqueOvalMasks : translucentOvalMasks;
+        boolean[] coverage = masks[key];
+        if (coverage == null) {
+            BufferedImage image = new BufferedImage(ovalWidth, ovalHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setColor(opaque ? Color.WHITE : new Color(255, 255, 255, 0x80));
+            g.fillOval(0, 0, ovalWidth, ovalHeight);
+            g.dispose();
+            coverage = new boolean[ovalWidth * ovalHeight];
+            for (int i = 0; i < coverage.length; i++) {
+                coverage[i] = (image.getRGB(i % ovalWidth, i / ovalWidth) & 0xFFFFFF) != 0;
+            }
+            masks[key] = coverage;
+        }
+        return coverage;
+    }
+
+    @Override
+    public void drawRect(int color, int drawX, int drawY, int drawWidth, int drawHeight) {
+        // Java2D outlines cover one pixel more than the size in each direction
+        int index = addCommand(DRAW_RECT, drawX, drawY, drawWidth + 1, drawHeight + 1);
+        argb[index] = color;
+    }
+
+    @Override
+    public void addLight(int worldX, int worldY, int radius, float strength) {
+        if (radius <= 0 || strength <= 0) {
+            return;
+        }
+        if (lightCount == lightX.length) {
+            int capacity = lightCount * 2;
+            lightX = Arrays.copyOf(lightX, capacity);
+            lightY = Arrays.copyOf(lightY, capacity);
+            lightRadius = Arrays.copyOf(lightRadius, capacity);
+            lightStrength = Arrays.copyOf(lightStrength, capacity);
+        }
+        lightX[lightCount] = worldX - viewX;
+        lightY[lightCount] = worldY - viewY;
+        lightRadius[lightCount] = radius;
+        // The light textures hold the strength as an 8-bit alpha
+        lightStrength[lightCount] = Math.round(strength * 255) / 255f;
+        lightCount++;
+    }
+
+    /**
+     * Put every command on the list of each tile its bounds touch, keeping queue order
+     */
+    private void binCommands() {
+        Arrays.fill(tileCommandCount, 0);
+        long binned = 0;
+        for (int i = 0; i < commandCount; i++) {
+            int minTileX = Math.max(0, Math.floorDiv(x[i], TILE_SIZE));
+            int minTileY = Math.max(0, Math.floorDiv(y[i], TILE_SIZE));
+            int maxTileX = Math.min(tilesX - 1, Math.floorDiv(x[i] + width[i] - 1, TILE_SIZE));
+            int maxTileY = Math.min(tilesY - 1, Math.floorDiv(y[i] + height[i] - 1, TILE_SIZE));
+            for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+                for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                    int tile = tileY * tilesX + tileX;
+                    int n = tileCommandCount[tile];
+                    if (n == tileCommands[tile].length) {
+                        tileCommands[tile] = Arrays.copyOf(tileCommands[tile], n * 2);
+                    }
+                    tileCommands[tile][n] = i;
+                    tileCommandCount[tile] = n + 1;
+                    binned++;
+                }
+            }
+        }
+        binnedCommands = binned;
+    }
+
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+
+        TileTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TILES_PER_TASK) {
+                for (int tile = from; tile < to; tile++) {
+                    rasterTile(tile);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileTask(from, middle), new TileTask(middle, to));
+        }
+    }
+
+    private void rasterTile(int tile) {
+        int minX = (tile % tilesX) * TILE_SIZE;
+        int minY = (tile / tilesX) * TILE_SIZE;
+        int maxX = Math.min(frameWidth, minX + TILE_SIZE);
+        int maxY = Math.min(frameHeight, minY + TILE_SIZE);
+
+        drawTerrain(minX, minY, maxX, maxY);
+        int[] commands = tileCommands[tile];
+        for (int i = 0, n = tileCommandCount[tile]; i < n; i++) {
+            int command = commands[i];
+            switch (kind[command]) {
+                case IMAGE:
+                    drawSprite(command, minX, minY, maxX, maxY);
+                    break;
+                case FILL_RECT:
+                    blendRect(argb[command], x[command], y[command], width[command], height[command],
+                            minX, minY, maxX, maxY);
+                    break;
+                case FILL_OVAL:
+                    blendOval(command, minX, minY, maxX, maxY);
+                    break;
+                default:
+                    drawOutline(command, minX, minY, maxX, maxY);
+                    break;
+            }
+        }
+        applyLighting(tileLights[tile], minX, minY, maxX, maxY);
+    }
+
+    private void drawTerrain(int minX, int minY, int maxX, int maxY) {
+        // Unloaded chunks stay black, like the background behind them
+        for (int py = minY; py < maxY; py++) {
+            Arrays.fill(pixels, py * frameWidth + minX, py * frameWidth + maxX, 0);
+        }
+        for (int c = 0; c < chunkCount; c++) {
+            int left = chunkX[c] - viewX;
+            int top = chunkY[c] - viewY;
+            int fromX = Math.max(minX, left);
+            int toX = Math.min(maxX, left + chunkSize);
+            int fromY = Math.max(minY, top);
+            int toY = Math.min(maxY, top + chunkSize);
+            if (fromX >= toX || fromY >= toY) {
+                continue;
+            }
+            int[] chunk = chunkPixels[c];
+            for (int py = fromY; py < toY; py++) {
+                System.arraycopy(chunk, (py - top) * chunkSize + (fromX - left),
+                        pixels, py * frameWidth + fromX, toX - fromX);
+            }
+        }
+    }
+
+    private void drawSprite(int command, int minX, int minY, int maxX, int maxY) {
+        int left = x[command];
+        int top = y[command];
+        int fromX = Math.max(minX, left);
+        int toX = Math.min(maxX, left + width[command]);
+        int fromY = Math.max(minY, top);
+        int toY = Math.min(maxY, top + height[command]);
+        int[] sprite = source[command];
+        int stride = sourceWidth[command];
+        for (int py = fromY; py < toY; py++) {
+            int sourceRow = (py - top) * stride - left;
+            int row = py * frameWidth;
+            for (int px = fromX; px < toX; px++) {
+                int pixel = sprite[sourceRow + px];
+                if ((pixel >>> 24) >= ALPHA_TEST) {
+                    pixels[row + px] = pixel;
+                }
+            }
+        }
+    }
+
+    private void blendRect(int color, int left, int top, int rectWidth, int rectHeight,
+                           int minX, int minY, int maxX, int maxY) {
+        int fromX = Math.max(minX, left);
+        int toX = Math.min(maxX, left + rectWidth);
+        int fromY = Math.max(minY, top);
+        int toY = Math.min(maxY, top + rectHeight);
+        for (int py = fromY; py < toY; py++) {
+            int row = py * frameWidth;
+            for (int px = fromX; px < toX; px++) {
+                pixels[row + px] = blend(pixels[row + px], color);
+            }
+        }
+    }
+
+    private void blendOval(int command, int minX, int minY, int maxX, int maxY) {
+        int left = x[command];
+        int top = y[command];
+        int ovalWidth = width[command];
+        int ovalHeight = height[command];
+        if (ovalWidth <= 0 || ovalHeight <= 0) {
+            return;
+        }
+        int fromX = Math.max(minX, left);
+        int toX = Math.min(maxX, left + ovalWidth);
+        int fromY = Math.max(minY, top);
+        int toY = Math.min(maxY, top + ovalHeight);
+        int color = argb[command];
+        boolean[] coverage = mask[command];
+        if (coverage != null) {
+            for (int py = fromY; py < toY; py++) {
+                int maskRow = (py - top) * ovalWidth - left;
+                int row = py * frameWidth;
+                for (int px = fromX; px < toX; px++) {
+                    if (coverage[maskRow + px]) {
+                        pixels[row + px] = blend(pixels[row + px], color);
+                    }
+                }
+            }
+            return;
+        }
+        // Pixel centers inside the ellipse, in units of the radii
+        float centerX = left + ovalWidth / 2f;
+        float centerY = top + ovalHeight / 2f;
+        float inverseRadiusX = 2f / ovalWidth;
+        float inverseRadiusY = 2f / ovalHeight;
+        for (int py = fromY; py < toY; py++) {
+            float dy = (py + 0.5f - centerY) * inverseRadiusY;
+            int row = py * frameWidth;
+            for (int px = fromX; px < toX; px++) {
+                float dx = (px + 0.5f - centerX) * inverseRadiusX;
+                if (dx * dx + dy * dy <= 1f) {
+                    pixels[row + px] = blend(pixels[row + px], color);
+                }
+            }
+        }
+    }
+
+    private void drawOutline(int command, int minX, int minY, int maxX, int maxY) {
+        int left = x[command];
+        int top = y[command];
+        int outlineWidth = width[command];
+        int outlineHeight = height[command];
+        int color = argb[command];
+        blendRect(color, left, top, outlineWidth, 1, minX, minY, maxX, maxY);
+        if (outlineHeight > 1) {
+            blendRect(color, left, top + outlineHeight - 1, outlineWidth, 1, minX, minY, maxX, maxY);
+        }
+        blendRect(color, left, top + 1, 1, outlineHeight - 2, minX, minY, maxX, maxY);
+        if (outlineWidth > 1) {
+            blendRect(color, left + outlineWidth - 1, top + 1, 1, outlineHeight - 2, minX, minY, maxX, maxY);
+        }
+    }
+
+    private static int blend(int destination, int color) {
+        int alpha = color >>> 24;
+        if (alpha == 0xFF) {
+            return color;
+        }
+        int inverse = 255 - alpha;
+        int red = (((color >> 16) & 0xFF) * alpha + ((destination >> 16) & 0xFF) * inverse + 127) / 255;
+        int green = (((color >> 8) & 0xFF) * alpha + ((destination >> 8) & 0xFF) * inverse + 127) / 255;
+        int blue = ((color & 0xFF) * alpha + (destination & 0xFF) * inverse + 127) / 255;
+        return red << 16 | green << 8 | blue;
+    }
+
+    /**
+     * Darken the tile by the ambient darkness, minus what the lights cut out of it
+     */
+    private void applyLighting(int[] tileLights, int minX, int minY, int maxX, int maxY) {
+        // Darkness is kept as an 8-bit alpha like the light map's
+        int ambientAlpha = (int) (ambient * 255 + 0.5f);
+        if (ambientAlpha == 0) {
+            return;
+        }
+        int tileLightCount = 0;
+        for (int i = 0; i < lightCount; i++) {
+            int radius = lightRadius[i];
+            if (lightX[i] + radius > minX && lightX[i] - radius < maxX &&
+                    lightY[i] + radius > minY && lightY[i] - radius < maxY) {
+                tileLights[tileLightCount++] = i;
+            }
+        }
+
+        for (int py = minY; py < maxY; py++) {
+            int row = py * frameWidth;
+            for (int px = minX; px < maxX; px++) {
+                float darkness = ambientAlpha / 255f;
+                for (int l = 0; l < tileLightCount; l++) {
+                    int light = tileLights[l];
+                    float dx = px + 0.5f - lightX[light];
+                    float dy = py + 0.5f - lightY[light];
+                    float radius = lightRadius[light];
+                    float distanceSquared = dx * dx + dy * dy;
+                    if (distanceSquared < radius * radius) {
+                        float cut = lightStrength[light] * (1f - (float) Math.sqrt(distanceSquared) / radius);
+                        darkness *= 1f - cut;
+                    }
+                }
+                int alpha = (int) (darkness * 255 + 0.5f);
+                if (alpha != 0) {
+                    pixels[row + px] = blend(pixels[row + px], alpha << 24);
+                }
+            }
+        }
+    }
+
+    /**
+     * Time to rasterize the last frame on all tiles, including binning, in milliseconds
+     */
+    public double getRasterMillis() {
+        return lastRasterNanos / 1_000_000.0;
+    }
+
+    /**
+     * Time to draw the finished framebuffer through Java2D, in milliseconds
+     */
+    public double getUploadMillis() {
+        return lastUploadNanos / 1_000_000.0;
+    }
+
+    public int getTileCount() {
+        return tilesX * tilesY;
+    }
+
+    /**
+     * Command entries over all tiles in the last frame, draws spanning tiles count once per tile
+     */
+    public long getBinnedCommands() {
+        return lastBinnedCommands;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+}
@@ -1,174 +1,992 @@
 package tomato.core;
 
+import tomato.entity.CollisionLayer;
 import tomato.entity.Entity;
+import tomato.entity.EntityType;
 
-import java.awt.*;
 import java.util.*;
 import java.util.List;
 
 /**
  * Spatial partitioning system for efficient collision detection.
  * Divides the world into a grid to avoid O(n²) collision checks.
+ * Queries walk cell ranges directly and use per-query stamps on entities
+ * instead of visited sets, so the per-frame hot paths don't allocate.
+ *
+ * Each cell has two layers: a dynamic layer for movers that is rebuilt every
+ * frame, and a static layer that only changes when static entities spawn,
+ * despawn or their chunk unloads or loads again. Queries see both layers.
+ *
+ * Occupancy and query cost are summarized every frame in a {@link SpatialGridStats}.
+ * With auto-tuning on, the grid periodically re-picks its cell size from the
+ * observed entity sizes, candidates per query and multi-cell insertions.
  */
 public class SpatialGrid {
-    private final int cellSize;
-    private final Map<Point, Set<Entity>> grid;
-    
+    private static final int MIN_CELL_SIZE = 16;
+    private static final int MAX_CELL_SIZE = 512;
+    private static final int TUNE_INTERVAL_FRAMES = 120;
+    // consecutive evaluations that must agree before the cell size changes
+    private static final int TUNE_CONFIRMATIONS = 2;
+    private static final double MAX_CANDIDATES_PER_QUERY = 24.0;
+    // with cells twice the entity size about 75% of insertions span several cells,
+    // well above that the cells are smaller than the entities themselves
+    private static final double MAX_MULTI_CELL_RATIO = 0.9;
+
+    private int cellSize;
+    private final CellMap grid;
+    private int staticEntityCount = 0;
+
+    private static class Cell {
+        final ArrayList<Entity> dynamicEntities = new ArrayList<>();
+        final ArrayList<Entity> staticEntities = new ArrayList<>();
+
+        boolean isEmpty() {
+            return dynamicEntities.isEmpty() && staticEntities.isEmpty();
+        }
+    }
+
+    /**
+     * Open-addressing map from cell coordinates, packed into a long, to cells.
+     * Lookups neither allocate keys nor box them, which matters with one lookup per bullet.
+     */
+    private static class CellMap {
+        private long[] keys = new long[256];
+        private Cell[] cells = new Cell[256];
+        // spare arrays of the same capacity for dropping empty cells without allocating
+        private long[] spareKeys = new long[256];
+        private Cell[] spareCells = new Cell[256];
+        private int shift = 64 - 8;
+        private int size = 0;
+
+        private static long key(int cellX, int cellY) {
+            return ((long) cellX << 32) | (cellY & 0xffffffffL);
+        }
+
+        private int slotOf(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+        }
+
+        Cell get(int cellX, int cellY) {
+            long key = key(cellX, cellY);
+            int mask = keys.length - 1;
+            for (int slot = slotOf(key); cells[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return cells[slot];
+                }
+            }
+            return null;
+        }
+
+        Cell getOrCreate(int cellX, int cellY) {
+            Cell cell = get(cellX, cellY);
+            if (cell != null) {
+                return cell;
+            }
+            // keep the load factor at or below one half
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            cell = new Cell();
+            insert(keys, cells, key(cellX, cellY), cell);
+            size++;
+            return cell;
+        }
+
+        private void insert(long[] targetKeys, Cell[] targetCells, long key, Cell cell) {
+            int mask = targetKeys.length - 1;
+            int slot = slotOf(key);
+            while (targetCells[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            targetKeys[slot] = key;
+            targetCells[slot] = cell;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Cell[] oldCells = cells;
+            keys = new long[capacity];
+            cells = new Cell[capacity];
+            spareKeys = new long[capacity];
+            spareCells = new Cell[capacity];
+            shift = 64 - Integer.numberOfTrailingZeros(capacity);
+            for (int i = 0; i < oldCells.length; i++) {
+                if (oldCells[i] != null) {
+                    insert(keys, cells, oldKeys[i], oldCells[i]);
+                }
+            }
+        }
+
+        /**
+         * Rehash the cells that still hold entities into the spare arrays and swap them in
+         */
+        void removeEmpty() {
+            Arrays.fill(spareCells, null);
+            size = 0;
+            for (int i = 0; i < cells.length; i++) {
+                Cell cell = cells[i];
+                if (cell != null && !cell.isEmpty()) {
+                    insert(spareKeys, spareCells, keys[i], cell);
+                    size++;
+                }
+            }
+            long[] swapKeys = keys;
+            Cell[] swapCells = cells;
+            keys = spareKeys;
+            cells = spareCells;
+            spareKeys = swapKeys;
+            spareCells = swapCells;
+        }
+
+        void clear() {
+            Arrays.fill(cells, null);
+            size = 0;
+        }
+
+        int capacity() {
+            return cells.length;
+        }
+
+        /**
+         * Cell stored in the slot, null for free slots
+         */
+        Cell cellAt(int slot) {
+            return cells[slot];
+        }
+    }
+
+    // The grid is only touched from the update thread
+    private int queryStamp = 0;
+    // Distances of the results being collected by queryNearest(), grown on demand
+    private long[] nearestDistances = new long[8];
+
+    // Broadphase pair counters for the frame in progress
+    private int candidatePairs = 0;
+    private int maskRejectedPairs = 0;
+    private int narrowPhaseTests = 0;
+    private int pixelTests = 0;
+    private int lineOfSightTests = 0;
+
+    // Counters of the last completed frame (rolled over by clear())
+    private int lastCandidatePairs = 0;
+    private int lastMaskRejectedPairs = 0;
+    private int lastNarrowPhaseTests = 0;
+    private int lastPixelTests = 0;
+    private int lastLineOfSightTests = 0;
+
+    // Occupancy/query counters for the frame in progress
+    private int queries = 0;
+    private int maxCandidatesPerQuery = 0;
+    private int insertions = 0;
+    private int multiCellInsertions = 0;
+    // Stats of the frame being finished and of the last finished one, swapped under the lock
+    private final Object statsLock = new Object();
+    private SpatialGridStats pendingStats = new SpatialGridStats();
+    private SpatialGridStats lastStats = new SpatialGridStats();
+    private final int[] histogram = new int[SpatialGridStats.HISTOGRAM_BUCKETS];
+
+    // Auto-tuning window, accumulated over TUNE_INTERVAL_FRAMES frames
+    private boolean autoTune = false;
+    private int tuneFrames = 0;
+    private long tuneQueries = 0;
+    private long tuneCandidates = 0;
+    private long tuneInsertions = 0;
+    private long tuneMultiCellInsertions = 0;
+    private long tuneExtentSum = 0;
+    private int pendingCellSize = 0;
+    private int pendingConfirmations = 0;
+    private int retuneCount = 0;
+
     public SpatialGrid(int cellSize) {
         this.cellSize = cellSize;
-        this.grid = new HashMap<>();
+        this.grid = new CellMap();
     }
-    
+
     /**
-     * Clear all entities from the grid
+     * Clear all dynamic entities from the grid, the static layer is kept.
+     * Cell lists are kept for reuse next frame; cells that stayed empty are dropped.
      */
     public void clear() {
-        grid.clear();
+        int occupiedCells = 0;
+        int entityRefs = 0;
+        int maxEntitiesPerCell = 0;
+        Arrays.fill(histogram, 0);
+
+        boolean hasEmptyCells = false;
+        for (int slot = 0; slot < grid.capacity(); slot++) {
+            Cell cell = grid.cellAt(slot);
+            if (cell == null) {
+                continue;
+            }
+            if (cell.isEmpty()) {
+                hasEmptyCells = true;
+                continue;
+            }
+            int count = cell.dynamicEntities.size() + cell.staticEntities.size();
+            occupiedCells++;
+            entityRefs += count;
+            maxEntitiesPerCell = Math.max(maxEntitiesPerCell, count);
+            histogram[SpatialGridStats.histogramBucket(count)]++;
+            cell.dynamicEntities.clear();
+        }
+        if (hasEmptyCells) {
+            grid.removeEmpty();
+        }
+
+        SpatialGridStats finished = pendingStats;
+        finished.set(cellSize, occupiedCells, entityRefs, maxEntitiesPerCell, histogram,
+                queries, candidatePairs, maxCandidatesPerQuery, insertions, multiCellInsertions);
+        synchronized (statsLock) {
+            pendingStats = lastStats;
+            lastStats = finished;
+        }
+        if (autoTune) {
+            accumulateTuning();
+        }
+        queries = 0;
+        maxCandidatesPerQuery = 0;
+        insertions = 0;
+        multiCellInsertions = 0;
+
+        lastCandidatePairs = candidatePairs;
+        lastMaskRejectedPairs = maskRejectedPairs;
+        lastNarrowPhaseTests = narrowPhaseTests;
+        lastPixelTests = pixelTests;
+        lastLineOfSightTests = lineOfSightTests;
+        candidatePairs = 0;
+        maskRejectedPairs = 0;
+        narrowPhaseTests = 0;
+        pixelTests = 0;
+        lineOfSightTests = 0;
+    }
+
+    /**
+     * Count a candidate pair and check the collision masks before any rectangle test
+     */
+    private boolean acceptsPair(Entity entity, Entity other) {
+        candidatePairs++;
+        if (!entity.canCollideWith(other)) {
+            maskRejectedPairs++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * AABB test first, then the pixel masks only for boxes that actually overlap
+     */
+    private boolean intersects(Entity entity, Entity other) {
+        narrowPhaseTests++;
+        if (!entity.intersects(other)) {
+            return false;
+        }
+        pixelTests++;
+        return entity.pixelsOverlap(other);
+    }
+
+    /**
+     * Pixel narrow phase for a shape that is not an entity, e.g. a bullet, against an entity whose
+     * hitbox is already known to overlap it. Counted with the entity pair tests.
+     *
+     * @param mask    Pixel mask of the shape, null falls back to the hitbox result
+     * @param originX Left edge of the shape's sprite in world pixels
+     * @param originY Top edge of the shape's sprite in world pixels
+     */
+    boolean pixelsOverlap(CollisionMask mask, int originX, int originY, Entity other) {
+        CollisionMask otherMask = other.getPixelMask();
+        if (mask == null || otherMask == null) {
+            return true;
+        }
+        pixelTests++;
+        return mask.overlaps(otherMask, (int) other.getX() - originX, (int) other.getY() - originY);
+    }
+
+    private int nextQueryStamp() {
+        return ++queryStamp;
+    }
+
+    private int cellOf(int coordinate) {
+        return Math.floorDiv(coordinate, cellSize);
     }
-    
+
+    private Cell getCell(int cellX, int cellY) {
+        return grid.get(cellX, cellY);
+    }
+
+    private Cell getOrCreateCell(int cellX, int cellY) {
+        return grid.getOrCreate(cellX, cellY);
+    }
+
+    private void recordInsertion(Entity entity, int minCellX, int minCellY, int maxCellX, int maxCellY) {
+        insertions++;
+        if (maxCellX > minCellX || maxCellY > minCellY) {
+            multiCellInsertions++;
+        }
+        tuneExtentSum += Math.max(entity.getMaxX() - entity.getMinX(), entity.getMaxY() - entity.getMinY());
+    }
+
+    private void recordQuery(int candidatesBefore) {
+        queries++;
+        maxCandidatesPerQuery = Math.max(maxCandidatesPerQuery, candidatePairs - candidatesBefore);
+    }
+
     /**
-     * Add an entity to the spatial grid
+     * Add an entity to the dynamic layer of the spatial grid
      */
     public void addEntity(Entity entity) {
-        Rectangle hitbox = entity.getHitbox();
-        Set<Point> cells = getCellsForRectangle(hitbox);
-        
-        for (Point cell : cells) {
-            grid.computeIfAbsent(cell, _key -> new HashSet<>()).add(entity);
+        int minX = cellOf(entity.getMinX());
+        int minY = cellOf(entity.getMinY());
+        int maxX = cellOf(entity.getMaxX() - 1);
+        int maxY = cellOf(entity.getMaxY() - 1);
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                getOrCreateCell(x, y).dynamicEntities.add(entity);
+            }
         }
+        entity.setGridCells(minX, minY, maxX, maxY);
+        recordInsertion(entity, minX, minY, maxX, maxY);
     }
-    
+
     /**
-     * Remove an entity from the spatial grid
+     * Remove an entity from the dynamic layer of the spatial grid, from the cells it was inserted
+     * into even if its bounds changed since
      */
     public void removeEntity(Entity entity) {
-        Rectangle hitbox = entity.getHitbox();
-        Set<Point> cells = getCellsForRectangle(hitbox);
-        
-        for (Point cell : cells) {
-            Set<Entity> cellEntities = grid.get(cell);
-            if (cellEntities != null) {
-                cellEntities.remove(entity);
-                if (cellEntities.isEmpty()) {
-                    grid.remove(cell);
+        int minX = entity.getGridMinCellX();
+        int minY = entity.getGridMinCellY();
+        int maxX = entity.getGridMaxCellX();
+        int maxY = entity.getGridMaxCellY();
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                Cell cell = getCell(x, y);
+                if (cell != null) {
+                    cell.dynamicEntities.remove(entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add an entity to the static layer, it stays there until removeStaticEntity()
+     */
+    public void addStaticEntity(Entity entity) {
+        int minX = cellOf(entity.getMinX());
+        int minY = cellOf(entity.getMinY());
+        int maxX = cellOf(entity.getMaxX() - 1);
+        int maxY = cellOf(entity.getMaxY() - 1);
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                getOrCreateCell(x, y).staticEntities.add(entity);
+            }
+        }
+        entity.setGridCells(minX, minY, maxX, maxY);
+        staticEntityCount++;
+        recordInsertion(entity, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Remove an entity from the static layer (on despawn or when its chunk unloads), from the
+     * cells it was inserted into even if its bounds changed since
+     */
+    public void removeStaticEntity(Entity entity) {
+        int minX = entity.getGridMinCellX();
+        int minY = entity.getGridMinCellY();
+        int maxX = entity.getGridMaxCellX();
+        int maxY = entity.getGridMaxCellY();
+        boolean removed = false;
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                Cell cell = getCell(x, y);
+                if (cell != null) {
+                    removed |= cell.staticEntities.remove(entity);
+                }
+            }
+        }
+        if (removed) {
+            staticEntityCount--;
+        }
+    }
+
+    /**
+     * Collect sleeping static entities that the mover overlaps and that want to react to it,
+     * i.e. whose collision mask accepts the mover's layer
+     */
+    public List<Entity> getOverlappingSleepers(Entity mover, List<Entity> out) {
+        int candidatesBefore = candidatePairs;
+        int stamp = nextQueryStamp();
+        int minX = cellOf(mover.getMinX());
+        int minY = cellOf(mover.getMinY());
+        int maxX = cellOf(mover.getMaxX() - 1);
+        int maxY = cellOf(mover.getMaxY() - 1);
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                Cell cell = getCell(x, y);
+                if (cell == null) {
+                    continue;
+                }
+                ArrayList<Entity> sleepers = cell.staticEntities;
+                for (int i = 0; i < sleepers.size(); i++) {
+                    Entity sleeper = sleepers.get(i);
+                    if (sleeper != mover && sleeper.markQueried(stamp) &&
+                            acceptsPair(sleeper, mover) && intersects(sleeper, mover)) {
+                        out.add(sleeper);
+                    }
                 }
             }
         }
+
+        recordQuery(candidatesBefore);
+        return out;
     }
-    
+
     /**
-     * Get all entities that could potentially collide with the given entity
+     * Get all entities that could potentially collide with the given entity.
+     * Entities on layers outside the entity's collision mask are skipped.
      */
     public Set<Entity> getPotentialCollisions(Entity entity) {
-        Rectangle hitbox = entity.getHitbox();
-        Set<Point> cells = getCellsForRectangle(hitbox);
         Set<Entity> potentialCollisions = new HashSet<>();
-        
-        for (Point cell : cells) {
-            Set<Entity> cellEntities = grid.get(cell);
-            if (cellEntities != null) {
-                for (Entity other : cellEntities) {
-                    if (other != entity) {
-                        potentialCollisions.add(other);
-                    }
+        int candidatesBefore = candidatePairs;
+        int stamp = nextQueryStamp();
+        int minX = cellOf(entity.getMinX());
+        int minY = cellOf(entity.getMinY());
+        int maxX = cellOf(entity.getMaxX() - 1);
+        int maxY = cellOf(entity.getMaxY() - 1);
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                Cell cell = getCell(x, y);
+                if (cell == null) {
+                    continue;
                 }
+                collectPotential(cell.dynamicEntities, entity, stamp, potentialCollisions);
+                collectPotential(cell.staticEntities, entity, stamp, potentialCollisions);
             }
         }
-        
+
+        recordQuery(candidatesBefore);
         return potentialCollisions;
     }
-    
+
+    private void collectPotential(ArrayList<Entity> cellEntities, Entity entity, int stamp, Set<Entity> out) {
+        for (int i = 0; i < cellEntities.size(); i++) {
+            Entity other = cellEntities.get(i);
+            if (other != entity && other.markQueried(stamp) && acceptsPair(entity, other)) {
+                out.add(other);
+            }
+        }
+    }
+
     /**
      * Get the first entity that collides with the given entity
      */
     public Entity getFirstCollision(Entity entity) {
-        Rectangle hitbox = entity.getHitbox();
-        Set<Point> cells = getCellsForRectangle(hitbox);
-        
-        for (Point cell : cells) {
-            Set<Entity> cellEntities = grid.get(cell);
-            if (cellEntities != null) {
-                for (Entity other : cellEntities) {
-                    if (other != entity && hitbox.intersects(other.getHitbox())) {
-                        return other;
-                    }
+        int candidatesBefore = candidatePairs;
+        Entity hit = findFirstCollision(entity);
+        recordQuery(candidatesBefore);
+        return hit;
+    }
+
+    private Entity findFirstCollision(Entity entity) {
+        int stamp = nextQueryStamp();
+        int minX = cellOf(entity.getMinX());
+        int minY = cellOf(entity.getMinY());
+        int maxX = cellOf(entity.getMaxX() - 1);
+        int maxY = cellOf(entity.getMaxY() - 1);
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                Cell cell = getCell(x, y);
+                if (cell == null) {
+                    continue;
+                }
+                Entity hit = firstCollisionIn(cell.dynamicEntities, entity, stamp);
+                if (hit == null) {
+                    hit = firstCollisionIn(cell.staticEntities, entity, stamp);
+                }
+                if (hit != null) {
+                    return hit;
                 }
             }
         }
-        
+
+        return null;
+    }
+
+    private Entity firstCollisionIn(ArrayList<Entity> cellEntities, Entity entity, int stamp) {
+        for (int i = 0; i < cellEntities.size(); i++) {
+            Entity other = cellEntities.get(i);
+            if (other != entity && other.markQueried(stamp) &&
+                    acceptsPair(entity, other) && intersects(entity, other)) {
+                return other;
+            }
+        }
         return null;
     }
-    
+
     /**
      * Get all entities that actually collide with the given entity
      */
     public List<Entity> getActualCollisions(Entity entity) {
-        Rectangle hitbox = entity.getHitbox();
         Set<Entity> potentialCollisions = getPotentialCollisions(entity);
         List<Entity> actualCollisions = new ArrayList<>();
-        
+
         for (Entity other : potentialCollisions) {
-            if (hitbox.intersects(other.getHitbox())) {
+            if (intersects(entity, other)) {
                 actualCollisions.add(other);
             }
         }
-        
+
         return actualCollisions;
     }
-    
+
     /**
-     * Check if entity collides with any non-projectile entities
+     * Collect entities whose hitbox intersects the area and whose layer is in the mask.
+     * Used for swept movement where the area covers the whole step, not just the hitbox.
+     * The area is given by its edges, max exclusive.
      */
-    public boolean hasCollisionWithNonProjectiles(Entity entity) {
-        Rectangle hitbox = entity.getHitbox();
-        Set<Entity> potentialCollisions = getPotentialCollisions(entity);
-        
-        for (Entity other : potentialCollisions) {
-            if (!(other instanceof tomato.entity.Projectile) && hitbox.intersects(other.getHitbox())) {
-                return true;
+    public List<Entity> queryRectangle(int areaMinX, int areaMinY, int areaMaxX, int areaMaxY,
+                                       int mask, Entity exclude, List<Entity> out) {
+        int candidatesBefore = candidatePairs;
+        int stamp = nextQueryStamp();
+        int minX = cellOf(areaMinX);
+        int minY = cellOf(areaMinY);
+        int maxX = cellOf(areaMaxX - 1);
+        int maxY = cellOf(areaMaxY - 1);
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                Cell cell = getCell(x, y);
+                if (cell == null) {
+                    continue;
+                }
+                collectInArea(cell.dynamicEntities, areaMinX, areaMinY, areaMaxX, areaMaxY, mask, exclude, stamp, out);
+                collectInArea(cell.staticEntities, areaMinX, areaMinY, areaMaxX, areaMaxY, mask, exclude, stamp, out);
+            }
+        }
+
+        recordQuery(candidatesBefore);
+        return out;
+    }
+
+    private void collectInArea(ArrayList<Entity> cellEntities, int areaMinX, int areaMinY, int areaMaxX, int areaMaxY,
+                               int mask, Entity exclude, int stamp, List<Entity> out) {
+        for (int i = 0; i < cellEntities.size(); i++) {
+            Entity other = cellEntities.get(i);
+            if (other == exclude || !other.markQueried(stamp)) {
+                continue;
+            }
+            candidatePairs++;
+            if (!CollisionLayer.interacts(mask, other.getCollisionLayer())) {
+                maskRejectedPairs++;
+                continue;
+            }
+            narrowPhaseTests++;
+            if (other.intersects(areaMinX, areaMinY, areaMaxX, areaMaxY)) {
+                out.add(other);
             }
         }
-        
-        return false;
     }
-    
+
     /**
-     * Get all grid cells that a rectangle overlaps
+     * Collect entities on the masked layers whose hitbox is within the radius of a point
      */
-    private Set<Point> getCellsForRectangle(Rectangle rect) {
-        Set<Point> cells = new HashSet<>();
-        
-        int minX = rect.x / cellSize;
-        int minY = rect.y / cellSize;
-        int maxX = (rect.x + rect.width - 1) / cellSize;
-        int maxY = (rect.y + rect.height - 1) / cellSize;
-        
+    public List<Entity> queryRadius(int centerX, int centerY, int radius, int mask, List<Entity> out) {
+        int candidatesBefore = candidatePairs;
+        int stamp = nextQueryStamp();
+        long radiusSquared = (long) radius * radius;
+        int minX = cellOf(centerX - radius);
+        int minY = cellOf(centerY - radius);
+        int maxX = cellOf(centerX + radius);
+        int maxY = cellOf(centerY + radius);
+
         for (int x = minX; x <= maxX; x++) {
             for (int y = minY; y <= maxY; y++) {
-                cells.add(new Point(x, y));
+                Cell cell = getCell(x, y);
+                if (cell == null) {
+                    continue;
+                }
+                collectInRadius(cell.dynamicEntities, centerX, centerY, radiusSquared, mask, stamp, out);
+                collectInRadius(cell.staticEntities, centerX, centerY, radiusSquared, mask, stamp, out);
+            }
+        }
+
+        recordQuery(candidatesBefore);
+        return out;
+    }
+
+    private void collectInRadius(ArrayList<Entity> cellEntities, int centerX, int centerY, long radiusSquared,
+                                 int mask, int stamp, List<Entity> out) {
+        for (int i = 0; i < cellEntities.size(); i++) {
+            Entity other = cellEntities.get(i);
+            if (!other.markQueried(stamp)) {
+                continue;
+            }
+            candidatePairs++;
+            if (!CollisionLayer.interacts(mask, other.getCollisionLayer())) {
+                maskRejectedPairs++;
+                continue;
+            }
+            narrowPhaseTests++;
+            if (other.distanceSquaredTo(centerX, centerY) <= radiusSquared) {
+                out.add(other);
+            }
+        }
+    }
+
+    /**
+     * Find up to out.length entities on the masked layers (and of the given type, null for any)
+     * closest to a point, within the radius. Results are sorted nearest first, the count is returned.
+     * Cells are visited in rings around the point, so the search stops as soon as no unvisited
+     * ring can hold anything closer than the current k-th result.
+     */
+    public int queryNearest(int centerX, int centerY, int radius, int mask, EntityType type,
+                            Entity exclude, Entity[] out) {
+        int limit = out.length;
+        if (limit == 0) {
+            return 0;
+        }
+        if (nearestDistances.length < limit) {
+            nearestDistances = new long[limit];
+        }
+        int candidatesBefore = candidatePairs;
+        int stamp = nextQueryStamp();
+        long radiusSquared = (long) radius * radius;
+        int centerCellX = cellOf(centerX);
+        int centerCellY = cellOf(centerY);
+        int maxRing = radius / cellSize + 1;
+        int count = 0;
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int x = centerCellX - ring; x <= centerCellX + ring; x++) {
+                // interior cells were visited by the smaller rings
+                boolean edgeColumn = x == centerCellX - ring || x == centerCellX + ring;
+                int stepY = edgeColumn ? 1 : Math.max(1, ring * 2);
+                for (int y = centerCellY - ring; y <= centerCellY + ring; y += stepY) {
+                    Cell cell = getCell(x, y);
+                    if (cell == null) {
+                        continue;
+                    }
+                    count = collectNearest(cell.dynamicEntities, centerX, centerY, radiusSquared, mask, type,
+                            exclude, stamp, out, count);
+                    count = collectNearest(cell.staticEntities, centerX, centerY, radiusSquared, mask, type,
+                            exclude, stamp, out, count);
+                }
+            }
+            // anything in the next ring is at least this far from the point
+            long ringDistance = (long) ring * cellSize;
+            if (count == limit && nearestDistances[limit - 1] <= ringDistance * ringDistance) {
+                break;
+            }
+        }
+
+        recordQuery(candidatesBefore);
+        return count;
+    }
+
+    private int collectNearest(ArrayList<Entity> cellEntities, int centerX, int centerY, long radiusSquared,
+                               int mask, EntityType type, Entity exclude, int stamp, Entity[] out, int count) {
+        for (int i = 0; i < cellEntities.size(); i++) {
+            Entity other = cellEntities.get(i);
+            if (other == exclude || !other.markQueried(stamp)) {
+                continue;
+            }
+            candidatePairs++;
+            if (!CollisionLayer.interacts(mask, other.getCollisionLayer()) ||
+                    (type != null && other.getEntityType() != type)) {
+                maskRejectedPairs++;
+                continue;
+            }
+            narrowPhaseTests++;
+            long distance = other.distanceSquaredTo(centerX, centerY);
+            if (distance > radiusSquared || (count == out.length && distance >= nearestDistances[count - 1])) {
+                continue;
+            }
+            // insertion into the sorted result, dropping the farthest when full
+            int slot = count == out.length ? count - 1 : count++;
+            while (slot > 0 && nearestDistances[slot - 1] > distance) {
+                out[slot] = out[slot - 1];
+                nearestDistances[slot] = nearestDistances[slot - 1];
+                slot--;
+            }
+            out[slot] = other;
+            nearestDistances[slot] = distance;
+        }
+        return count;
+    }
+
+    /**
+     * Check whether the segment between two points is free of entities on the masked layers.
+     * The cells along the segment are walked in order and the walk stops at the first blocker.
+     * The entities at either end (e.g. the looker and its target) are ignored.
+     */
+    public boolean hasLineOfSight(int fromX, int fromY, int toX, int toY, int mask, Entity from, Entity to) {
+        int candidatesBefore = candidatePairs;
+        int stamp = nextQueryStamp();
+        int cellX = cellOf(fromX);
+        int cellY = cellOf(fromY);
+        int endCellX = cellOf(toX);
+        int endCellY = cellOf(toY);
+        double dx = toX - fromX;
+        double dy = toY - fromY;
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        // segment parameter at which the next vertical/horizontal cell border is crossed
+        double nextX = dx == 0 ? Double.POSITIVE_INFINITY
+                : ((stepX > 0 ? (cellX + 1) * (double) cellSize : cellX * (double) cellSize) - fromX) / dx;
+        double nextY = dy == 0 ? Double.POSITIVE_INFINITY
+                : ((stepY > 0 ? (cellY + 1) * (double) cellSize : cellY * (double) cellSize) - fromY) / dy;
+        double deltaX = dx == 0 ? Double.POSITIVE_INFINITY : cellSize / Math.abs(dx);
+        double deltaY = dy == 0 ? Double.POSITIVE_INFINITY : cellSize / Math.abs(dy);
+        int remaining = Math.abs(endCellX - cellX) + Math.abs(endCellY - cellY);
+        boolean clear = true;
+
+        while (true) {
+            Cell cell = getCell(cellX, cellY);
+            if (cell != null && (blocksSegment(cell.dynamicEntities, fromX, fromY, toX, toY, mask, from, to, stamp) ||
+                    blocksSegment(cell.staticEntities, fromX, fromY, toX, toY, mask, from, to, stamp))) {
+                clear = false;
+                break;
+            }
+            if (remaining-- <= 0) {
+                break;
+            }
+            if (nextX < nextY) {
+                cellX += stepX;
+                nextX += deltaX;
+            } else {
+                cellY += stepY;
+                nextY += deltaY;
+            }
+        }
+
+        lineOfSightTests++;
+        recordQuery(candidatesBefore);
+        return clear;
+    }
+
+    private boolean blocksSegment(ArrayList<Entity> cellEntities, int fromX, int fromY, int toX, int toY,
+                                  int mask, Entity from, Entity to, int stamp) {
+        for (int i = 0; i < cellEntities.size(); i++) {
+            Entity other = cellEntities.get(i);
+            if (other == from || other == to || !other.markQueried(stamp)) {
+                continue;
+            }
+            candidatePairs++;
+            if (!CollisionLayer.interacts(mask, other.getCollisionLayer())) {
+                maskRejectedPairs++;
+                continue;
+            }
+            narrowPhaseTests++;
+            if (other.intersectsSegment(fromX, fromY, toX, toY)) {
+                return true;
             }
         }
-        
-        return cells;
+        return false;
     }
-    
+
+    /**
+     * Check if entity collides with any entity on a layer in its collision mask
+     */
+    public boolean hasCollision(Entity entity) {
+        return getFirstCollision(entity) != null;
+    }
+
     /**
      * Get statistics about the spatial grid for debugging
      */
     public String getStats() {
-        int totalCells = grid.size();
-        int totalEntities = 0;
-        int maxEntitiesPerCell = 0;
-        
-        for (Set<Entity> cellEntities : grid.values()) {
-            int count = cellEntities.size();
-            totalEntities += count;
-            maxEntitiesPerCell = Math.max(maxEntitiesPerCell, count);
+        SpatialGridStats stats = getFrameStats();
+        return String.format("SpatialGrid Stats: %s, %d static entities, %d pairs, %d mask-skipped, %d rect tests, %d pixel tests, %d retunes",
+                           stats, staticEntityCount,
+                           lastCandidatePairs, lastMaskRejectedPairs, lastNarrowPhaseTests, lastPixelTests, retuneCount);
+    }
+
+    /**
+     * Occupancy and query statistics of the last completed frame, as a new copy
+     */
+    public SpatialGridStats getFrameStats() {
+        SpatialGridStats copy = new SpatialGridStats();
+        copyFrameStats(copy);
+        return copy;
+    }
+
+    /**
+     * Copy the statistics of the last completed frame into target, without allocating.
+     * Safe from any thread, e.g. the HUD on the render thread.
+     */
+    public void copyFrameStats(SpatialGridStats target) {
+        synchronized (statsLock) {
+            target.copyFrom(lastStats);
+        }
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Enable or disable automatic cell size selection
+     */
+    public void setAutoTune(boolean autoTune) {
+        this.autoTune = autoTune;
+        resetTuningWindow();
+    }
+
+    public boolean isAutoTune() {
+        return autoTune;
+    }
+
+    /**
+     * Number of times auto-tuning changed the cell size
+     */
+    public int getRetuneCount() {
+        return retuneCount;
+    }
+
+    private void resetTuningWindow() {
+        tuneFrames = 0;
+        tuneQueries = 0;
+        tuneCandidates = 0;
+        tuneInsertions = 0;
+        tuneMultiCellInsertions = 0;
+        tuneExtentSum = 0;
+    }
+
+    /**
+     * Add the finished frame to the tuning window and re-pick the cell size once the window is full
+     */
+    private void accumulateTuning() {
+        tuneFrames++;
+        tuneQueries += queries;
+        tuneCandidates += candidatePairs;
+        tuneInsertions += insertions;
+        tuneMultiCellInsertions += multiCellInsertions;
+        if (tuneFrames < TUNE_INTERVAL_FRAMES) {
+            return;
+        }
+
+        int proposed = proposeCellSize();
+        resetTuningWindow();
+
+        if (proposed == cellSize) {
+            pendingConfirmations = 0;
+            return;
+        }
+        if (proposed != pendingCellSize) {
+            pendingCellSize = proposed;
+            pendingConfirmations = 0;
         }
-        
-        double avgEntitiesPerCell = totalCells > 0 ? (double) totalEntities / totalCells : 0;
-        
-        return String.format("SpatialGrid Stats: %d cells, %d entities, %.1f avg/cell, %d max/cell", 
-                           totalCells, totalEntities, avgEntitiesPerCell, maxEntitiesPerCell);
+        pendingConfirmations++;
+        if (pendingConfirmations >= TUNE_CONFIRMATIONS) {
+            rebuild(proposed);
+            pendingConfirmations = 0;
+        }
+    }
+
+    /**
+     * Cells about twice the typical entity extent keep most entities in one cell.
+     * Crowded queries push the size down, lots of multi-cell insertions push it up.
+     */
+    private int proposeCellSize() {
+        if (tuneInsertions == 0) {
+            return cellSize;
+        }
+        int averageExtent = (int) Math.max(1, tuneExtentSum / tuneInsertions);
+        int proposed = nextPowerOfTwo(averageExtent * 2);
+
+        double candidatesPerQuery = tuneQueries > 0 ? (double) tuneCandidates / tuneQueries : 0;
+        double multiCellRatio = (double) tuneMultiCellInsertions / tuneInsertions;
+        if (candidatesPerQuery > MAX_CANDIDATES_PER_QUERY) {
+            // clustered: split dense cells, but not below the entity size
+            proposed = Math.max(nextPowerOfTwo(averageExtent), Math.min(proposed, cellSize / 2));
+        } else if (multiCellRatio > MAX_MULTI_CELL_RATIO && candidatesPerQuery < MAX_CANDIDATES_PER_QUERY / 4) {
+            // sparse but fragmented: fewer, larger cells are cheaper to walk
+            proposed = Math.max(proposed, Math.min(cellSize * 2, nextPowerOfTwo(averageExtent * 4)));
+        }
+
+        return Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, proposed));
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * Switch to a new cell size. Only the static layer needs to be re-inserted,
+     * the dynamic layer is rebuilt by the next frame anyway.
+     */
+    private void rebuild(int newCellSize) {
+        ArrayList<Entity> statics = new ArrayList<>(staticEntityCount);
+        int stamp = nextQueryStamp();
+        for (int slot = 0; slot < grid.capacity(); slot++) {
+            Cell cell = grid.cellAt(slot);
+            if (cell == null) {
+                continue;
+            }
+            for (int i = 0; i < cell.staticEntities.size(); i++) {
+                Entity entity = cell.staticEntities.get(i);
+                if (entity.markQueried(stamp)) {
+                    statics.add(entity);
+                }
+            }
+        }
+
+        grid.clear();
+        cellSize = newCellSize;
+        staticEntityCount = 0;
+        for (Entity entity : statics) {
+            addStaticEntity(entity);
+        }
+        insertions = 0;
+        multiCellInsertions = 0;
+        tuneExtentSum = 0;
+        retuneCount++;
+    }
+
+    /**
+     * Number of entities currently in the static layer
+     */
+    public int getStaticEntityCount() {
+        return staticEntityCount;
+    }
+
+    /**
+     * Candidate pairs found in shared cells during the last frame
+     */
+    public int getCandidatePairs() {
+        return lastCandidatePairs;
+    }
+
+    /**
+     * Candidate pairs dropped by the layer masks during the last frame
+     */
+    public int getMaskRejectedPairs() {
+        return lastMaskRejectedPairs;
+    }
+
+    /**
+     * Rectangle intersection tests performed during the last frame
+     */
+    public int getNarrowPhaseTests() {
+        return lastNarrowPhaseTests;
+    }
+
+    /**
+     * Pixel mask tests performed after a passing rectangle test during the last frame
+     */
+    public int getPixelTests() {
+        return lastPixelTests;
+    }
+
+    /**
+     * Line of sight tests performed during the last frame
+     */
+    public int getLineOfSightTests() {
+        return lastLineOfSightTests;
     }
 }
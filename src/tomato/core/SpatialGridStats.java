@@ -0,0 +1,136 @@
+package tomato.core;
+
+/**
+ * Spatial grid occupancy and query cost for one frame.
+ * Gathered by {@link SpatialGrid#clear()} at the end of every frame. The grid reuses its own
+ * instances, readers get a copy through {@link SpatialGrid#copyFrameStats(SpatialGridStats)}.
+ */
+public class SpatialGridStats {
+    // Histogram buckets of entities per occupied cell: 1, 2, 3-4, 5-8, 9-16, 17-32, 33-64, 65+
+    public static final int HISTOGRAM_BUCKETS = 8;
+
+    private int cellSize;
+    private int occupiedCells;
+    private int entityRefs;
+    private int maxEntitiesPerCell;
+    private final int[] cellHistogram = new int[HISTOGRAM_BUCKETS];
+    private int queries;
+    private int candidatePairs;
+    private int maxCandidatesPerQuery;
+    private int insertions;
+    private int multiCellInsertions;
+
+    /**
+     * Empty stats, to be filled by {@link SpatialGrid#copyFrameStats(SpatialGridStats)}
+     */
+    public SpatialGridStats() {
+    }
+
+    public SpatialGridStats(int cellSize, int occupiedCells, int entityRefs, int maxEntitiesPerCell,
+                            int[] cellHistogram, int queries, int candidatePairs, int maxCandidatesPerQuery,
+                            int insertions, int multiCellInsertions) {
+        set(cellSize, occupiedCells, entityRefs, maxEntitiesPerCell, cellHistogram, queries, candidatePairs,
+                maxCandidatesPerQuery, insertions, multiCellInsertions);
+    }
+
+    /**
+     * Overwrite every value, the histogram is copied
+     */
+    void set(int cellSize, int occupiedCells, int entityRefs, int maxEntitiesPerCell,
+             int[] cellHistogram, int queries, int candidatePairs, int maxCandidatesPerQuery,
+             int insertions, int multiCellInsertions) {
+        this.cellSize = cellSize;
+        this.occupiedCells = occupiedCells;
+        this.entityRefs = entityRefs;
+        this.maxEntitiesPerCell = maxEntitiesPerCell;
+        System.arraycopy(cellHistogram, 0, this.cellHistogram, 0, HISTOGRAM_BUCKETS);
+        this.queries = queries;
+        this.candidatePairs = candidatePairs;
+        this.maxCandidatesPerQuery = maxCandidatesPerQuery;
+        this.insertions = insertions;
+        this.multiCellInsertions = multiCellInsertions;
+    }
+
+    void copyFrom(SpatialGridStats other) {
+        set(other.cellSize, other.occupiedCells, other.entityRefs, other.maxEntitiesPerCell, other.cellHistogram,
+                other.queries, other.candidatePairs, other.maxCandidatesPerQuery, other.insertions,
+                other.multiCellInsertions);
+    }
+
+    /**
+     * Histogram bucket for a cell holding the given number of entities
+     */
+    public static int histogramBucket(int entitiesInCell) {
+        return Math.min(HISTOGRAM_BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(entitiesInCell - 1));
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getOccupiedCells() {
+        return occupiedCells;
+    }
+
+    public int getEntityRefs() {
+        return entityRefs;
+    }
+
+    public int getMaxEntitiesPerCell() {
+        return maxEntitiesPerCell;
+    }
+
+    public double getAverageEntitiesPerCell() {
+        return occupiedCells > 0 ? (double) entityRefs / occupiedCells : 0;
+    }
+
+    /**
+     * Number of occupied cells per bucket, see {@link #histogramBucket(int)}
+     */
+    public int[] getCellHistogram() {
+        return cellHistogram.clone();
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public int getCandidatePairs() {
+        return candidatePairs;
+    }
+
+    public double getCandidatesPerQuery() {
+        return queries > 0 ? (double) candidatePairs / queries : 0;
+    }
+
+    public int getMaxCandidatesPerQuery() {
+        return maxCandidatesPerQuery;
+    }
+
+    public int getInsertions() {
+        return insertions;
+    }
+
+    public int getMultiCellInsertions() {
+        return multiCellInsertions;
+    }
+
+    /**
+     * Share of insertions that spanned more than one cell
+     */
+    public double getMultiCellRatio() {
+        return insertions > 0 ? (double) multiCellInsertions / insertions : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder histogram = new StringBuilder();
+        for (int i = 0; i < cellHistogram.length; i++) {
+            if (i > 0) histogram.append('/');
+            histogram.append(cellHistogram[i]);
+        }
+        return String.format("cell %dpx, %d cells, %.1f avg/cell, %d max/cell, hist %s, %.1f cand/query (max %d), %.0f%% multi-cell",
+                cellSize, occupiedCells, getAverageEntitiesPerCell(), maxEntitiesPerCell, histogram,
+                getCandidatesPerQuery(), maxCandidatesPerQuery, getMultiCellRatio() * 100);
+    }
+}
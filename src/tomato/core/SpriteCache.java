@@ -11,6 +11,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class SpriteCache {
     private static final ConcurrentHashMap<EntityType, BufferedImage[]> cache = new ConcurrentHashMap<>();
     private static final ConcurrentHashMap<EntityType, Rectangle[]> hitboxCache = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<EntityType, CollisionMask[]> maskCache = new ConcurrentHashMap<>();
 
     public static BufferedImage queryCache(EntityType entityType, Direction direction)
     {
@@ -41,8 +42,9 @@ public class SpriteCache {
             rotations[2] = rotateImage(base, Mathf.toRadians(180));
             rotations[3] = rotateImage(base, Mathf.toRadians(270));
             
-            // Pre-calculate hitboxes for all rotations
+            // Pre-calculate hitboxes and pixel masks for all rotations
             preCalculateHitboxes(key, rotations);
+            preCalculateMasks(key, rotations);
             
             return rotations;
         });
@@ -61,6 +63,29 @@ public class SpriteCache {
         }
     }
 
+    public static CollisionMask queryMaskCache(EntityType entityType, Direction direction) {
+        CollisionMask[] masks = maskCache.get(entityType);
+        if (masks == null) return null;
+
+        switch (direction) {
+            case SOUTH: return masks[0];
+            case WEST: return masks[1];
+            case NORTH: return masks[2];
+            case EAST: return masks[3];
+            default: return null;
+        }
+    }
+
+    private static void preCalculateMasks(EntityType entityType, BufferedImage[] sprites) {
+        CollisionMask[] masks = new CollisionMask[4];
+
+        for (int i = 0; i < sprites.length; i++) {
+            masks[i] = sprites[i] != null ? new CollisionMask(sprites[i]) : null;
+        }
+
+        maskCache.put(entityType, masks);
+    }
+
     private static void preCalculateHitboxes(EntityType entityType, BufferedImage[] sprites) {
         Rectangle[] hitboxes = new Rectangle[4];
         
@@ -133,7 +158,7 @@ public class SpriteCache {
         int height = image.getHeight();
 
         // Create a new image with the same dimensions
-        BufferedImage rotated = new BufferedImage(width, height, image.getType());
+        BufferedImage rotated = ImageFactory.createTranslucent(width, height);
         Graphics2D g2d = rotated.createGraphics();
 
         // Set rendering hints for better quality
@@ -0,0 +1,227 @@
+package tomato.core;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+
+/**
+ * View-sized copy of the terrain under the camera, so the ground costs one surface per frame
+ * instead of up to nine chunk images.
+ * The surface is a toroidal scroll buffer in world pixels: world pixel (x, y) is always stored at
+ * (x mod width, y mod height). When the camera leaves the area the surface holds, the area is
+ * re-centered and only the newly exposed strips are drawn from the chunk images, nothing is
+ * copied. The whole surface is only redrawn when the view changes size (zoom), the camera jumps
+ * further than the surface reaches, or a chunk inside it is baked.
+ *
+ * Presenting a wrapped area takes up to four sub-image blits of the same surface.
+ * Only used on the render thread: the EDT in Swing present mode, the game loop thread in active mode.
+ */
+public class TerrainCache {
+    // Extra terrain kept around the view, the camera can move this far before a strip is drawn
+    private static final int PADDING = 64;
+    // The camera view is rounded to whole pixels, a sub-pixel position can show one more
+    private static final int VIEW_SLACK = 2;
+
+    private BufferedImage surface;
+    private int width = 0, height = 0;
+    // World position of the top-left corner of the area the surface holds
+    private int originX, originY;
+    private boolean valid = false;
+
+    private Map<Point, World.Chunk> chunks;
+    private int chunkSize;
+
+    private int lastBlits = 0;
+    private long lastRedrawnPixels = 0;
+    private long redrawnPixels = 0;
+    private int fullRedraws = 0;
+
+    /**
+     * Bring the surface up to date for the view and draw it, in world coordinates
+     *
+     * @param chunks    Loaded chunks by chunk coordinate
+     * @param chunkSize Size of a chunk in pixels
+     */
+    public void render(Graphics2D g, Rectangle view, Map<Point, World.Chunk> chunks, int chunkSize) {
+        this.chunks = chunks;
+        this.chunkSize = chunkSize;
+        int targetX = view.x - VIEW_SLACK;
+        int targetY = view.y - VIEW_SLACK;
+        int targetWidth = view.width + VIEW_SLACK * 2;
+        int targetHeight = view.height + VIEW_SLACK * 2;
+
+        int neededWidth = targetWidth + PADDING * 2;
+        int neededHeight = targetHeight + PADDING * 2;
+        if (surface == null || neededWidth != width || neededHeight != height) {
+            surface = ImageFactory.createOpaque(neededWidth, neededHeight);
+            width = neededWidth;
+            height = neededHeight;
+            valid = false;
+        }
+
+        if (!valid) {
+            originX = targetX - PADDING;
+            originY = targetY - PADDING;
+            redraw(originX, originY, width, height);
+            fullRedraws++;
+            valid = true;
+        } else {
+            scrollTo(targetX, targetY, targetWidth, targetHeight);
+        }
+
+        lastBlits = present(g, targetX, targetY, targetWidth, targetHeight);
+        lastRedrawnPixels = redrawnPixels;
+        redrawnPixels = 0;
+    }
+
+    /**
+     * Re-center the held area on the axes the target left and draw the strips that became exposed
+     */
+    private void scrollTo(int targetX, int targetY, int targetWidth, int targetHeight) {
+        boolean insideX = targetX >= originX && targetX + targetWidth <= originX + width;
+        boolean insideY = targetY >= originY && targetY + targetHeight <= originY + height;
+        if (insideX && insideY) {
+            return;
+        }
+        int newOriginX = insideX ? originX : targetX - PADDING;
+        int newOriginY = insideY ? originY : targetY - PADDING;
+        int shiftX = newOriginX - originX;
+        int shiftY = newOriginY - originY;
+        originX = newOriginX;
+        originY = newOriginY;
+
+        if (Math.abs(shiftX) >= width || Math.abs(shiftY) >= height) {
+            redraw(originX, originY, width, height);
+            fullRedraws++;
+            return;
+        }
+        // Columns that came into the area, over its full height
+        if (shiftX > 0) {
+            redraw(originX + width - shiftX, originY, shiftX, height);
+        } else if (shiftX < 0) {
+            redraw(originX, originY, -shiftX, height);
+        }
+        // Rows that came into the area, minus the columns already drawn above
+        int rowsX = shiftX > 0 ? originX : originX - shiftX;
+        int rowsWidth = width - Math.abs(shiftX);
+        if (shiftY > 0) {
+            redraw(rowsX, originY + height - shiftY, rowsWidth, shiftY);
+        } else if (shiftY < 0) {
+            redraw(rowsX, originY, rowsWidth, -shiftY);
+        }
+    }
+
+    /**
+     * Redraw the part of a world area that the surface currently holds, e.g. a freshly baked chunk
+     */
+    public void invalidate(Rectangle area) {
+        if (!valid) {
+            return;
+        }
+        int minX = Math.max(area.x, originX);
+        int minY = Math.max(area.y, originY);
+        int maxX = Math.min(area.x + area.width, originX + width);
+        int maxY = Math.min(area.y + area.height, originY + height);
+        if (minX < maxX && minY < maxY) {
+            redraw(minX, minY, maxX - minX, maxY - minY);
+        }
+    }
+
+    /**
+     * Draw the terrain of a world area into the surface, splitting it where it wraps around
+     */
+    private void redraw(int areaX, int areaY, int areaWidth, int areaHeight) {
+        Graphics2D g = surface.createGraphics();
+        try {
+            int surfaceX = Math.floorMod(areaX, width);
+            int surfaceY = Math.floorMod(areaY, height);
+            int firstWidth = Math.min(areaWidth, width - surfaceX);
+            int firstHeight = Math.min(areaHeight, height - surfaceY);
+            drawPiece(g, areaX, areaY, firstWidth, firstHeight, surfaceX, surfaceY);
+            if (firstWidth < areaWidth) {
+                drawPiece(g, areaX + firstWidth, areaY, areaWidth - firstWidth, firstHeight, 0, surfaceY);
+            }
+            if (firstHeight < areaHeight) {
+                drawPiece(g, areaX, areaY + firstHeight, firstWidth, areaHeight - firstHeight, surfaceX, 0);
+                if (firstWidth < areaWidth) {
+                    drawPiece(g, areaX + firstWidth, areaY + firstHeight,
+                            areaWidth - firstWidth, areaHeight - firstHeight, 0, 0);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        redrawnPixels += (long) areaWidth * areaHeight;
+    }
+
+    private void drawPiece(Graphics2D g, int worldX, int worldY, int pieceWidth, int pieceHeight,
+                           int surfaceX, int surfaceY) {
+        g.setClip(surfaceX, surfaceY, pieceWidth, pieceHeight);
+        // Unloaded chunks stay black, like the background behind them
+        g.setColor(Color.BLACK);
+        g.fillRect(surfaceX, surfaceY, pieceWidth, pieceHeight);
+
+        int offsetX = surfaceX - worldX;
+        int offsetY = surfaceY - worldY;
+        int minChunkX = Math.floorDiv(worldX, chunkSize);
+        int minChunkY = Math.floorDiv(worldY, chunkSize);
+        int maxChunkX = Math.floorDiv(worldX + pieceWidth - 1, chunkSize);
+        int maxChunkY = Math.floorDiv(worldY + pieceHeight - 1, chunkSize);
+        for (int cx = minChunkX; cx <= maxChunkX; cx++) {
+            for (int cy = minChunkY; cy <= maxChunkY; cy++) {
+                World.Chunk chunk = chunks.get(new Point(cx, cy));
+                if (chunk != null) {
+                    g.drawImage(chunk.image, chunk.worldX + offsetX, chunk.worldY + offsetY, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw a world area from the surface, one blit per piece where it wraps
+     *
+     * @return The number of blits
+     */
+    private int present(Graphics2D g, int areaX, int areaY, int areaWidth, int areaHeight) {
+        int surfaceX = Math.floorMod(areaX, width);
+        int surfaceY = Math.floorMod(areaY, height);
+        int firstWidth = Math.min(areaWidth, width - surfaceX);
+        int firstHeight = Math.min(areaHeight, height - surfaceY);
+        int blits = blit(g, areaX, areaY, firstWidth, firstHeight, surfaceX, surfaceY);
+        if (firstWidth < areaWidth) {
+            blits += blit(g, areaX + firstWidth, areaY, areaWidth - firstWidth, firstHeight, 0, surfaceY);
+        }
+        if (firstHeight < areaHeight) {
+            blits += blit(g, areaX, areaY + firstHeight, firstWidth, areaHeight - firstHeight, surfaceX, 0);
+            if (firstWidth < areaWidth) {
+                blits += blit(g, areaX + firstWidth, areaY + firstHeight,
+                        areaWidth - firstWidth, areaHeight - firstHeight, 0, 0);
+            }
+        }
+        return blits;
+    }
+
+    private int blit(Graphics2D g, int worldX, int worldY, int pieceWidth, int pieceHeight, int surfaceX, int surfaceY) {
+        g.drawImage(surface, worldX, worldY, worldX + pieceWidth, worldY + pieceHeight,
+                surfaceX, surfaceY, surfaceX + pieceWidth, surfaceY + pieceHeight, null);
+        return 1;
+    }
+
+    /**
+     * Blits of the surface during the last frame
+     */
+    public int getBlits() {
+        return lastBlits;
+    }
+
+    /**
+     * Terrain pixels drawn into the surface during the last frame
+     */
+    public long getRedrawnPixels() {
+        return lastRedrawnPixels;
+    }
+
+    public int getFullRedraws() {
+        return fullRedraws;
+    }
+}
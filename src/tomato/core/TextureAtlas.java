@@ -78,7 +78,7 @@ public class TextureAtlas {
         if (placeholderImage != null) {
             return placeholderImage;
         }
-        BufferedImage placeholder = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage placeholder = ImageFactory.createTranslucent(tileWidth, tileHeight);
         // Fill with a noticeable color or pattern
         // For example, a magenta and black checkered pattern
         for (int y = 0; y < tileHeight; y++) {
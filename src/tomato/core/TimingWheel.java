@@ -0,0 +1,253 @@
+package tomato.core;
+
+/**
+ * Engine-wide timers keyed on simulation ticks.
+ * Systems schedule a callback some time ahead instead of counting a timer down every frame.
+ * A tick only visits the timers that expire on it, so the cost per tick follows the number of
+ * expiring timers, not the number of live ones.
+ *
+ * The wheel is hierarchical: the first level has a slot per tick for the next 256 ticks, each
+ * higher level has 64 slots that each cover a whole turn of the level below. When a lower level
+ * wraps around, the next slot of the level above is cascaded down into it. Timers are kept in
+ * intrusive linked lists, so scheduling and cancelling are constant time and allocate nothing.
+ *
+ * Ticks are a fixed 1/60 s of simulation time (time scale included), the wheel catches up on as
+ * many ticks as the frame time covers. It is only used from the update thread.
+ */
+public class TimingWheel {
+    public static final float TICK_MS = 1000f / 60f;
+
+    private static final int ROOT_BITS = 8;
+    private static final int LEVEL_BITS = 6;
+    private static final int ROOT_SIZE = 1 << ROOT_BITS;
+    private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+    private static final int UPPER_LEVELS = 3;
+    // Timers further ahead than the wheel spans (about 13 days) fire at its far end
+    private static final long MAX_DELAY_TICKS = (1L << (ROOT_BITS + LEVEL_BITS * UPPER_LEVELS)) - 1;
+
+    /**
+     * A schedulable callback. Owners keep and re-arm the same timer instead of allocating new ones.
+     */
+    public static final class Timer {
+        private final Runnable action;
+        private Timer prev, next;
+        private long deadline;
+
+        public Timer(Runnable action) {
+            this.action = action;
+        }
+
+        public boolean isScheduled() {
+            return next != null;
+        }
+
+        /**
+         * Tick the timer fires on, only meaningful while it is scheduled
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+
+    // Slot lists are circular with a sentinel head
+    private final Timer[] root = createSlots(ROOT_SIZE);
+    private final Timer[][] levels = new Timer[UPPER_LEVELS][];
+    private final Timer expiring = new Timer(null);
+
+    private long tick = 0;
+    private double timeMs = 0;
+    private double pendingMs = 0;
+    private int scheduled = 0;
+
+    private int fired = 0;
+    private int cascaded = 0;
+    private volatile int lastFired = 0;
+    private volatile int lastCascaded = 0;
+
+    public TimingWheel() {
+        for (int i = 0; i < UPPER_LEVELS; i++) {
+            levels[i] = createSlots(LEVEL_SIZE);
+        }
+        expiring.prev = expiring;
+        expiring.next = expiring;
+    }
+
+    private static Timer[] createSlots(int count) {
+        Timer[] slots = new Timer[count];
+        for (int i = 0; i < count; i++) {
+            Timer head = new Timer(null);
+            head.prev = head;
+            head.next = head;
+            slots[i] = head;
+        }
+        return slots;
+    }
+
+    /**
+     * Number of ticks that cover the given time, at least one
+     */
+    public static long ticksFor(float delayMs) {
+        return Math.max(1, (long) Math.ceil(delayMs / TICK_MS));
+    }
+
+    /**
+     * Schedule a new one-shot callback
+     *
+     * @return The timer, to cancel it
+     */
+    public Timer schedule(Runnable action, float delayMs) {
+        Timer timer = new Timer(action);
+        schedule(timer, delayMs);
+        return timer;
+    }
+
+    /**
+     * Arm the timer to fire after the given simulation time, a scheduled timer is moved
+     */
+    public void schedule(Timer timer, float delayMs) {
+        scheduleTicks(timer, ticksFor(delayMs));
+    }
+
+    /**
+     * Arm the timer to fire after the given number of ticks, a scheduled timer is moved
+     */
+    public void scheduleTicks(Timer timer, long delayTicks) {
+        cancel(timer);
+        timer.deadline = tick + Math.min(Math.max(1, delayTicks), MAX_DELAY_TICKS);
+        insert(timer);
+        scheduled++;
+    }
+
+    public void cancel(Timer timer) {
+        if (!timer.isScheduled()) {
+            return;
+        }
+        unlink(timer);
+        scheduled--;
+    }
+
+    private void insert(Timer timer) {
+        long deadline = timer.deadline;
+        long delay = deadline - tick;
+        Timer head;
+        if (delay < ROOT_SIZE) {
+            head = root[(int) (deadline & (ROOT_SIZE - 1))];
+        } else {
+            int level = 0;
+            int shift = ROOT_BITS + LEVEL_BITS;
+            while (level < UPPER_LEVELS - 1 && delay >= 1L << shift) {
+                level++;
+                shift += LEVEL_BITS;
+            }
+            int slot = (int) ((deadline >>> (shift - LEVEL_BITS)) & (LEVEL_SIZE - 1));
+            head = levels[level][slot];
+        }
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+    }
+
+    private static void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    /**
+     * Advance simulation time and fire every timer that comes due
+     */
+    public void advance(float elapsedMs) {
+        fired = 0;
+        cascaded = 0;
+
+        pendingMs += elapsedMs;
+        while (pendingMs >= TICK_MS) {
+            pendingMs -= TICK_MS;
+            timeMs += TICK_MS;
+            step();
+        }
+
+        // publish once the advance is complete, readers never see a partial count
+        lastFired = fired;
+        lastCascaded = cascaded;
+    }
+
+    private void step() {
+        tick++;
+        // Each level wraps when all the bits below it are zero, bring its next slot down
+        if ((tick & (ROOT_SIZE - 1)) == 0) {
+            int shift = ROOT_BITS;
+            for (int level = 0; level < UPPER_LEVELS; level++) {
+                int slot = (int) ((tick >>> shift) & (LEVEL_SIZE - 1));
+                cascade(levels[level][slot]);
+                if (slot != 0) {
+                    break;
+                }
+                shift += LEVEL_BITS;
+            }
+        }
+
+        // Detach the due list first, callbacks may schedule new timers, even on this slot
+        Timer head = root[(int) (tick & (ROOT_SIZE - 1))];
+        if (head.next == head) {
+            return;
+        }
+        expiring.next = head.next;
+        expiring.prev = head.prev;
+        expiring.next.prev = expiring;
+        expiring.prev.next = expiring;
+        head.next = head;
+        head.prev = head;
+
+        while (expiring.next != expiring) {
+            Timer timer = expiring.next;
+            unlink(timer);
+            scheduled--;
+            fired++;
+            timer.action.run();
+        }
+    }
+
+    private void cascade(Timer head) {
+        while (head.next != head) {
+            Timer timer = head.next;
+            unlink(timer);
+            insert(timer);
+            cascaded++;
+        }
+    }
+
+    /**
+     * Ticks since the wheel was created
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Simulation time since the wheel was created, in milliseconds, advanced in whole ticks
+     */
+    public double getTimeMs() {
+        return timeMs;
+    }
+
+    public int getScheduledCount() {
+        return scheduled;
+    }
+
+    /**
+     * Timers that fired during the last advance
+     */
+    public int getFiredCount() {
+        return lastFired;
+    }
+
+    /**
+     * Timers moved down a level during the last advance
+     */
+    public int getCascadedCount() {
+        return lastCascaded;
+    }
+}
@@ -17,7 +17,8 @@ public class Utils {
 
             // Decode the image
             BufferedImage image = new QOIDecoder(toByteArray(resourceStream)).getImage();
-            return image;
+            // the decoder wrote through the raster, a copy can stay accelerated
+            return ImageFactory.toCompatible(image);
         } catch (Exception e) {
             return null;
         }
@@ -0,0 +1,111 @@
+package tomato.core;
+
+import tomato.entity.CollisionLayer;
+import tomato.entity.Entity;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Picks the entities to draw from the spatial grid instead of drawing everything in the loaded chunks.
+ * At the end of each update the grid is queried for the view of every viewport plus a margin (the
+ * grid only lives on the update thread) and the result is published for the display lists. Each
+ * view's list then drops whatever is outside that exact view.
+ */
+public class ViewCuller {
+    // Covers sprites reaching past their hitbox and camera movement between update and render
+    public static final int DEFAULT_MARGIN = 64;
+
+    private int margin = DEFAULT_MARGIN;
+
+    private final ArrayList<Entity> found = new ArrayList<>();
+    // Entities already found for an earlier view, when views overlap
+    private final Set<Entity> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    private volatile Entity[] published = new Entity[0];
+    // Entities in the loaded chunks when the list was published
+    private volatile int loadedCount = 0;
+
+    // Counters of the last recorded frame, over all views
+    private int submitted = 0;
+    private int culled = 0;
+
+    /**
+     * Query the grid for the views and publish the result, called on the update thread
+     *
+     * @param loadedCount Entities in the loaded chunks, the ones that would be drawn without culling
+     */
+    public void collect(SpatialGrid grid, Rectangle[] views, int loadedCount) {
+        found.clear();
+        for (Rectangle view : views) {
+            int start = found.size();
+            grid.queryRectangle(view.x - margin, view.y - margin,
+                    view.x + view.width + margin, view.y + view.height + margin,
+                    CollisionLayer.ALL, null, found);
+            if (views.length > 1) {
+                // keep each entity once, the first view that found it
+                int kept = start;
+                for (int i = start; i < found.size(); i++) {
+                    Entity entity = found.get(i);
+                    if (seen.add(entity)) {
+                        found.set(kept++, entity);
+                    }
+                }
+                found.subList(kept, found.size()).clear();
+            }
+        }
+        seen.clear();
+
+        Entity[] visible = found.toArray(new Entity[0]);
+        found.clear();
+
+        this.loadedCount = loadedCount;
+        published = visible;
+        submitted = 0;
+        culled = loadedCount;
+    }
+
+    /**
+     * Queue the published entities that overlap one of the views, called on the update thread
+     */
+    public void submit(RenderQueue queue, Rectangle view) {
+        Entity[] visible = published;
+        int drawn = 0;
+        for (Entity entity : visible) {
+            if (!entity.isMarkedForRemoval() && entity.overlaps(view)) {
+                entity.submit(queue);
+                drawn++;
+            }
+        }
+        submitted += drawn;
+        culled = Math.max(0, loadedCount - submitted);
+    }
+
+    /**
+     * How far outside the view entities are still collected, set on the update thread.
+     * A smaller margin publishes fewer entities, but big sprites and a fast camera can pop in at the edge.
+     */
+    public void setMargin(int margin) {
+        this.margin = Math.max(0, margin);
+    }
+
+    public int getMargin() {
+        return margin;
+    }
+
+    /**
+     * Entities drawn during the last frame, once per view that shows them
+     */
+    public int getSubmittedCount() {
+        return submitted;
+    }
+
+    /**
+     * Entities in the loaded chunks that were not drawn during the last frame
+     */
+    public int getCulledCount() {
+        return culled;
+    }
+}
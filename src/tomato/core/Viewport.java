@@ -0,0 +1,77 @@
+package tomato.core;
+
+import tomato.entity.Entity;
+
+import java.awt.*;
+
+/**
+ * A part of the screen showing the world through its own camera.
+ * The area is in the game's logical 640x360 coordinates. A viewport either has its camera moved
+ * by someone else (the player tank moves the main camera) or follows an entity on its own. The
+ * followed entity is held by its handle, so a destroyed one is not kept reachable.
+ */
+public class Viewport {
+    private final Camera camera;
+    private final Rectangle area;
+    // Handle of the entity the camera eases toward every update, NONE if the camera is moved elsewhere
+    private volatile long targetHandle = EntityHandles.NONE;
+    private volatile long lastRenderNanos = 0;
+
+    public Viewport(Camera camera, Rectangle area) {
+        this.camera = camera;
+        this.area = new Rectangle(area);
+    }
+
+    /**
+     * Point the camera at the followed entity and ease it toward it, called on the update thread
+     */
+    public void update() {
+        if (targetHandle != EntityHandles.NONE) {
+            Entity followed = World.WORLD.getEntityHandles().resolve(targetHandle);
+            if (followed != null && !followed.isMarkedForRemoval()) {
+                camera.setTarget((float) followed.getX(), (float) followed.getY());
+            }
+        }
+        camera.update();
+    }
+
+    /**
+     * Part of the world the viewport shows
+     */
+    public Rectangle getViewBounds() {
+        return camera.getViewBounds(area.width, area.height);
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+
+    public Rectangle getArea() {
+        return new Rectangle(area);
+    }
+
+    /**
+     * Follow the entity, or stop following with null
+     */
+    public void setTarget(Entity target) {
+        targetHandle = target != null ? target.getHandle() : EntityHandles.NONE;
+    }
+
+    /**
+     * Handle of the followed entity, NONE if there is none
+     */
+    public long getTargetHandle() {
+        return targetHandle;
+    }
+
+    void setRenderNanos(long nanos) {
+        lastRenderNanos = nanos;
+    }
+
+    /**
+     * Time spent drawing the world into this viewport during the last frame, in milliseconds
+     */
+    public double getRenderMillis() {
+        return lastRenderNanos / 1_000_000.0;
+    }
+}
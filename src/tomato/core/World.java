@@ -1,24 +1,60 @@
 package tomato.core;
 
+import tomato.Game;
 import tomato.entity.EnemyTank;
 import tomato.entity.Entity;
 import tomato.entity.LandmineEntity;
 import tomato.entity.PlayerTank;
+import tomato.vfx.Lighting;
 import tomato.vfx.VFXManager;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
 
 public class World {
-
+    private static final Logger logger = Logger.getLogger(World.class.getName());
+    // Frames drawn by each backend when comparing them
+    private static final int COMPARISON_FRAMES = 30;
+    // Largest channel difference between the backends still counted as the same pixel
+    private static final int COMPARISON_TOLERANCE = 8;
+    private static final DisplayList EMPTY_DISPLAY_LIST = new DisplayList();
+
+    // moving entities, updated every frame
     private final CopyOnWriteArrayList<Entity> worldEntities = new CopyOnWriteArrayList<>();
+    // entities that never move, asleep in the static grid layer until a mover overlaps them
+    private final Set<Entity> staticEntities = ConcurrentHashMap.newKeySet();
+    // spawns can come from the EDT (debug keys), they get their handle and join the world on the
+    // update thread, the only thread that writes the handle table
+    private final ConcurrentLinkedQueue<Entity> pendingSpawns = new ConcurrentLinkedQueue<>();
+    // static entities of unloaded chunks, out of the grid until their chunk loads again (update thread only)
+    private final Map<Point, ArrayList<Entity>> unloadedStatics = new HashMap<>();
+    private volatile int unloadedStaticCount = 0;
+    // bumped when chunks load or unload, the update thread then moves statics in or out of the grid
+    private volatile int chunkSetVersion = 0;
+    private int staticResidencyVersion = -1;
+    private final ArrayList<Entity> sleepersToWake = new ArrayList<>();
     private final SpatialGrid spatialGrid;
 
     public CopyOnWriteArrayList<Entity> getWorldEntities() {
         return worldEntities;
     }
+
+    /**
+     * Static entities of the loaded chunks, the ones of unloaded chunks are set aside until they load
+     */
+    public Set<Entity> getStaticEntities() {
+        return staticEntities;
+    }
+
+    public int getEntityCount() {
+        return worldEntities.size() + staticEntities.size() + unloadedStaticCount;
+    }
     
     public SpatialGrid getSpatialGrid() {
         return spatialGrid;
@@ -33,18 +69,60 @@ public class World {
 
     // how far in chunks to load around the player
     private final int renderDistance = 1;
+    // chunks of that square further than this from the camera view are not kept loaded, a whole
+    // chunk keeps the full square. Loaded chunks are also the ones simulated, so this is not a
+    // render quality knob: less would stop the entities in the dropped chunks.
+    private final int residentMargin;
+    // how far the player is sensed as a target on the influence map
+    private static final int PLAYER_INFLUENCE_RADIUS = 256;
 
     public static World WORLD;
     
     private final VFXManager vfxManager;
+    private final DetonationQueue detonationQueue;
+    private final BulletManager bulletManager;
+    private final AIScheduler aiScheduler = new AIScheduler();
+    private final FlowField flowField = new FlowField();
+    private final InfluenceMap influenceMap = new InfluenceMap();
+    private final EntityHandles entityHandles = new EntityHandles();
+    private final TimingWheel timingWheel = new TimingWheel();
+    private final ViewCuller viewCuller = new ViewCuller();
+    // only used on the update thread, sorts the draws into the display list being recorded
+    private final RenderQueue renderQueue = new RenderQueue();
+    // one list per viewport, the update thread records one set while the render thread replays
+    // the other, they are swapped under the lock when a recording is finished
+    private final Object displayListLock = new Object();
+    private DisplayList[] recordingLists = {new DisplayList()};
+    private volatile DisplayList[] publishedLists = {new DisplayList()};
+    private volatile long lastRecordNanos = 0;
+    // summed over the views of the last recording
+    private volatile int lastDrawCalls = 0;
+    private volatile int lastSortPasses = 0;
+    private volatile double lastSortMillis = 0;
+    // one per viewport, only used on the render thread (the EDT in Swing present mode, the loop
+    // thread in active mode), the first viewCount of them belong to the current views
+    private TerrainCache[] terrainCaches = {new TerrainCache()};
+    private long[] replayNanos = {0};
+    private int viewCount = 1;
+    private final QualityController qualityController;
+    // only used on the render thread, like the terrain caches
+    private final SoftwareRasterizer softwareRasterizer = new SoftwareRasterizer();
+    private volatile boolean softwareRendering = false;
+    private volatile boolean comparisonRequested = false;
+    private volatile int comparisonPixelsBeyondTolerance = 0;
 
     public static void createWorld(WorldType type)
     {
-        WORLD = new World(128, 4, 12345L, type);
-        PLAYER_ENTITY = new PlayerTank();
+        World world = new World(128, 4, 12345L, type);
+        // the player has a handle from the start, before anything can look it up
+        Entity player = new PlayerTank();
+        world.entityHandles.register(player);
+        PLAYER_ENTITY = player;
+        WORLD = world;
     }
 
-    public static Entity PLAYER_ENTITY = new PlayerTank();
+    // null until the first world is created
+    public static Entity PLAYER_ENTITY;
 
     private WorldType worldType;
     private Random random;
@@ -55,11 +133,17 @@ public class World {
         this.cellSize = cellSize;
 //        this.seed = seed;
         this.random = new Random(seed);
+        this.residentMargin = getChunkSizePx();
         this.noise = new OpenSimplexNoise(random);
-        this.vfxManager = new VFXManager();
+        this.vfxManager = new VFXManager(timingWheel);
         this.vfxManager.getLighting().setDaylight((float) Math.random());
-        // Initialize spatial grid with cell size of 64 pixels for efficient collision detection
+        // Initialize spatial grid with cell size of 64 pixels for efficient collision detection,
+        // it re-picks the size from occupancy statistics as the entity mix changes
         this.spatialGrid = new SpatialGrid(64);
+        this.spatialGrid.setAutoTune(true);
+        this.detonationQueue = new DetonationQueue(spatialGrid, vfxManager, influenceMap);
+        this.bulletManager = new BulletManager(spatialGrid, vfxManager, detonationQueue, influenceMap);
+        this.qualityController = new QualityController(vfxManager, viewCuller);
     }
 
     public Chunk getChunkAtWorld(double worldX, double worldY) {
@@ -70,78 +154,555 @@ public class World {
     }
 
     public void update() {
-        // Clear and rebuild spatial grid for this frame
+        // Clear and rebuild the dynamic layer of the spatial grid for this frame,
+        // static entities stay in their own layer
         spatialGrid.clear();
+
+        Entity spawned;
+        while ((spawned = pendingSpawns.poll()) != null) {
+            if (spawned.isMarkedForRemoval()) {
+                continue;
+            }
+            entityHandles.register(spawned);
+            if (spawned.isStatic()) {
+                addStatic(spawned);
+            } else {
+                worldEntities.add(spawned);
+            }
+        }
+        updateStaticResidency();
         
         // Add player to spatial grid
+        int loadedCount = spatialGrid.getStaticEntityCount();
         if (PLAYER_ENTITY != null && isEntityInLoadedChunk(PLAYER_ENTITY)) {
             spatialGrid.addEntity(PLAYER_ENTITY);
+            loadedCount++;
         }
         
         // Add all loaded entities to spatial grid
         for (Entity entity : worldEntities) {
             if (isEntityInLoadedChunk(entity)) {
                 spatialGrid.addEntity(entity);
+                loadedCount++;
             }
         }
         
+        // Refresh the shared path toward the player and the influence map over the loaded area
+        int chunkSizePx = getChunkSizePx();
+        int playerChunkX = (int) Math.floor(PLAYER_ENTITY.getX() / (double) chunkSizePx);
+        int playerChunkY = (int) Math.floor(PLAYER_ENTITY.getY() / (double) chunkSizePx);
+        int areaMinX = (playerChunkX - renderDistance) * chunkSizePx;
+        int areaMinY = (playerChunkY - renderDistance) * chunkSizePx;
+        int areaSize = (renderDistance * 2 + 1) * chunkSizePx;
+        flowField.update(PLAYER_ENTITY, areaMinX, areaMinY, areaSize, staticEntities);
+        influenceMap.update(Game.GAME_LOOP.getDeltaTimeMillis(), areaMinX, areaMinY, areaSize);
+
+        // Fire the timers that came due, AI wake-ups and effect lifetimes
+        timingWheel.advance(Game.GAME_LOOP.getDeltaTimeMillis());
+
         // Update player
         PLAYER_ENTITY.update();
+        influenceMap.stampPoint(InfluenceMap.TARGET, PLAYER_ENTITY.getCenterX(), PLAYER_ENTITY.getCenterY(),
+                PLAYER_INFLUENCE_RADIUS, 1f);
+        wakeOverlappedSleepers(PLAYER_ENTITY);
+        aiScheduler.beginFrame(getCullingViews());
 
-        // only update entities in loaded chunks
+        // only update entities in loaded chunks, enemy AI at the rate of its distance tier
         for (Entity entity : worldEntities) {
             if (isEntityInLoadedChunk(entity)) {
-                entity.update();
+                boolean updated;
+                if (entity instanceof EnemyTank) {
+                    updated = aiScheduler.update((EnemyTank) entity);
+                } else {
+                    entity.update();
+                    updated = true;
+                }
+                if (updated) {
+                    wakeOverlappedSleepers(entity);
+                }
             }
 
             if (entity.isMarkedForRemoval()) {
                 worldEntities.remove(entity);
+                entityHandles.release(entity);
             }
         }
+
+        // Move all bullets and hit whatever they reached
+        bulletManager.update(Game.GAME_LOOP.getDeltaTime(), areaMinX, areaMinY, areaSize);
+
+        // Resolve blasts triggered this tick as a wavefront
+        detonationQueue.process();
+        influenceMap.publishOverlay();
         
         // Update VFX system
         vfxManager.update();
+
+        // Pick what the renderer draws while the grid is still ours, and record it
+        Rectangle[] cullingViews = getCullingViews();
+        viewCuller.collect(spatialGrid, cullingViews, loadedCount);
+        recordDraws(cullingViews);
+
+        // Trade detail for frame time if the last second ran over budget
+        qualityController.update();
     }
 
-    public void render(Graphics2D g, Rectangle cameraView) {
-        // figure out which chunk the player is standing in
-        int playerChunkX = (int) Math.floor(PLAYER_ENTITY.getX() / (double) getChunkSizePx());
-        int playerChunkY = (int) Math.floor(PLAYER_ENTITY.getY() / (double) getChunkSizePx());
+    /**
+     * The views of the renderer's viewports, or a screen centered on the player before the renderer exists
+     */
+    private Rectangle[] getCullingViews() {
+        if (Game.RENDERER != null) {
+            return Game.RENDERER.getViewBounds();
+        }
+        return new Rectangle[]{new Rectangle(PLAYER_ENTITY.getCenterX() - Game.WIDTH / 2,
+                PLAYER_ENTITY.getCenterY() - Game.HEIGHT / 2, Game.WIDTH, Game.HEIGHT)};
+    }
 
-        Set<Point> visible = new HashSet<>();
+    /**
+     * The living enemy tank closest to an entity, null if there is none
+     */
+    public EnemyTank findNearestEnemy(Entity from) {
+        EnemyTank nearest = null;
+        double nearestDistance = Double.MAX_VALUE;
+        for (Entity entity : worldEntities) {
+            if (!(entity instanceof EnemyTank) || entity.isMarkedForRemoval()) {
+                continue;
+            }
+            double dx = entity.getX() - from.getX();
+            double dy = entity.getY() - from.getY();
+            double distance = dx * dx + dy * dy;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = (EnemyTank) entity;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Put a static entity into the grid if its chunk is loaded, otherwise set it aside until it is
+     */
+    private void addStatic(Entity entity) {
+        if (isEntityInLoadedChunk(entity)) {
+            staticEntities.add(entity);
+            spatialGrid.addStaticEntity(entity);
+        } else {
+            unloadedStatics.computeIfAbsent(getChunkKey(entity), key -> new ArrayList<>()).add(entity);
+            unloadedStaticCount++;
+        }
+    }
+
+    /**
+     * After chunks loaded or unloaded, take the static entities of unloaded chunks out of the grid and
+     * put back the ones whose chunk loaded again. Nothing in an unloaded chunk can then be woken, hit
+     * by a blast or stamped into the flow field.
+     */
+    private void updateStaticResidency() {
+        int version = chunkSetVersion;
+        if (version == staticResidencyVersion) {
+            return;
+        }
+        staticResidencyVersion = version;
+
+        Iterator<Map.Entry<Point, ArrayList<Entity>>> unloaded = unloadedStatics.entrySet().iterator();
+        while (unloaded.hasNext()) {
+            Map.Entry<Point, ArrayList<Entity>> entry = unloaded.next();
+            if (isChunkLoaded(entry.getKey().x, entry.getKey().y)) {
+                for (Entity entity : entry.getValue()) {
+                    staticEntities.add(entity);
+                    spatialGrid.addStaticEntity(entity);
+                }
+                unloadedStaticCount -= entry.getValue().size();
+                unloaded.remove();
+            }
+        }
 
-        // load a square grid around player
-        for (int dx = -renderDistance; dx <= renderDistance; dx++) {
-            for (int dy = -renderDistance; dy <= renderDistance; dy++) {
-                int cx = playerChunkX + dx;
-                int cy = playerChunkY + dy;
-                Point key = new Point(cx, cy);
+        for (Entity entity : staticEntities) {
+            // a triggered mine finishes its blast, it despawns through the grid
+            if (entity.isMarkedForRemoval() || isEntityInLoadedChunk(entity)) {
+                continue;
+            }
+            staticEntities.remove(entity);
+            spatialGrid.removeStaticEntity(entity);
+            unloadedStatics.computeIfAbsent(getChunkKey(entity), key -> new ArrayList<>()).add(entity);
+            unloadedStaticCount++;
+        }
+    }
+
+    /**
+     * Static entities don't update, they are woken here when a mover overlaps them
+     */
+    private void wakeOverlappedSleepers(Entity mover) {
+        if (mover.isMarkedForRemoval()) {
+            return;
+        }
+        sleepersToWake.clear();
+        spatialGrid.getOverlappingSleepers(mover, sleepersToWake);
+        for (int i = 0; i < sleepersToWake.size(); i++) {
+            sleepersToWake.get(i).wake(mover);
+        }
+    }
 
-                // bake or reuse
-                Chunk chunk = chunks.computeIfAbsent(key, k -> new Chunk(cx, cy, random));
+    /**
+     * Keep the chunks the viewports need loaded and unload the rest, once per frame before the
+     * viewports are rendered. Every view gets the square of chunks around its center, as far as it
+     * reaches around the view, so the chunk around the player is loaded by the view that follows it.
+     */
+    public void loadChunks(Rectangle[] views) {
+        if (terrainCaches.length < views.length) {
+            int previous = terrainCaches.length;
+            terrainCaches = Arrays.copyOf(terrainCaches, views.length);
+            replayNanos = Arrays.copyOf(replayNanos, views.length);
+            for (int i = previous; i < views.length; i++) {
+                terrainCaches[i] = new TerrainCache();
+            }
+        }
+        viewCount = views.length;
 
-                // render it
-                g.drawImage(chunk.image, chunk.worldX, chunk.worldY, null);
-                visible.add(key);
+        Set<Point> visible = new HashSet<>();
+        int margin = residentMargin;
+        int chunkSizePx = getChunkSizePx();
+        for (Rectangle view : views) {
+            // figure out which chunk the view is centered on
+            int centerChunkX = Math.floorDiv(view.x + view.width / 2, chunkSizePx);
+            int centerChunkY = Math.floorDiv(view.y + view.height / 2, chunkSizePx);
+            Rectangle residentArea = new Rectangle(view.x - margin, view.y - margin,
+                    view.width + margin * 2, view.height + margin * 2);
+
+            for (int dx = -renderDistance; dx <= renderDistance; dx++) {
+                for (int dy = -renderDistance; dy <= renderDistance; dy++) {
+                    int cx = centerChunkX + dx;
+                    int cy = centerChunkY + dy;
+                    if (!residentArea.intersects(cx * chunkSizePx, cy * chunkSizePx, chunkSizePx, chunkSizePx)) {
+                        continue;
+                    }
+                    Point key = new Point(cx, cy);
+
+                    // bake or reuse, a fresh chunk replaces whatever the terrain caches held there
+                    if (!chunks.containsKey(key)) {
+                        Chunk chunk = new Chunk(cx, cy, random);
+                        chunks.put(key, chunk);
+                        chunkSetVersion++;
+                        for (TerrainCache cache : terrainCaches) {
+                            cache.invalidate(chunk.getBounds());
+                        }
+                    }
+                    visible.add(key);
+                }
             }
         }
 
         // 🔥 Unload everything else
-        chunks.keySet().removeIf(key -> !visible.contains(key));
+        if (chunks.keySet().removeIf(key -> !visible.contains(key))) {
+            chunkSetVersion++;
+        }
+    }
 
-        // draw entities only if inside a loaded chunk
-        if (isEntityInLoadedChunk(PLAYER_ENTITY)) {
-            PLAYER_ENTITY.render(g);
+    /**
+     * Draw one viewport's view, after loadChunks() for this frame
+     *
+     * @param viewIndex Index of the viewport, its display list and terrain cache
+     */
+    public void render(Graphics2D g, Rectangle cameraView, int viewIndex) {
+        if (comparisonRequested && viewIndex == 0) {
+            comparisonRequested = false;
+            compareBackends(cameraView);
+        }
+        if (softwareRendering) {
+            drawSoftware(g, cameraView, viewIndex);
+        } else {
+            drawJava2D(g, cameraView, viewIndex);
         }
 
-        worldEntities.forEach(entity -> {
-            if (isEntityInLoadedChunk(entity)) {
-                entity.render(g);
+        influenceMap.renderOverlay(g);
+    }
+
+    /**
+     * Record the draws of this update into a display list per view and publish them to the renderer.
+     * Entities the culler found in the views, bullets and particles go through the render queue
+     * so that they are drawn in layer order and grouped by image and color.
+     */
+    private void recordDraws(Rectangle[] views) {
+        long start = System.nanoTime();
+        if (recordingLists.length != views.length) {
+            int previous = recordingLists.length;
+            recordingLists = Arrays.copyOf(recordingLists, views.length);
+            for (int i = previous; i < views.length; i++) {
+                recordingLists[i] = new DisplayList();
             }
-        });
-        
-        // Render VFX system (particles and lighting) with camera view
-        vfxManager.render(g, cameraView);
+        }
+        int drawCalls = 0;
+        int sortPasses = 0;
+        double sortMillis = 0;
+        for (int i = 0; i < views.length; i++) {
+            Rectangle view = views[i];
+            renderQueue.begin(view);
+            viewCuller.submit(renderQueue, view);
+            bulletManager.submit(renderQueue, view);
+            vfxManager.submit(renderQueue, view);
+            recordingLists[i].begin(view);
+            renderQueue.flush(recordingLists[i]);
+            drawCalls += renderQueue.getDrawCalls();
+            sortPasses += renderQueue.getSortPasses();
+            sortMillis += renderQueue.getSortMillis();
+        }
+        lastDrawCalls = drawCalls;
+        lastSortPasses = sortPasses;
+        lastSortMillis = sortMillis;
+        synchronized (displayListLock) {
+            DisplayList[] finished = recordingLists;
+            recordingLists = publishedLists;
+            publishedLists = finished;
+        }
+        lastRecordNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Last recorded draws of a view, empty if that view wasn't recorded yet.
+     * The caller holds the display list lock.
+     */
+    private DisplayList publishedList(int viewIndex) {
+        if (viewIndex < publishedLists.length) {
+            return publishedLists[viewIndex];
+        }
+        return EMPTY_DISPLAY_LIST;
+    }
+
+    /**
+     * Replay the last recorded draws of a view, the caller holds the display list lock
+     */
+    private void replayDraws(Graphics2D g, int viewIndex) {
+        long start = System.nanoTime();
+        publishedList(viewIndex).replay(g);
+        replayNanos[viewIndex] = System.nanoTime() - start;
+    }
+
+    private void drawJava2D(Graphics2D g, Rectangle cameraView, int viewIndex) {
+        // the ground under the camera, scrolled along with it
+        terrainCaches[viewIndex].render(g, cameraView, chunks, getChunkSizePx());
+        synchronized (displayListLock) {
+            replayDraws(g, viewIndex);
+        }
+        vfxManager.renderLighting(g, cameraView);
+    }
+
+    private void drawSoftware(Graphics2D g, Rectangle cameraView, int viewIndex) {
+        synchronized (displayListLock) {
+            long start = System.nanoTime();
+            softwareRasterizer.render(g, cameraView, chunks.values(), getChunkSizePx(), publishedList(viewIndex),
+                    vfxManager.getLighting());
+            replayNanos[viewIndex] = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Draw the first viewport's view with both backends into images, time them and count the pixels
+     * they disagree on.
+     * The light map is drawn at full resolution meanwhile, like the software lighting.
+     *
+     * @return One line per result, also logged
+     */
+    public List<String> compareBackends(Rectangle cameraView) {
+        BufferedImage java2D = new BufferedImage(cameraView.width, cameraView.height, BufferedImage.TYPE_INT_RGB);
+        BufferedImage software = new BufferedImage(cameraView.width, cameraView.height, BufferedImage.TYPE_INT_RGB);
+        Lighting lighting = vfxManager.getLighting();
+        int divisor = lighting.getResolutionDivisor();
+        lighting.setResolutionDivisor(1);
+        long java2DNanos = 0;
+        long softwareNanos = 0;
+        try {
+            for (int i = 0; i < COMPARISON_FRAMES; i++) {
+                Graphics2D g = java2D.createGraphics();
+                g.translate(-cameraView.x, -cameraView.y);
+                long start = System.nanoTime();
+                drawJava2D(g, cameraView, 0);
+                java2DNanos += System.nanoTime() - start;
+                g.dispose();
+
+                g = software.createGraphics();
+                g.translate(-cameraView.x, -cameraView.y);
+                start = System.nanoTime();
+                drawSoftware(g, cameraView, 0);
+                softwareNanos += System.nanoTime() - start;
+                g.dispose();
+            }
+        } finally {
+            lighting.setResolutionDivisor(divisor);
+        }
+
+        int pixels = cameraView.width * cameraView.height;
+        int different = 0;
+        int beyondTolerance = 0;
+        int maxDifference = 0;
+        for (int py = 0; py < cameraView.height; py++) {
+            for (int px = 0; px < cameraView.width; px++) {
+                int a = java2D.getRGB(px, py);
+                int b = software.getRGB(px, py);
+                if (a == b) {
+                    continue;
+                }
+                int difference = Math.max(Math.abs(((a >> 16) & 0xFF) - ((b >> 16) & 0xFF)),
+                        Math.max(Math.abs(((a >> 8) & 0xFF) - ((b >> 8) & 0xFF)), Math.abs((a & 0xFF) - (b & 0xFF))));
+                different++;
+                maxDifference = Math.max(maxDifference, difference);
+                if (difference > COMPARISON_TOLERANCE) {
+                    beyondTolerance++;
+                }
+            }
+        }
+
+        comparisonPixelsBeyondTolerance = beyondTolerance;
+        List<String> results = new ArrayList<>();
+        results.add(String.format("Java2D   %.2fms per frame", java2DNanos / 1_000_000.0 / COMPARISON_FRAMES));
+        results.add(String.format("Software %.2fms per frame (%d tiles, %d threads)", softwareNanos / 1_000_000.0 /
+                COMPARISON_FRAMES, softwareRasterizer.getTileCount(), softwareRasterizer.getParallelism()));
+        results.add(String.format("Diff: %d of %d pixels differ, %d by more than %d, max %d",
+                different, pixels, beyondTolerance, COMPARISON_TOLERANCE, maxDifference));
+        for (String line : results) {
+            logger.info(line);
+        }
+        return results;
+    }
+
+    /**
+     * Draw the world with the software rasterizer instead of Java2D, or back
+     */
+    public void toggleSoftwareRendering() {
+        softwareRendering = !softwareRendering;
+    }
+
+    /**
+     * Pixels the backends differed on by more than the tolerance in the last comparison
+     */
+    public int getComparisonPixelsBeyondTolerance() {
+        return comparisonPixelsBeyondTolerance;
+    }
+
+    public boolean isSoftwareRendering() {
+        return softwareRendering;
+    }
+
+    /**
+     * Compare the two backends on the next rendered frame, the game stalls for a moment
+     */
+    public void requestBackendComparison() {
+        comparisonRequested = true;
+    }
+
+    public SoftwareRasterizer getSoftwareRasterizer() {
+        return softwareRasterizer;
+    }
+
+    /**
+     * Copy of the first viewport's last recorded frame of draws, to replay on its own
+     */
+    public DisplayList captureDisplayList() {
+        synchronized (displayListLock) {
+            return publishedList(0).copy();
+        }
+    }
+
+    /**
+     * Draws in the last recorded display lists, all views together
+     */
+    public int getDisplayListCommands() {
+        int commands = 0;
+        for (DisplayList list : publishedLists) {
+            commands += list.getCommandCount();
+        }
+        return commands;
+    }
+
+    public int getDisplayListBytes() {
+        int bytes = 0;
+        for (DisplayList list : publishedLists) {
+            bytes += list.getSizeBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Image and color switches replaying the last display lists makes
+     */
+    public int getDisplayListStateChanges() {
+        int changes = 0;
+        for (DisplayList list : publishedLists) {
+            changes += list.getStateChanges();
+        }
+        return changes;
+    }
+
+    /**
+     * Time spent recording the last display lists on the update thread, all views together, in milliseconds
+     */
+    public double getRecordMillis() {
+        return lastRecordNanos / 1_000_000.0;
+    }
+
+    /**
+     * Draws the last recording issued, all views together
+     */
+    public int getDrawCalls() {
+        return lastDrawCalls;
+    }
+
+    /**
+     * Radix sort passes of the last recording, all views together
+     */
+    public int getSortPasses() {
+        return lastSortPasses;
+    }
+
+    /**
+     * Time spent sorting in the last recording, all views together, in milliseconds
+     */
+    public double getSortMillis() {
+        return lastSortMillis;
+    }
+
+    /**
+     * Time spent replaying the last display lists, all views together, in milliseconds.
+     * For the software rasterizer this is its whole frame. Only called on the render thread.
+     */
+    public double getReplayMillis() {
+        long nanos = 0;
+        for (int i = 0; i < viewCount; i++) {
+            nanos += replayNanos[i];
+        }
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Terrain surface blits of the last frame, all views together. Only called on the render thread.
+     */
+    public int getTerrainBlits() {
+        int blits = 0;
+        for (int i = 0; i < viewCount; i++) {
+            blits += terrainCaches[i].getBlits();
+        }
+        return blits;
+    }
+
+    /**
+     * Terrain pixels redrawn in the last frame, all views together. Only called on the render thread.
+     */
+    public long getTerrainRedrawnPixels() {
+        long pixels = 0;
+        for (int i = 0; i < viewCount; i++) {
+            pixels += terrainCaches[i].getRedrawnPixels();
+        }
+        return pixels;
+    }
+
+    /**
+     * Full redraws of the terrain surfaces of the current views since they were created
+     */
+    public int getTerrainFullRedraws() {
+        int redraws = 0;
+        for (int i = 0; i < viewCount; i++) {
+            redraws += terrainCaches[i].getFullRedraws();
+        }
+        return redraws;
     }
 
     public int getLoadedChunkCount() {
@@ -163,19 +724,79 @@ public class World {
         return isChunkLoaded(cx, cy);
     }
 
+    private Point getChunkKey(Entity e) {
+        int chunkSizePx = chunkSizeCells * cellSize;
+        return new Point((int) Math.floor(e.getX() / (double) chunkSizePx),
+                (int) Math.floor(e.getY() / (double) chunkSizePx));
+    }
+
+    /**
+     * Add an entity to the world with the next update, which gives it a handle.
+     * Static entities join the static grid layer then.
+     */
+    public void spawn(Entity entity) {
+        pendingSpawns.add(entity);
+    }
+
+    /**
+     * Take a static entity out of the world and the static grid layer
+     */
+    public void despawnStatic(Entity entity) {
+        if (staticEntities.remove(entity)) {
+            spatialGrid.removeStaticEntity(entity);
+            entityHandles.release(entity);
+        }
+    }
+
     public void spawnRedEnemy(double x, double y) {
-        worldEntities.add(new EnemyTank(x, y));
+        spawn(new EnemyTank(x, y));
     }
 
     public void spawnLandmine(double x, double y)
     {
-        worldEntities.add(new LandmineEntity(x, y));
+        spawn(new LandmineEntity(x, y));
     }
     
+    public QualityController getQualityController() {
+        return qualityController;
+    }
+
     public VFXManager getVFXManager() {
         return vfxManager;
     }
 
+    public InfluenceMap getInfluenceMap() {
+        return influenceMap;
+    }
+
+    public EntityHandles getEntityHandles() {
+        return entityHandles;
+    }
+
+    public ViewCuller getViewCuller() {
+        return viewCuller;
+    }
+
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    public FlowField getFlowField() {
+        return flowField;
+    }
+
+    public AIScheduler getAIScheduler() {
+        return aiScheduler;
+    }
+
+    public BulletManager getBulletManager() {
+        return bulletManager;
+    }
+
+    public DetonationQueue getDetonationQueue() {
+        return detonationQueue;
+    }
+
     public int getCellSize() {
         return cellSize;
     }
@@ -231,10 +852,20 @@ public class World {
             return new Rectangle(worldX, worldY, w, h);
         }
 
+        /**
+         * Same as getBounds().contains(...) for an area given by its edges (max exclusive),
+         * without allocating
+         */
+        public boolean contains(int minX, int minY, int maxX, int maxY) {
+            int size = chunkSizeCells * cellSize;
+            return minX >= worldX && minY >= worldY &&
+                   maxX <= worldX + size && maxY <= worldY + size;
+        }
+
         private void bakeDesert() {
             int w = chunkSizeCells * cellSize;
             int h = chunkSizeCells * cellSize;
-            image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            image = ImageFactory.createOpaque(w, h);
             Graphics2D g = image.createGraphics();
 
             for (int lx = 0; lx < chunkSizeCells; lx++) {
@@ -280,7 +911,7 @@ public class World {
         private void bakeGrassland() {
             int w = chunkSizeCells * cellSize;
             int h = chunkSizeCells * cellSize;
-            image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            image = ImageFactory.createOpaque(w, h);
             Graphics2D g = image.createGraphics();
 
             for (int lx = 0; lx < chunkSizeCells; lx++) {
@@ -0,0 +1,24 @@
+package tomato.entity;
+
+/**
+ * Collision layer bits used by the broadphase.
+ * Every entity sits on one layer and carries a mask of the layers it is tested against,
+ * both configured per {@link EntityType}.
+ */
+public final class CollisionLayer {
+    public static final int NONE = 0;
+    public static final int TANK = 1;
+    public static final int PROJECTILE = 1 << 1;
+    public static final int LANDMINE = 1 << 2;
+    public static final int ALL = ~0;
+
+    private CollisionLayer() {
+    }
+
+    /**
+     * Check if a collides-with mask accepts the given layer
+     */
+    public static boolean interacts(int mask, int layer) {
+        return (mask & layer) != 0;
+    }
+}
@@ -1,21 +1,60 @@
 package tomato.entity;
 
 import tomato.Game;
+import tomato.core.AIScheduler;
+import tomato.core.EntityHandles;
+import tomato.core.InfluenceMap;
 import tomato.core.Mathf;
+import tomato.core.SpatialGrid;
 import tomato.core.SpriteCache;
+import tomato.core.TimingWheel;
 import tomato.core.World;
-
-import java.awt.*;
 import java.util.Random;
 
 public class EnemyTank extends Tank {
 
     private static final int THINK_INTERVAL_MS = 1000; // 1s between AI decisions
     private static final int FIRE_COOLDOWN_MS = 1500;  // 1.5s between shots
+    private static final int PERCEPTION_INTERVAL_MS = 250; // how long a target/sight check stays valid
+    private static final int SIGHT_RADIUS = 400;
+    private static final int TRACK_RADIUS = 200;
+    // Nearest candidates checked for line of sight before giving up
+    private static final int MAX_SIGHT_CHECKS = 4;
+    // Whatever a shell would hit on the way blocks the shot
+    private static final int SIGHT_BLOCKING_MASK = EntityType.REGULAR_PROJECTILE.getCollisionMask();
+
+    // Threat on the influence map above which a tank turns away from where it stands
+    private static final float DANGER_THRESHOLD = 0.5f;
+    // How far ahead the influence map is sampled when picking a direction
+    private static final int LOOKAHEAD = 64;
+    // A tank that sees its target marks where it would fire as threat. It stays below the danger
+    // threshold, so other tanks roam out of the lane instead of fleeing from it. The lane starts
+    // past the tank's own lookahead so that it doesn't steer the tank itself.
+    private static final int FIRING_LANE_START = LOOKAHEAD + InfluenceMap.CELL_SIZE;
+    private static final int FIRING_LANE_LENGTH = 256;
+    private static final float FIRING_LANE_THREAT = 0.4f;
+
+    // Shared scratch for the nearest-target query, AI only runs on the update thread
+    private static final Entity[] nearestTargets = new Entity[MAX_SIGHT_CHECKS];
 
-    private double thinkTimerMs = 0;
-    private double fireCooldownMs = 0;
     private final Random rng = new Random();
+    // Decisions and perception are woken by the timing wheel, the tank acts on its next update
+    private final TimingWheel.Timer thinkTimer = new TimingWheel.Timer(() -> thinkDue = true);
+    private final TimingWheel.Timer perceptionTimer = new TimingWheel.Timer(() -> perceptionDue = true);
+    private boolean thinkDue = false;
+    private boolean perceptionDue = false;
+    private boolean timersArmed = false;
+    // Tick of the timing wheel from which the tank may fire again
+    private long fireReadyTick = 0;
+    // Frame slot used by the AI scheduler to spread updates of the same tier
+    private final int scheduleSlot = rng.nextInt(AIScheduler.SLOT_COUNT);
+    // Frame time that passed while the AI scheduler skipped this tank
+    private float skippedMs = 0;
+    // Handle of the perceived target, it goes stale when the target leaves the world
+    private long targetHandle = EntityHandles.NONE;
+    private boolean targetVisible = false;
+    // Following the shared flow field toward the player until the next decision
+    private boolean chasing = false;
 
     public EnemyTank(double x, double y) {
         super(x, y);
@@ -30,53 +69,170 @@ public class EnemyTank extends Tank {
         if (isInUnloadedChunk()) {
             return;
         }
-        // use deltaTimeMillis from the GameLoop
-        float dtMs = Game.GAME_LOOP.getDeltaTimeMillis();
+        // use deltaTimeMillis from the GameLoop, plus whatever was skipped by the AI scheduler
+        float dtMs = Game.GAME_LOOP.getDeltaTimeMillis() + skippedMs;
+        skippedMs = 0;
 
-        thinkTimerMs -= dtMs;
-        if (fireCooldownMs > 0) fireCooldownMs -= dtMs;
+        TimingWheel timingWheel = World.WORLD.getTimingWheel();
+        if (!timersArmed) {
+            // Tanks can be created on the EDT, the timers are armed on the first update.
+            // Random phase so that tanks spawned together don't think and perceive on the same frame
+            timingWheel.schedule(thinkTimer, rng.nextFloat() * THINK_INTERVAL_MS);
+            timingWheel.schedule(perceptionTimer, rng.nextFloat() * PERCEPTION_INTERVAL_MS);
+            timersArmed = true;
+        }
 
-        if (thinkTimerMs <= 0) {
+        if (perceptionDue) {
+            perceptionDue = false;
+            perceive();
+            avoidDanger();
+            timingWheel.schedule(perceptionTimer, PERCEPTION_INTERVAL_MS);
+        }
+
+        if (thinkDue) {
+            thinkDue = false;
             makeDecision();
-            thinkTimerMs = THINK_INTERVAL_MS;
+            timingWheel.schedule(thinkTimer, THINK_INTERVAL_MS);
+        }
+
+        if (chasing) {
+            followFlowField();
         }
 
         // Try moving in current direction
-        double step = this.speed * Game.GAME_LOOP.getDeltaTime();
+        double step = this.speed * dtMs / 1000.0;
+        double oldX = this.x;
+        double oldY = this.y;
         moveForward(step);
-        Rectangle spawnCage = getSpawnCage();
+        World.Chunk spawnCage = getChunk();
         if (spawnCage != null)
         {
-            if (!this.getSpawnCage().contains(getHitbox())) {
+            if (!spawnCage.contains(getMinX(), getMinY(), getMaxX(), getMaxY())) {
                 // Undo move
-                moveForward(-step);
+                revertMove(oldX, oldY);
                 // Pick a new direction instead
+                chasing = false;
                 pickRandomDirection();
             }
         }
 
 
-        // The collision detection is now handled inside moveForward() method
-        // No need for additional collision checking here since moveForward()
-        // will automatically prevent movement into colliding positions
+        // moveForward() sweeps against blockers from the spatial grid and stops
+        // at contact, so no additional collision checking is needed here
 
         tryShoot();
     }
 
+    @Override
+    public void markForRemoval() {
+        super.markForRemoval();
+        // don't keep a destroyed tank reachable from the timing wheel until its timers come due
+        if (World.WORLD != null) {
+            World.WORLD.getTimingWheel().cancel(thinkTimer);
+            World.WORLD.getTimingWheel().cancel(perceptionTimer);
+        }
+    }
+
+    /**
+     * Called instead of update() on frames the AI scheduler skips, the time is caught up on the next update
+     */
+    public void skipUpdate(float elapsedMs) {
+        skippedMs += elapsedMs;
+    }
+
+    public int getScheduleSlot() {
+        return scheduleSlot;
+    }
+
     @Override
     protected void moveForward(double distance) {
         super.moveForward(distance);
     }
 
+    /**
+     * Pick the nearest player tank in sight range, preferring one that can actually be seen.
+     * The result is cached until the next perception tick.
+     */
+    private void perceive() {
+        SpatialGrid grid = World.WORLD.getSpatialGrid();
+        int centerX = getCenterX();
+        int centerY = getCenterY();
+        int found = grid.queryNearest(centerX, centerY, SIGHT_RADIUS, CollisionLayer.TANK,
+                EntityType.PLAYER_TANK, this, nearestTargets);
+
+        Entity target = found > 0 ? nearestTargets[0] : null;
+        targetVisible = false;
+        for (int i = 0; i < found; i++) {
+            Entity candidate = nearestTargets[i];
+            if (grid.hasLineOfSight(centerX, centerY, candidate.getCenterX(), candidate.getCenterY(),
+                    SIGHT_BLOCKING_MASK, this, candidate)) {
+                target = candidate;
+                targetVisible = true;
+                break;
+            }
+        }
+        targetHandle = target != null ? target.getHandle() : EntityHandles.NONE;
+        // don't keep removed entities alive through the shared scratch array
+        for (int i = 0; i < found; i++) {
+            nearestTargets[i] = null;
+        }
+        if (targetVisible) {
+            stampFiringLane();
+        }
+    }
+
+    /**
+     * Mark the lane in front of the barrel as threat on the influence map, once per perception tick
+     */
+    private void stampFiringLane() {
+        int x = getCenterX();
+        int y = getCenterY();
+        switch (currentDirection) {
+            case NORTH:
+                y -= FIRING_LANE_START;
+                break;
+            case SOUTH:
+                y += FIRING_LANE_START;
+                break;
+            case EAST:
+                x += FIRING_LANE_START;
+                break;
+            case WEST:
+                x -= FIRING_LANE_START;
+                break;
+        }
+        World.WORLD.getInfluenceMap().stampLane(InfluenceMap.THREAT, x, y, currentDirection, FIRING_LANE_LENGTH,
+                FIRING_LANE_THREAT);
+    }
+
+    /**
+     * The perceived target, or null if there is none or it has left the world since
+     */
+    private Entity resolveTarget() {
+        Entity target = World.WORLD.getEntityHandles().resolve(targetHandle);
+        return target == null || target.isMarkedForRemoval() ? null : target;
+    }
+
     private void makeDecision() {
-        // 30% chance to track player
+        chasing = false;
+        // 30% chance to track the perceived target
         if (rng.nextDouble() < 0.3) {
-            Entity player = World.PLAYER_ENTITY;
-            double dx = player.getX() - this.x;
-            double dy = player.getY() - this.y;
-            // Use distance calculation to determine if player is close enough to track
-            double distanceToPlayer = Mathf.distance(this.x, this.y, player.getX(), player.getY());
-            if (distanceToPlayer < 200) { // Only track if player is within range
+            Entity target = resolveTarget();
+            if (target == null) {
+                pickRandomDirection();
+                return;
+            }
+            double dx = target.getX() - this.x;
+            double dy = target.getY() - this.y;
+            // Use distance calculation to determine if target is close enough to track
+            double distanceToTarget = Mathf.distance(this.x, this.y, target.getX(), target.getY());
+            if (distanceToTarget < TRACK_RADIUS) { // Only track if target is within range
+                if (target == World.PLAYER_ENTITY) {
+                    // the flow field leads around mines to the player
+                    chasing = true;
+                    followFlowField();
+                    return;
+                }
                 if (Math.abs(dx) > Math.abs(dy)) {
                     this.currentDirection = (dx > 0) ? Direction.EAST : Direction.WEST;
                 } else {
@@ -88,7 +244,87 @@ public class EnemyTank extends Tank {
             }
             updateSprite();
         } else {
+            pickRoamingDirection();
+        }
+    }
+
+    /**
+     * Turn toward the least threatening direction when standing in a projectile lane or blast area
+     */
+    private void avoidDanger() {
+        InfluenceMap influence = World.WORLD.getInfluenceMap();
+        if (influence.sample(InfluenceMap.THREAT, getCenterX(), getCenterY()) < DANGER_THRESHOLD) {
+            return;
+        }
+        Direction safest = currentDirection;
+        float lowestThreat = Float.MAX_VALUE;
+        for (Direction direction : Direction.values()) {
+            float threat = sampleAhead(influence, InfluenceMap.THREAT, direction);
+            if (threat < lowestThreat) {
+                lowestThreat = threat;
+                safest = direction;
+            }
+        }
+        chasing = false;
+        if (safest != currentDirection) {
+            this.currentDirection = safest;
+            updateSprite();
+        }
+    }
+
+    /**
+     * Wander toward where the player was sensed recently and away from threats,
+     * or randomly when the influence map has nothing to offer
+     */
+    private void pickRoamingDirection() {
+        InfluenceMap influence = World.WORLD.getInfluenceMap();
+        Direction best = null;
+        float bestScore = 0f;
+        for (Direction direction : Direction.values()) {
+            float score = sampleAhead(influence, InfluenceMap.TARGET, direction) -
+                    sampleAhead(influence, InfluenceMap.THREAT, direction);
+            if (score > bestScore) {
+                bestScore = score;
+                best = direction;
+            }
+        }
+        if (best == null || rng.nextBoolean()) {
             pickRandomDirection();
+            return;
+        }
+        this.currentDirection = best;
+        updateSprite();
+    }
+
+    private float sampleAhead(InfluenceMap influence, int channel, Direction direction) {
+        int x = getCenterX();
+        int y = getCenterY();
+        switch (direction) {
+            case NORTH:
+                y -= LOOKAHEAD;
+                break;
+            case SOUTH:
+                y += LOOKAHEAD;
+                break;
+            case EAST:
+                x += LOOKAHEAD;
+                break;
+            case WEST:
+                x -= LOOKAHEAD;
+                break;
+        }
+        return influence.sample(channel, x, y);
+    }
+
+    /**
+     * Turn toward the player along the shared flow field, keeps the current direction
+     * where the field has none (outside the loaded area or already at the player)
+     */
+    private void followFlowField() {
+        Direction next = World.WORLD.getFlowField().getDirection(getCenterX(), getCenterY());
+        if (next != null && next != currentDirection) {
+            this.currentDirection = next;
+            updateSprite();
         }
     }
 
@@ -99,20 +335,35 @@ public class EnemyTank extends Tank {
     }
 
     private void tryShoot() {
-        if (fireCooldownMs > 0) return;
-
-        Entity player = World.PLAYER_ENTITY;
+        TimingWheel timingWheel = World.WORLD.getTimingWheel();
+        if (timingWheel.getTick() < fireReadyTick || !targetVisible) return;
+        Entity target = resolveTarget();
+        if (target == null) return;
 
-        // Rough alignment check
-        double dx = player.getX() - this.x;
-        double dy = player.getY() - this.y;
-        if ((Math.abs(dx) < 10 &&
-                (currentDirection == Direction.NORTH || currentDirection == Direction.SOUTH)) ||
-                (Math.abs(dy) < 10 &&
-                        (currentDirection == Direction.EAST || currentDirection == Direction.WEST))) {
+        // Fire when the target's hitbox crosses the barrel line in front of the tank
+        int centerX = getCenterX();
+        int centerY = getCenterY();
+        boolean aligned;
+        switch (currentDirection) {
+            case NORTH:
+                aligned = target.getMinX() <= centerX && centerX < target.getMaxX() && target.getCenterY() < centerY;
+                break;
+            case SOUTH:
+                aligned = target.getMinX() <= centerX && centerX < target.getMaxX() && target.getCenterY() > centerY;
+                break;
+            case EAST:
+                aligned = target.getMinY() <= centerY && centerY < target.getMaxY() && target.getCenterX() > centerX;
+                break;
+            case WEST:
+                aligned = target.getMinY() <= centerY && centerY < target.getMaxY() && target.getCenterX() < centerX;
+                break;
+            default:
+                aligned = false;
+        }
 
+        if (aligned) {
             shoot(EntityType.REGULAR_PROJECTILE);
-            fireCooldownMs = FIRE_COOLDOWN_MS;
+            fireReadyTick = timingWheel.getTick() + TimingWheel.ticksFor(FIRE_COOLDOWN_MS);
         }
     }
 
@@ -1,6 +1,8 @@
 package tomato.entity;
 
-import tomato.core.Mathf;
+import tomato.core.CollisionMask;
+import tomato.core.EntityHandles;
+import tomato.core.RenderQueue;
 import tomato.core.SpriteCache;
 import tomato.core.World;
 
@@ -9,6 +11,8 @@ import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 
 public class Entity {
+    // Handle in the world's handle table, NONE while the entity is not in a world
+    private long handle = EntityHandles.NONE;
     protected double x;
     protected double y;
     protected BufferedImage currentSprite;
@@ -17,8 +21,17 @@ public class Entity {
     protected BufferedImage[] rotatedSprites;
     protected boolean shouldDrawHitbox = false;
     protected boolean markedForRemoval = false;
-    protected Rectangle cachedHitbox = null;
     protected boolean hitboxNeedsUpdate = true;
+    // Hitbox relative to the sprite origin, refreshed when the sprite changes
+    protected int hitboxOffsetX = 0;
+    protected int hitboxOffsetY = 0;
+    protected int hitboxWidth = 0;
+    protected int hitboxHeight = 0;
+    // Stamp of the last spatial grid query that visited this entity
+    private int queryStamp = 0;
+    // Cells the spatial grid last inserted this entity into. Removal goes by these rather than the
+    // current hitbox, which may have changed since, e.g. with a rotation.
+    private int gridMinCellX, gridMinCellY, gridMaxCellX, gridMaxCellY;
     protected int spriteWidth = 0;
     protected int spriteHeight = 0;
     protected int health = 50;
@@ -27,7 +40,6 @@ public class Entity {
     protected CollisionAction collisionAction;
     protected int maxHealth = 50;
     // TODO: enemy tanks should not exit their spawn chunks
-    // TODO: projectiles should be marked for removal after it traveled through an entire chunk without hitting anything
     // TODO: use GameState to show different screens (death screen, pause)
     // TODO: add different enemy types and sprite variants (damage, etc)
     // TODO: explosion VFX
@@ -61,6 +73,10 @@ public class Entity {
         return getChunk().getBounds();
     }
 
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
     public int getHealth() {
         return health;
     }
@@ -74,13 +90,41 @@ public class Entity {
     }
 
     public void markForRemoval() {
+        if (!this.markedForRemoval && isStatic() && World.WORLD != null) {
+            // static entities are not swept by the update loop, despawn them right away
+            World.WORLD.despawnStatic(this);
+        }
         this.markedForRemoval = true;
     }
 
+    public boolean isStatic() {
+        return entityType != null && entityType.isStatic();
+    }
+
+    /**
+     * Wake a sleeping static entity because a moving entity overlaps it
+     */
+    public void wake(Entity mover) {
+        if (collisionAction != null) {
+            collisionAction.onCollide(this, mover);
+        }
+    }
+
     public boolean isMarkedForRemoval() {
         return markedForRemoval;
     }
 
+    public long getHandle() {
+        return handle;
+    }
+
+    /**
+     * Only called by the handle table
+     */
+    public void setHandle(long handle) {
+        this.handle = handle;
+    }
+
     public Entity(double x, double y) {
         this.x = x;
         this.y = y;
@@ -106,74 +150,245 @@ public class Entity {
         return !World.WORLD.isEntityInLoadedChunk(this);
     }
 
+    public int getCollisionLayer() {
+        return entityType != null ? entityType.getCollisionLayer() : CollisionLayer.ALL;
+    }
+
+    public int getCollisionMask() {
+        return entityType != null ? entityType.getCollisionMask() : CollisionLayer.ALL;
+    }
+
+    /**
+     * Check if this entity's collides-with mask accepts the other entity's layer
+     */
+    public boolean canCollideWith(Entity otherEntity) {
+        return CollisionLayer.interacts(getCollisionMask(), otherEntity.getCollisionLayer());
+    }
+
     public boolean intersectsEntity(Entity otherEntity) {
-        if (otherEntity == this) return false;
-        return otherEntity.getHitbox().intersects(this.getHitbox());
+        return intersects(otherEntity) && pixelsOverlap(otherEntity);
     }
 
+    /**
+     * Used by the spatial grid to visit each entity once per query without a visited set.
+     *
+     * @return True the first time this stamp is seen
+     */
+    public boolean markQueried(int stamp) {
+        if (queryStamp == stamp) {
+            return false;
+        }
+        queryStamp = stamp;
+        return true;
+    }
 
-    public Rectangle getHitbox() {
-        if (currentSprite == null) {
-            return new Rectangle((int) x, (int) y, 0, 0);
+    /**
+     * Used by the spatial grid to remember the cells it inserted this entity into
+     */
+    public void setGridCells(int minCellX, int minCellY, int maxCellX, int maxCellY) {
+        gridMinCellX = minCellX;
+        gridMinCellY = minCellY;
+        gridMaxCellX = maxCellX;
+        gridMaxCellY = maxCellY;
+    }
+
+    public int getGridMinCellX() {
+        return gridMinCellX;
+    }
+
+    public int getGridMinCellY() {
+        return gridMinCellY;
+    }
+
+    public int getGridMaxCellX() {
+        return gridMaxCellX;
+    }
+
+    public int getGridMaxCellY() {
+        return gridMaxCellY;
+    }
+
+    /**
+     * Get the pre-calculated pixel mask for the current rotation, or null if there is none
+     */
+    public CollisionMask getPixelMask() {
+        if (entityType == null || currentDirection == null) {
+            return null;
         }
+        return SpriteCache.queryMaskCache(entityType, currentDirection);
+    }
 
-        // Use cached hitbox if available and sprite hasn't changed
-        if (cachedHitbox != null && !hitboxNeedsUpdate) {
-            // Return hitbox with current position + cached relative offset
-            return new Rectangle(
-                (int) x + cachedHitbox.x,
-                (int) y + cachedHitbox.y,
-                cachedHitbox.width,
-                cachedHitbox.height
-            );
+    /**
+     * Pixel-perfect narrow phase. Only meaningful once the hitboxes are known to overlap;
+     * entities without a pixel mask fall back to the hitbox result.
+     */
+    public boolean pixelsOverlap(Entity otherEntity) {
+        CollisionMask mask = getPixelMask();
+        CollisionMask otherMask = otherEntity.getPixelMask();
+        if (mask == null || otherMask == null) {
+            return true;
         }
+        return mask.overlaps(otherMask, (int) otherEntity.x - (int) x, (int) otherEntity.y - (int) y);
+    }
 
-        // Try to get pre-calculated hitbox from SpriteCache first
-        Rectangle spriteHitbox = null;
-        if (entityType != null && currentDirection != null) {
-            Rectangle preCalculated = tomato.core.SpriteCache.queryHitboxCache(entityType, currentDirection);
-            if (preCalculated != null) {
-                spriteHitbox = new Rectangle(
-                    (int) x + preCalculated.x,
-                    (int) y + preCalculated.y,
-                    preCalculated.width,
-                    preCalculated.height
-                );
-                
-                // Cache the relative offset for future use
-                cachedHitbox = new Rectangle(
-                    preCalculated.x,  // Store relative offset
-                    preCalculated.y,  // Store relative offset
-                    preCalculated.width,
-                    preCalculated.height
-                );
+
+    /**
+     * Allocates a new rectangle on every call. Engine code should prefer the
+     * primitive bounds accessors and {@link #intersects(Entity)}.
+     */
+    public Rectangle getHitbox() {
+        updateHitboxOffsets();
+        return new Rectangle(getMinX(), getMinY(), hitboxWidth, hitboxHeight);
+    }
+
+    /**
+     * Left edge of the hitbox in world pixels (inclusive)
+     */
+    public int getMinX() {
+        updateHitboxOffsets();
+        return (int) x + hitboxOffsetX;
+    }
+
+    /**
+     * Top edge of the hitbox in world pixels (inclusive)
+     */
+    public int getMinY() {
+        updateHitboxOffsets();
+        return (int) y + hitboxOffsetY;
+    }
+
+    /**
+     * Right edge of the hitbox in world pixels (exclusive, like Rectangle.x + width)
+     */
+    public int getMaxX() {
+        return getMinX() + hitboxWidth;
+    }
+
+    /**
+     * Bottom edge of the hitbox in world pixels (exclusive, like Rectangle.y + height)
+     */
+    public int getMaxY() {
+        return getMinY() + hitboxHeight;
+    }
+
+    public int getCenterX() {
+        return getMinX() + hitboxWidth / 2;
+    }
+
+    public int getCenterY() {
+        return getMinY() + hitboxHeight / 2;
+    }
+
+    /**
+     * In-place hitbox intersection test, same semantics as Rectangle.intersects
+     */
+    public boolean intersects(Entity other) {
+        if (other == this) return false;
+        return intersects(other.getMinX(), other.getMinY(), other.getMaxX(), other.getMaxY());
+    }
+
+    /**
+     * Squared distance from a point to the closest pixel of the hitbox, 0 if the point is inside
+     */
+    public long distanceSquaredTo(int pointX, int pointY) {
+        int minX = getMinX();
+        int minY = getMinY();
+        long dx = pointX < minX ? minX - pointX : Math.max(0, pointX - (minX + hitboxWidth - 1));
+        long dy = pointY < minY ? minY - pointY : Math.max(0, pointY - (minY + hitboxHeight - 1));
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * In-place test of the hitbox against an area given by its edges (max exclusive)
+     */
+    public boolean intersects(int minX, int minY, int maxX, int maxY) {
+        if (hitboxWidthOrHeightEmpty() || maxX <= minX || maxY <= minY) {
+            return false;
+        }
+        int ownMinX = getMinX();
+        int ownMinY = getMinY();
+        return minX < ownMinX + hitboxWidth && ownMinX < maxX &&
+               minY < ownMinY + hitboxHeight && ownMinY < maxY;
+    }
+
+    /**
+     * Slab test of the segment between two points against the hitbox
+     */
+    public boolean intersectsSegment(double fromX, double fromY, double toX, double toY) {
+        if (hitboxWidthOrHeightEmpty()) {
+            return false;
+        }
+        double enter = 0.0;
+        double exit = 1.0;
+        double minX = getMinX();
+        double minY = getMinY();
+
+        double dx = toX - fromX;
+        if (dx == 0) {
+            if (fromX < minX || fromX >= minX + hitboxWidth) {
+                return false;
             }
+        } else {
+            double t1 = (minX - fromX) / dx;
+            double t2 = (minX + hitboxWidth - fromX) / dx;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
         }
-        
-        // Fallback to expensive pixel-by-pixel calculation if no pre-calculated hitbox
-        if (spriteHitbox == null) {
-            spriteHitbox = calculateSpriteHitbox();
-            
-            // Cache the relative hitbox dimensions
-            if (spriteHitbox.width > 0 && spriteHitbox.height > 0) {
-                cachedHitbox = new Rectangle(
-                    spriteHitbox.x - (int) x,  // Store relative offset
-                    spriteHitbox.y - (int) y,  // Store relative offset
-                    spriteHitbox.width,
-                    spriteHitbox.height
-                );
+
+        double dy = toY - fromY;
+        if (dy == 0) {
+            if (fromY < minY || fromY >= minY + hitboxHeight) {
+                return false;
             }
+        } else {
+            double t1 = (minY - fromY) / dy;
+            double t2 = (minY + hitboxHeight - fromY) / dy;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
         }
-        
-        hitboxNeedsUpdate = false;
-        return spriteHitbox;
+
+        return enter < exit;
     }
 
-    private Rectangle calculateSpriteHitbox() {
+    private boolean hitboxWidthOrHeightEmpty() {
+        updateHitboxOffsets();
+        return hitboxWidth <= 0 || hitboxHeight <= 0;
+    }
+
+    /**
+     * Refresh the hitbox offsets relative to the sprite origin after a sprite change
+     */
+    private void updateHitboxOffsets() {
+        if (!hitboxNeedsUpdate) {
+            return;
+        }
         if (currentSprite == null) {
-            return new Rectangle((int) x, (int) y, 0, 0);
+            hitboxOffsetX = 0;
+            hitboxOffsetY = 0;
+            hitboxWidth = 0;
+            hitboxHeight = 0;
+            return;
+        }
+
+        // Try to get pre-calculated hitbox from SpriteCache first
+        Rectangle preCalculated = null;
+        if (entityType != null && currentDirection != null) {
+            preCalculated = SpriteCache.queryHitboxCache(entityType, currentDirection);
         }
 
+        // Fallback to expensive pixel-by-pixel calculation if no pre-calculated hitbox
+        Rectangle spriteHitbox = preCalculated != null ? preCalculated : calculateSpriteHitbox();
+        hitboxOffsetX = spriteHitbox.x;
+        hitboxOffsetY = spriteHitbox.y;
+        hitboxWidth = spriteHitbox.width;
+        hitboxHeight = spriteHitbox.height;
+        hitboxNeedsUpdate = false;
+    }
+
+    /**
+     * Trimmed alpha bounds of the current sprite, relative to the sprite origin
+     */
+    private Rectangle calculateSpriteHitbox() {
         int width = currentSprite.getWidth();
         int height = currentSprite.getHeight();
 
@@ -196,23 +411,17 @@ public class Entity {
         }
 
         if (maxX < minX || maxY < minY) {
-            return new Rectangle((int) x, (int) y, 0, 0);
+            return new Rectangle(0, 0, 0, 0);
         }
 
         int rectWidth = (maxX - minX) + 1;
         int rectHeight = (maxY - minY) + 1;
 
-        return new Rectangle(
-                (int) x + minX,
-                (int) y + minY,
-                rectWidth,
-                rectHeight
-        );
+        return new Rectangle(minX, minY, rectWidth, rectHeight);
     }
 
     private Point getCenteroid() {
-        Rectangle hitbox = getHitbox();
-        return new Point((int) hitbox.getCenterX(), (int) hitbox.getCenterY());
+        return new Point(getCenterX(), getCenterY());
     }
 
 
@@ -245,27 +454,35 @@ public class Entity {
         updateCurrentSprite();
     }
 
-    private void drawHitbox(Graphics g) {
-        Color originColor = g.getColor();
-        g.setColor(Color.RED);
-        Rectangle hitbox = getHitbox();
-        g.drawRect(hitbox.x, hitbox.y, hitbox.width, hitbox.height);
-        g.setColor(originColor);
-    }
-
-    public void render(Graphics2D g) {
-        if (currentSprite != null) {
-            g.drawImage(currentSprite, (int) x, (int) y, null);
+    /**
+     * Queue the entity's draws. Static entities lie on the ground under everything that moves,
+     * moving ones are ordered by how far down the screen they stand.
+     */
+    public void submit(RenderQueue queue) {
+        int layer = isStatic() ? RenderQueue.LAYER_GROUND : RenderQueue.LAYER_ACTORS;
+        BufferedImage sprite = currentSprite;
+        if (sprite != null) {
+            queue.drawImage(layer, !isStatic(), sprite, (int) x, (int) y);
             if (shouldDrawHitbox) {
-                drawHitbox(g);
+                queue.drawRect(RenderQueue.LAYER_DEBUG, Color.RED.getRGB(), getMinX(), getMinY(), hitboxWidth, hitboxHeight);
             }
         } else {
             // Draw a simple colored rectangle as placeholder
-            g.setColor(Color.RED);
-            g.fillRect((int) x, (int) y, 10, 10);
+            queue.fillRect(layer, Color.RED.getRGB(), (int) x, (int) y, 10, 10);
         }
     }
 
+    /**
+     * Whether what render() draws overlaps the area, in world coordinates
+     */
+    public boolean overlaps(Rectangle area) {
+        BufferedImage sprite = currentSprite;
+        int width = sprite != null ? sprite.getWidth() : 10;
+        int height = sprite != null ? sprite.getHeight() : 10;
+        return x + width > area.x && y + height > area.y &&
+                x < area.x + area.width && y < area.y + area.height;
+    }
+
     /**
      * Get entities that intersect with this entity - optimized using spatial grid
      */
@@ -290,14 +507,14 @@ public class Entity {
 
 
     /**
-     * Check if this entity intersects with any non-projectile entity
+     * Check if this entity intersects with any entity its collision mask accepts
      * Used for collision prevention in movement - optimized using spatial grid
      */
-    public boolean hasCollisionWithNonProjectiles() {
-        return World.WORLD.getSpatialGrid().hasCollisionWithNonProjectiles(this) ||
-               (this != World.PLAYER_ENTITY && 
-                !(World.PLAYER_ENTITY instanceof Projectile) && 
-                this.getHitbox().intersects(World.PLAYER_ENTITY.getHitbox()));
+    public boolean hasBlockingCollision() {
+        return World.WORLD.getSpatialGrid().hasCollision(this) ||
+               (this != World.PLAYER_ENTITY &&
+                canCollideWith(World.PLAYER_ENTITY) &&
+                intersectsEntity(World.PLAYER_ENTITY));
     }
 
     public double getX() {
@@ -2,9 +2,32 @@ package tomato.entity;
 
 public enum EntityType {
     // list of entities with unique sprites
-    PLAYER_TANK,
-    LANDMINE,
-    RED_ENEMY_TANK,
-    REGULAR_PROJECTILE,
-    GOLD_PROJECTILE
+    PLAYER_TANK(CollisionLayer.TANK, CollisionLayer.TANK | CollisionLayer.LANDMINE, false),
+    LANDMINE(CollisionLayer.LANDMINE, CollisionLayer.TANK, true),
+    RED_ENEMY_TANK(CollisionLayer.TANK, CollisionLayer.TANK | CollisionLayer.LANDMINE, false),
+    REGULAR_PROJECTILE(CollisionLayer.PROJECTILE, CollisionLayer.TANK | CollisionLayer.LANDMINE, false),
+    GOLD_PROJECTILE(CollisionLayer.PROJECTILE, CollisionLayer.TANK | CollisionLayer.LANDMINE, false);
+
+    private final int collisionLayer;
+    private final int collisionMask;
+    // static entities never move: they live in the static grid layer and sleep until a mover overlaps them
+    private final boolean staticBody;
+
+    EntityType(int collisionLayer, int collisionMask, boolean staticBody) {
+        this.collisionLayer = collisionLayer;
+        this.collisionMask = collisionMask;
+        this.staticBody = staticBody;
+    }
+
+    public boolean isStatic() {
+        return staticBody;
+    }
+
+    public int getCollisionLayer() {
+        return collisionLayer;
+    }
+
+    public int getCollisionMask() {
+        return collisionMask;
+    }
 }
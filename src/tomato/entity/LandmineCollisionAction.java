@@ -2,32 +2,41 @@ package tomato.entity;
 
 import tomato.core.World;
 
-import java.awt.*;
-
 public class LandmineCollisionAction implements CollisionAction {
+    // Layers caught in the blast: tanks take damage, other mines chain-detonate
+    private static final int BLAST_MASK = CollisionLayer.TANK | CollisionLayer.LANDMINE;
+
     private final int explosionDamage;
+    private final int blastRadius;
     
     public LandmineCollisionAction() {
-        this(50); // Default explosion damage
+        this(50, 64); // Default explosion damage and blast radius
     }
     
-    public LandmineCollisionAction(int explosionDamage) {
+    public LandmineCollisionAction(int explosionDamage, int blastRadius) {
         this.explosionDamage = explosionDamage;
+        this.blastRadius = blastRadius;
     }
     
     @Override
     public void onCollide(Entity self, Entity other) {
-        // Don't explode on collision with other landmines or projectiles
-        if (other instanceof LandmineEntity || other instanceof Projectile) {
+        // Don't explode on collision with other landmines
+        if (other instanceof LandmineEntity) {
             return;
         }
-        Rectangle hitbox = self.getHitbox();
-        World.WORLD.getVFXManager().createExplosion((int) hitbox.getCenterX(), (int) hitbox.getCenterY(), 50, 2.0f);
-        other.takeDamage(explosionDamage);
+        detonate(self);
         
+//        System.out.println("Landmine exploded! Dealt " + explosionDamage + " damage to " + other.getClass().getSimpleName());
+    }
+
+    /**
+     * Queue the blast and remove the landmine. Damage to everything in the radius,
+     * including the entity that triggered it, is applied by the detonation wavefront.
+     */
+    public void detonate(Entity self) {
+        World.WORLD.getDetonationQueue().detonate(self, blastRadius, explosionDamage, BLAST_MASK);
+
         // Remove the landmine after explosion
         self.markForRemoval();
-        
-//        System.out.println("Landmine exploded! Dealt " + explosionDamage + " damage to " + other.getClass().getSimpleName());
     }
 }
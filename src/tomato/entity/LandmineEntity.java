@@ -3,12 +3,26 @@ package tomato.entity;
 import tomato.core.Utils;
 
 public class LandmineEntity extends Entity{
+    private final LandmineCollisionAction trigger;
+
     public LandmineEntity(double x, double y) {
         super(x, y);
         this.entityType = EntityType.LANDMINE;
         this.health = 1;
         this.rotatable = false;
         this.currentSprite = Utils.loadQOI("/tomato/assets/landmine.qoi");
-        this.setCollisionAction(new LandmineCollisionAction());
+        this.trigger = new LandmineCollisionAction();
+        this.setCollisionAction(trigger);
+    }
+
+    /**
+     * Any damage sets the mine off. The blast is queued rather than applied here,
+     * so chain reactions don't recurse through takeDamage.
+     */
+    @Override
+    public void takeDamage(int damage) {
+        if (!isMarkedForRemoval()) {
+            trigger.detonate(this);
+        }
     }
 }
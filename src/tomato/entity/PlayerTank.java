@@ -1,7 +1,9 @@
 package tomato.entity;
 
 import tomato.Game;
+import tomato.core.DisplayList;
 import tomato.core.GameState;
+import tomato.core.ImageFactory;
 import tomato.core.SpriteCache;
 import tomato.core.Utils;
 import tomato.core.World;
@@ -38,6 +40,57 @@ public class PlayerTank extends Tank {
             GameState.Pause();
         });
 
+        Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_I, () -> {
+            // debug key: influence map overlay
+            World.WORLD.getInfluenceMap().toggleOverlay();
+        });
+
+        Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_B, () -> {
+            // debug key: log blit throughput per image format, on its own thread so the game keeps drawing
+            new Thread(ImageFactory::benchmarkBlits, "blit-benchmark").start();
+        });
+
+        Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_P, () -> {
+            // debug key: compare active rendering against Swing repaints
+            Game.RENDERER.togglePresentMode();
+        });
+
+        Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_R, () -> {
+            // debug key: next internal render resolution
+            Game.RENDERER.cycleRenderSize();
+        });
+
+        Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_M, () -> {
+            // debug key: next way of scaling the frame to the window
+            Game.RENDERER.cycleScaleMode();
+        });
+
+        Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_Q, () -> {
+            // debug key: hold full quality instead of adapting it to the frame time
+            World.WORLD.getQualityController().toggleEnabled();
+        });
+
+        Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_K, () -> {
+            // debug key: draw the world with the software rasterizer or Java2D
+            World.WORLD.toggleSoftwareRendering();
+        });
+
+        Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_L, () -> {
+            // debug key: log both world backends' frame time and how much their images differ
+            World.WORLD.requestBackendComparison();
+        });
+
+        Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_F, () -> {
+            // debug key: capture the last recorded frame and time replaying it on its own thread
+            DisplayList frame = World.WORLD.captureDisplayList();
+            new Thread(frame::benchmarkReplay, "replay-benchmark").start();
+        });
+
+        Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_V, () -> {
+            // debug key: split screen with a second view on the nearest enemy
+            Game.RENDERER.toggleSplitScreen();
+        });
+
         Game.KEY_REGISTRY.onKeyPressed(KeyEvent.VK_X, () -> {
             // debug key
             Point spawnPoint = this.getChunk().getRandomWorldCoordinate();
@@ -65,8 +118,10 @@ public class PlayerTank extends Tank {
             moveForward(-adjustedSpeed);
         }
 
-        // Camera follows
-        Game.RENDERER.getCamera().setPosition((float) getX(), (float) getY());
+        // Camera follows, there is none in headless runs
+        if (Game.RENDERER != null) {
+            Game.RENDERER.getCamera().setPosition((float) getX(), (float) getY());
+        }
     }
 
     private void turnLeft() {
@@ -0,0 +1,51 @@
+package tomato.entity;
+
+/**
+ * How long a projectile of a given type may live before it is removed without hitting anything
+ */
+public class ProjectileLifetime {
+
+    /**
+     * Why a projectile expired
+     */
+    public enum Expiry {
+        RANGE,
+        AGE,
+        LEFT_AREA
+    }
+
+    private final double maxRange;
+    private final float maxAgeMs;
+
+    /**
+     * @param maxRange Distance in pixels the projectile may travel
+     * @param maxAgeMs Time in milliseconds the projectile may exist
+     */
+    public ProjectileLifetime(double maxRange, float maxAgeMs) {
+        this.maxRange = maxRange;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Check the traveled distance and age against the limits
+     *
+     * @return The reason the projectile expired, or null if it is still alive
+     */
+    public Expiry check(double traveled, float ageMs) {
+        if (traveled >= maxRange) {
+            return Expiry.RANGE;
+        }
+        if (ageMs >= maxAgeMs) {
+            return Expiry.AGE;
+        }
+        return null;
+    }
+
+    public double getMaxRange() {
+        return maxRange;
+    }
+
+    public float getMaxAgeMs() {
+        return maxAgeMs;
+    }
+}
@@ -1,12 +1,15 @@
 package tomato.entity;
 
-import tomato.core.Mathf;
-import tomato.core.Utils;
+import tomato.core.SpatialGrid;
 import tomato.core.World;
-import java.awt.Rectangle;
+
+import java.util.ArrayList;
 
 public class Tank extends Entity {
 
+    // Reused between sweeps to keep movement allocation-light
+    private final ArrayList<Entity> blockers = new ArrayList<>();
+
     public Tank(double x, double y) {
         super(x, y);
         this.currentDirection = Direction.SOUTH;
@@ -16,43 +19,102 @@ public class Tank extends Entity {
     }
 
     protected void moveForward(double distance) {
-        // Store original position
-        double originalX = this.x;
-        double originalY = this.y;
-
-        // Calculate new position
         switch (currentDirection) {
             case NORTH:
-                setY(this.y - distance);
+                move(0, -distance);
                 break;
             case SOUTH:
-                setY(this.y + distance);
+                move(0, distance);
                 break;
             case EAST:
-                setX(this.x + distance);
+                move(distance, 0);
                 break;
             case WEST:
-                setX(this.x - distance);
+                move(-distance, 0);
                 break;
         }
+    }
+
+    /**
+     * Move by the given offset, one axis at a time, stopping at contact with the
+     * nearest blocker on each axis. Blockers come from the spatial grid only.
+     */
+    protected void move(double dx, double dy) {
+        SpatialGrid grid = World.WORLD.getSpatialGrid();
+        grid.removeEntity(this);
+        if (dx != 0) {
+            setX(sweepAxis(dx, true));
+        }
+        if (dy != 0) {
+            setY(sweepAxis(dy, false));
+        }
+        grid.addEntity(this);
+    }
+
+    /**
+     * Put the tank back to a previous position, keeping its grid cells in sync
+     */
+    protected void revertMove(double oldX, double oldY) {
+        SpatialGrid grid = World.WORLD.getSpatialGrid();
+        grid.removeEntity(this);
+        setPosition(oldX, oldY);
+        grid.addEntity(this);
+    }
+
+    /**
+     * Sweep the hitbox along one axis and return the clamped coordinate for that axis.
+     * Entities we already overlap don't block, so tanks can always back out of them.
+     */
+    private double sweepAxis(double delta, boolean horizontal) {
+        int minX = getMinX();
+        int minY = getMinY();
+        int maxX = getMaxX();
+        int maxY = getMaxY();
+        int step = (int) Math.ceil(Math.abs(delta));
+
+        // Area covered by the hitbox over the whole step
+        int sweptMinX = minX, sweptMinY = minY, sweptMaxX = maxX, sweptMaxY = maxY;
+        if (horizontal) {
+            if (delta < 0) sweptMinX -= step; else sweptMaxX += step;
+        } else {
+            if (delta < 0) sweptMinY -= step; else sweptMaxY += step;
+        }
+
+        double position = horizontal ? x : y;
+        double target = position + delta;
+        // hitbox edge relative to the truncated position, as in getMinX()/getMinY()
+        int offset = horizontal ? hitboxOffsetX : hitboxOffsetY;
+        int size = horizontal ? hitboxWidth : hitboxHeight;
+        Entity blocker = null;
 
-        // Check for collision with other entities (excluding projectiles) OR out of bounds
-        if (hasCollisionWithNonProjectiles()) {
-            // Find the entity we collided with and trigger its collision action
-            Rectangle hitbox = this.getHitbox();
-            for (Entity entity : World.WORLD.getWorldEntities()) {
-                if (entity != this && !(entity instanceof Projectile) && entity.getHitbox().intersects(hitbox)) {
-                    if (entity.getCollisionAction() != null) {
-                        entity.getCollisionAction().onCollide(entity, this);
-                    }
-                    break; // Only handle the first collision
+        blockers.clear();
+        World.WORLD.getSpatialGrid().queryRectangle(sweptMinX, sweptMinY, sweptMaxX, sweptMaxY,
+                getCollisionMask(), this, blockers);
+        for (int i = 0; i < blockers.size(); i++) {
+            Entity other = blockers.get(i);
+            if (other.intersects(minX, minY, maxX, maxY)) {
+                continue;
+            }
+            if (delta > 0) {
+                double contact = (horizontal ? other.getMinX() : other.getMinY()) - size - offset;
+                if (contact < target) {
+                    target = Math.max(position, contact);
+                    blocker = other;
+                }
+            } else {
+                double contact = (horizontal ? other.getMaxX() : other.getMaxY()) - offset;
+                if (contact > target) {
+                    target = Math.min(position, contact);
+                    blocker = other;
                 }
             }
-            
-            // Revert to original position if collision detected
-            setX(originalX);
-            setY(originalY);
         }
+
+        // Let the closest blocker react, e.g. a landmine we drove into
+        if (blocker != null && blocker.getCollisionAction() != null) {
+            blocker.getCollisionAction().onCollide(blocker, this);
+        }
+        return target;
     }
 
     protected void shoot(EntityType projectileType) {
@@ -77,7 +139,7 @@ public class Tank extends Entity {
                 break;
         }
         
-        Projectile.shootProjectile(centerX, centerY, this, currentDirection,projectileType);
+        World.WORLD.getBulletManager().fire(centerX, centerY, this, currentDirection, projectileType);
     }
 
 }
@@ -1,6 +1,8 @@
 package tomato.vfx;
 
 import tomato.Game;
+import tomato.core.RenderQueue;
+import tomato.core.TimingWheel;
 
 import java.awt.*;
 import java.util.ArrayList;
@@ -9,17 +11,33 @@ import java.util.Collections;
 public class ExplosionEffect extends ParticleSystem implements DynamicLightSource {
     private static final int RING_COUNT = 5;
     private static final int PARTICLES_PER_RING = 30;
+    private static final int MIN_PARTICLES_PER_RING = 8;
     private static final int RANDOM_PARTICLE_COUNT = 100;
+    private static final int ALPHA_STEPS = 32;
 
     private final int x, y;
     private final int maxRadius;
     private final float duration;
     private final ArrayList<Color> shuffledRingColors;
     private final ArrayList<Color> shuffledParticleColors;
+    private final int particlesPerRing;
+    private final int randomParticleCount;
+    private final TimingWheel clock;
+    private final double startMs;
+    private final Rectangle bounds;
+    // Seconds since the explosion started, read from the simulation clock
     private float currentTime;
 
-    public ExplosionEffect(int x, int y, int maxRadius, float durationSeconds, Color[] ringColors, Color[] particleColors) {
+    /**
+     * Particles don't count their life down, they die when the effect's time passes their lifetime
+     *
+     * @param density Share of the full particle count to create, rings keep enough particles to stay round
+     */
+    public ExplosionEffect(int x, int y, int maxRadius, float durationSeconds, Color[] ringColors, Color[] particleColors,
+                           float density, TimingWheel clock) {
         super();
+        this.clock = clock;
+        this.startMs = clock.getTimeMs();
         this.x = x;
         this.y = y;
         this.maxRadius = maxRadius;
@@ -27,6 +45,11 @@ public class ExplosionEffect extends ParticleSystem implements DynamicLightSourc
         this.shuffledRingColors = shuffleColors(ringColors);
         this.shuffledParticleColors = shuffleColors(particleColors);
         this.currentTime = 0;
+        this.particlesPerRing = Math.max(MIN_PARTICLES_PER_RING, Math.round(PARTICLES_PER_RING * density));
+        this.randomParticleCount = Math.round(RANDOM_PARTICLE_COUNT * density);
+        // Rings die at the max radius, loose particles start inside it and slow down quickly
+        int reach = maxRadius * 2;
+        this.bounds = new Rectangle(x - reach, y - reach, reach * 2, reach * 2);
         createExplosion();
     }
     
@@ -47,8 +70,8 @@ public class ExplosionEffect extends ParticleSystem implements DynamicLightSourc
             float ringRadius = (ring + 1) * (maxRadius / (float)RING_COUNT);
             Color ringColor = shuffledRingColors.get(ring % shuffledRingColors.size());
 
-            for (int i = 0; i < PARTICLES_PER_RING; i++) {
-                float angle = (float) (i * 2 * Math.PI / PARTICLES_PER_RING);
+            for (int i = 0; i < particlesPerRing; i++) {
+                float angle = (float) (i * 2 * Math.PI / particlesPerRing);
                 float particleX = x + (float)(Math.cos(angle) * ringRadius);
                 float particleY = y + (float)(Math.sin(angle) * ringRadius);
 
@@ -61,7 +84,7 @@ public class ExplosionEffect extends ParticleSystem implements DynamicLightSourc
     }
 
     private void createRandomParticles() {
-        for (int i = 0; i < RANDOM_PARTICLE_COUNT; i++) {
+        for (int i = 0; i < randomParticleCount; i++) {
             float angle = random.nextFloat() * 2 * (float) Math.PI;
             float radius = random.nextFloat() * maxRadius;
             float particleX = x + (float)(Math.cos(angle) * radius);
@@ -78,7 +101,7 @@ public class ExplosionEffect extends ParticleSystem implements DynamicLightSourc
     @Override
     public void update() {
         float deltaTime = Game.GAME_LOOP.getDeltaTime();
-        currentTime += deltaTime;
+        currentTime = (float) ((clock.getTimeMs() - startMs) / 1000.0);
 
         particles.removeIf(particle -> {
             particle.update(deltaTime);
@@ -86,9 +109,15 @@ public class ExplosionEffect extends ParticleSystem implements DynamicLightSourc
         });
     }
 
+    @Override
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
     @Override
     public boolean isFinished() {
-        return currentTime >= duration || particles.isEmpty();
+        // the VFX manager removes the effect when its duration is up
+        return particles.isEmpty();
     }
 
     @Override
@@ -111,10 +140,19 @@ public class ExplosionEffect extends ParticleSystem implements DynamicLightSourc
         return Math.max(0, 1f - (currentTime / duration) * 2); // Light fades twice as fast
     }
 
+    /**
+     * Color of a particle fading out over its lifetime. The alpha is rounded to 32 steps,
+     * so particles of the same color share a fill color in the render queue more often.
+     */
+    private int fadedColor(Color color, float life) {
+        float alpha = Math.max(0, Math.min(1, (life - currentTime) / life));
+        int alphaStep = Math.round(alpha * ALPHA_STEPS);
+        return (alphaStep * 255 / ALPHA_STEPS) << 24 | (color.getRGB() & 0xFFFFFF);
+    }
+
     private class RingParticle extends Particle {
         private float radius;
         private float angle;
-        private float initialLife;
 
         public RingParticle(float startX, float startY, float radius, float angle, Color color, int size, float life) {
             super(startX, startY, color);
@@ -122,7 +160,6 @@ public class ExplosionEffect extends ParticleSystem implements DynamicLightSourc
             this.angle = angle;
             this.size = size;
             this.life = life;
-            this.initialLife = life;
         }
 
         @Override
@@ -136,31 +173,21 @@ public class ExplosionEffect extends ParticleSystem implements DynamicLightSourc
 
             // Increase angular velocity for faster rotation
             angle += deltaTime * 2f;
-
-            life -= deltaTime;
         }
 
         @Override
-        public void draw(Graphics2D g) {
-            float alpha = Math.max(0, Math.min(1, life / initialLife));
-            Color adjustedColor = new Color(
-                    color.getRed(),
-                    color.getGreen(),
-                    color.getBlue(),
-                    (int)(255 * alpha)
-            );
-            g.setColor(adjustedColor);
-            g.fillOval((int)x - size/2, (int)y - size/2, size, size);
+        public void submit(RenderQueue queue) {
+            queue.fillOval(RenderQueue.LAYER_EFFECTS, fadedColor(color, life),
+                    (int)x - size/2, (int)y - size/2, size, size);
         }
 
         @Override
         public boolean isDead() {
-            return life <= 0 || radius > maxRadius;
+            return currentTime >= life || radius > maxRadius;
         }
     }
 
     private class RandomParticle extends Particle {
-        private float initialLife;
 
         public RandomParticle(float x, float y, Color color, int size, float life) {
             super(x, y, color);
@@ -170,7 +197,6 @@ public class ExplosionEffect extends ParticleSystem implements DynamicLightSourc
             this.vy = (float) Math.sin(angle) * speed;
             this.size = size;
             this.life = life;
-            this.initialLife = life;
         }
 
         @Override
@@ -181,21 +207,17 @@ public class ExplosionEffect extends ParticleSystem implements DynamicLightSourc
             // Slow down particles more quickly
             vx *= 0.95f;
             vy *= 0.95f;
+        }
 
-            life -= deltaTime;
+        @Override
+        public void submit(RenderQueue queue) {
+            queue.fillOval(RenderQueue.LAYER_EFFECTS, fadedColor(color, life),
+                    (int)x - size/2, (int)y - size/2, size, size);
         }
 
         @Override
-        public void draw(Graphics2D g) {
-            float alpha = Math.max(0, Math.min(1, life / initialLife));
-            Color adjustedColor = new Color(
-                    color.getRed(),
-                    color.getGreen(),
-                    color.getBlue(),
-                    (int)(255 * alpha)
-            );
-            g.setColor(adjustedColor);
-            g.fillOval((int)x - size/2, (int)y - size/2, size, size);
+        public boolean isDead() {
+            return currentTime >= life;
         }
     }
 }
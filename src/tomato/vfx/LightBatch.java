@@ -0,0 +1,18 @@
+package tomato.vfx;
+
+import java.awt.*;
+
+/**
+ * Many lights drawn in one call instead of being registered one by one as {@link DynamicLightSource}s
+ */
+public interface LightBatch {
+    /**
+     * Draw the lights of the batch into the light map with {@link Lighting#drawLight}
+     */
+    void drawLights(Graphics2D lightG, Rectangle cameraView, Lighting lighting);
+
+    /**
+     * Lights the batch holds, counted with the single sources
+     */
+    int getLightCount();
+}
@@ -1,6 +1,6 @@
 package tomato.vfx;
 
-import tomato.Game;
+import tomato.core.ImageFactory;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -8,11 +8,26 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Lighting {
+    /**
+     * Receives the lights of a frame instead of having them cut into the light map
+     */
+    public interface LightSink {
+        void addLight(int worldX, int worldY, int radius, float strength);
+    }
+
     private float daylight = 1.0f; // 0.0 (night) to 1.0 (day)
     private float minBrightness = 0.1f; // Minimum brightness level
     private float maxDarkness = 0.9f; // Maximum darkness level
     private final CopyOnWriteArrayList<DynamicLightSource> lightSources;
+    // Systems that keep many lights in their own arrays draw them in one call
+    private final CopyOnWriteArrayList<LightBatch> lightBatches = new CopyOnWriteArrayList<>();
     private BufferedImage lightMap;
+    // The light map covers the view at 1/divisor of its resolution and is stretched over it
+    private volatile int resolutionDivisor = 1;
+    // Divisor of the light map being drawn, fixed for the whole frame
+    private int frameDivisor = 1;
+    // Set while collectLights() runs, drawLight() hands lights to it instead of drawing
+    private LightSink sink;
     
     // Cache for pre-rendered light textures to avoid creating gradients every frame
     private final ConcurrentHashMap<String, BufferedImage> lightTextureCache;
@@ -41,6 +56,25 @@ public class Lighting {
         }
     }
 
+    public void addLightBatch(LightBatch batch) {
+        lightBatches.addIfAbsent(batch);
+    }
+
+    public void removeLightBatch(LightBatch batch) {
+        lightBatches.remove(batch);
+    }
+
+    /**
+     * Single light sources and the lights of every batch
+     */
+    public int getLightSourceCount() {
+        int count = lightSources.size();
+        for (LightBatch batch : lightBatches) {
+            count += batch.getLightCount();
+        }
+        return count;
+    }
+
     public void removeLightSource(DynamicLightSource source) {
         lightSources.remove(source);
     }
@@ -49,12 +83,25 @@ public class Lighting {
         lightSources.clear();
     }
 
+    /**
+     * Draw the light map at 1/divisor of the view's resolution, fewer pixels for every light to cut out
+     */
+    public void setResolutionDivisor(int divisor) {
+        resolutionDivisor = Math.max(1, divisor);
+    }
+
+    public int getResolutionDivisor() {
+        return resolutionDivisor;
+    }
+
     public void drawLighting(Graphics2D g2d, Rectangle cameraView) {
-        int width = cameraView.width;
-        int height = cameraView.height;
+        int divisor = resolutionDivisor;
+        frameDivisor = divisor;
+        int width = (cameraView.width + divisor - 1) / divisor;
+        int height = (cameraView.height + divisor - 1) / divisor;
 
         if (lightMap == null || lightMap.getWidth() != width || lightMap.getHeight() != height) {
-            lightMap = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            lightMap = ImageFactory.createTranslucent(width, height);
         }
 
         Graphics2D lightG = lightMap.createGraphics();
@@ -63,8 +110,7 @@ public class Lighting {
         lightG.setComposite(AlphaComposite.SrcOver);
 
         // Draw ambient light
-        float nightAlpha = minBrightness + (maxDarkness - minBrightness) * (1 - daylight);
-        lightG.setColor(new Color(0, 0, 0, nightAlpha));
+        lightG.setColor(new Color(0, 0, 0, getAmbientAlpha()));
         lightG.fillRect(0, 0, width, height);
 
         // Draw light sources (convert world coordinates to screen coordinates)
@@ -73,18 +119,43 @@ public class Lighting {
                 drawLightSource(lightG, light, cameraView);
             }
         }
+        for (LightBatch batch : lightBatches) {
+            batch.drawLights(lightG, cameraView, this);
+        }
 
         lightG.dispose();
 
         // Apply lighting to the scene
         g2d.setComposite(AlphaComposite.SrcOver);
-        g2d.drawImage(lightMap, cameraView.x, cameraView.y, null);
+        g2d.drawImage(lightMap, cameraView.x, cameraView.y, width * divisor, height * divisor, null);
     }
 
-    // Overloaded method for backward compatibility
-    public void drawLighting(Graphics2D g2d) {
-        Rectangle screenView = new Rectangle(0, 0, Game.WIDTH, Game.HEIGHT);
-        drawLighting(g2d, screenView);
+    /**
+     * Darkness over the whole view before any light is cut out of it, 0 to 1
+     */
+    public float getAmbientAlpha() {
+        return minBrightness + (maxDarkness - minBrightness) * (1 - daylight);
+    }
+
+    /**
+     * Hand every light of the frame to the sink instead of drawing the light map, for renderers
+     * that do the lighting themselves. Lights are given in world coordinates and full size.
+     */
+    public void collectLights(Rectangle cameraView, LightSink lightSink) {
+        sink = lightSink;
+        frameDivisor = 1;
+        try {
+            for (DynamicLightSource light : lightSources) {
+                if (light.getLightRadius() > 0 && light.getLightStrength() > 0) {
+                    drawLightSource(null, light, cameraView);
+                }
+            }
+            for (LightBatch batch : lightBatches) {
+                batch.drawLights(null, cameraView, this);
+            }
+        } finally {
+            sink = null;
+        }
     }
 
     public float getDaylight() {
@@ -92,17 +163,28 @@ public class Lighting {
     }
 
     private void drawLightSource(Graphics2D g, DynamicLightSource source, Rectangle cameraView) {
-        // Convert world coordinates to screen coordinates
-        int worldX = source.getLightX();
-        int worldY = source.getLightY();
-        int screenX = worldX - cameraView.x;
-        int screenY = worldY - cameraView.y;
-        int radius = source.getLightRadius();
-        float strength = Math.max(0.0f, Math.min(1.0f, source.getLightStrength()));
+        drawLight(g, source.getLightX(), source.getLightY(), source.getLightRadius(), source.getLightStrength(),
+                cameraView);
+    }
+
+    /**
+     * Cut one light into the light map, used for single sources and for batches
+     */
+    public void drawLight(Graphics2D g, int worldX, int worldY, int worldRadius, float lightStrength, Rectangle cameraView) {
+        if (sink != null) {
+            sink.addLight(worldX, worldY, worldRadius, Math.max(0.0f, Math.min(1.0f, lightStrength)));
+            return;
+        }
+        // Convert world coordinates to light map coordinates, a smaller texture stands in at lower resolution
+        int divisor = frameDivisor;
+        int screenX = Math.floorDiv(worldX - cameraView.x, divisor);
+        int screenY = Math.floorDiv(worldY - cameraView.y, divisor);
+        int radius = Math.max(1, worldRadius / divisor);
+        float strength = Math.max(0.0f, Math.min(1.0f, lightStrength));
 
         // Only draw if the light source is within or near the camera view
-        if (screenX + radius >= 0 && screenX - radius < cameraView.width &&
-            screenY + radius >= 0 && screenY - radius < cameraView.height) {
+        if (screenX + radius >= 0 && screenX - radius < cameraView.width / divisor &&
+            screenY + radius >= 0 && screenY - radius < cameraView.height / divisor) {
             
             // Get cached light texture or create new one
             BufferedImage lightTexture = getCachedLightTexture(radius, strength);
@@ -123,7 +205,7 @@ public class Lighting {
         return lightTextureCache.computeIfAbsent(cacheKey, key -> {
             // Create pre-rendered light texture
             int size = radius * 2;
-            BufferedImage texture = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+            BufferedImage texture = ImageFactory.createTranslucent(size, size);
             Graphics2D g = texture.createGraphics();
             
             // Enable antialiasing for smoother gradients
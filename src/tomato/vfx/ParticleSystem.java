@@ -1,6 +1,7 @@
 package tomato.vfx;
 
 import tomato.Game;
+import tomato.core.RenderQueue;
 
 import java.awt.*;
 import java.util.Random;
@@ -25,8 +26,8 @@ public class ParticleSystem implements VisualEffect {
     }
 
     @Override
-    public void draw(Graphics2D g) {
-        particles.forEach(p -> p.draw(g));
+    public void submit(RenderQueue queue) {
+        particles.forEach(p -> p.submit(queue));
     }
 
     @Override
@@ -34,6 +35,11 @@ public class ParticleSystem implements VisualEffect {
         return particles.isEmpty();
     }
 
+    @Override
+    public Rectangle getBounds() {
+        return getHitbox();
+    }
+
     public Rectangle getHitbox() {
         if (particles.isEmpty()) {
             return new Rectangle(0, 0, 0, 0);
@@ -83,9 +89,8 @@ public class ParticleSystem implements VisualEffect {
             life -= deltaTime;
         }
 
-        public void draw(Graphics2D g) {
-            g.setColor(color);
-            g.fillOval((int)x, (int)y, size, size);
+        public void submit(RenderQueue queue) {
+            queue.fillOval(RenderQueue.LAYER_EFFECTS, color.getRGB(), (int)x, (int)y, size, size);
         }
 
         public boolean isDead() {
@@ -1,13 +1,23 @@
 package tomato.vfx;
 
+import tomato.core.RenderQueue;
+import tomato.core.TimingWheel;
+
 import java.awt.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 public class VFXManager {
     private final CopyOnWriteArrayList<VisualEffect> effects;
     private final Lighting lighting;
+    private final TimingWheel timingWheel;
+    // Share of the full particle count new explosions get
+    private volatile float particleDensity = 1f;
+    // Counters of the last recorded frame, written on the update thread and read by the HUD
+    private int submittedEffects = 0;
+    private int culledEffects = 0;
 
-    public VFXManager() {
+    public VFXManager(TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
         this.effects = new CopyOnWriteArrayList<>();
         this.lighting = new Lighting();
         // Set default lighting to a slightly darker environment for better effect visibility
@@ -23,6 +33,14 @@ public class VFXManager {
         }
     }
 
+    /**
+     * Add an effect that is removed after the given time, even if it doesn't report itself finished
+     */
+    public void addEffect(VisualEffect effect, float lifetimeMs) {
+        addEffect(effect);
+        timingWheel.schedule(() -> removeEffect(effect), lifetimeMs);
+    }
+
     public void removeEffect(VisualEffect effect) {
         effects.remove(effect);
         
@@ -46,26 +64,45 @@ public class VFXManager {
         });
     }
 
-    public void render(Graphics2D g2d) {
-        // Draw all visual effects
+    /**
+     * Queue the visual effects that reach into the view, the lighting is drawn by renderLighting()
+     * once everything else is on screen
+     */
+    public void submit(RenderQueue queue, Rectangle cameraView) {
+        int drawn = 0;
+        int skipped = 0;
         for (VisualEffect effect : effects) {
-            effect.draw(g2d);
+            Rectangle bounds = effect.getBounds();
+            if (bounds != null && !bounds.intersects(cameraView)) {
+                skipped++;
+                continue;
+            }
+            effect.submit(queue);
+            drawn++;
         }
-        
-        // Apply lighting overlay (using default screen view)
-        lighting.drawLighting(g2d);
+        submittedEffects = drawn;
+        culledEffects = skipped;
     }
-    
-    public void render(Graphics2D g2d, Rectangle cameraView) {
-        // Draw all visual effects
-        for (VisualEffect effect : effects) {
-            effect.draw(g2d);
-        }
-        
+
+    public void renderLighting(Graphics2D g2d, Rectangle cameraView) {
         // Apply lighting overlay with camera view
         lighting.drawLighting(g2d, cameraView);
     }
 
+    /**
+     * Effects drawn during the last frame
+     */
+    public int getSubmittedEffectCount() {
+        return submittedEffects;
+    }
+
+    /**
+     * Effects skipped during the last frame because they were outside the view
+     */
+    public int getCulledEffectCount() {
+        return culledEffects;
+    }
+
     public Lighting getLighting() {
         return lighting;
     }
@@ -88,8 +125,20 @@ public class VFXManager {
             new Color(50, 50, 50)     // Dark gray (smoke)
         };
         
-        ExplosionEffect explosion = new ExplosionEffect(x, y, radius, duration, ringColors, particleColors);
-        addEffect(explosion);
+        ExplosionEffect explosion = new ExplosionEffect(x, y, radius, duration, ringColors, particleColors,
+                particleDensity, timingWheel);
+        addEffect(explosion, duration * 1000f);
+    }
+
+    /**
+     * Scale the particle count of explosions created from now on, 1 is the full count
+     */
+    public void setParticleDensity(float density) {
+        particleDensity = Math.max(0f, Math.min(1f, density));
+    }
+
+    public float getParticleDensity() {
+        return particleDensity;
     }
 
     public void clearAllEffects() {
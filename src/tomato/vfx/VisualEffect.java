@@ -1,9 +1,23 @@
 package tomato.vfx;
 
+import tomato.core.RenderQueue;
+
 import java.awt.*;
 
 public interface VisualEffect {
     void update();
-    void draw(Graphics2D g);
+
+    /**
+     * Queue the effect's draws on the effects layer, the only way effects are drawn
+     */
+    void submit(RenderQueue queue);
     boolean isFinished();
+
+    /**
+     * Area the effect draws into in world coordinates, used to skip effects outside the view.
+     * Null when unknown, the effect is then always drawn.
+     */
+    default Rectangle getBounds() {
+        return null;
+    }
 }